@@ -0,0 +1,76 @@
+package io.stardog.dropwizard.worker.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.dedup.LocalDedupStore;
+import io.stardog.dropwizard.worker.util.Deduplicator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead per message of a LocalDedupStore in front of a method: a method without dedup, versus one
+ * seeing a new message id each time (a miss, which marks the key), versus one seeing the same id each time
+ * (a hit, which skips the method).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeduplicatorBenchmark {
+    private static final int KEYS = 1 << 16;
+
+    private WorkMethod plain;
+    private WorkMethod deduped;
+    private WorkMessage[] messages;
+    private WorkMessage duplicate;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        plain = WorkMethod.of("test", p -> { });
+        Deduplicator dedup = new Deduplicator("benchmark", new LocalDedupStore(KEYS), Deduplicator.byMessageId(),
+                TimeUnit.HOURS.toMillis(1), new MetricRegistry());
+        deduped = plain.withDedup(dedup);
+
+        messages = new WorkMessage[KEYS * 4];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = WorkMessage.of("test").withId("message-" + i);
+        }
+        duplicate = WorkMessage.of("test").withId("duplicate");
+        deduped.apply(duplicate);
+    }
+
+    @Benchmark
+    public boolean withoutDedup() {
+        return plain.apply(nextMessage());
+    }
+
+    @Benchmark
+    public boolean dedupMiss() {
+        return deduped.apply(nextMessage());
+    }
+
+    @Benchmark
+    public boolean dedupHit() {
+        return deduped.apply(duplicate);
+    }
+
+    private WorkMessage nextMessage() {
+        // cycles through more ids than the store holds, so each has been evicted by the time it comes round
+        next = (next + 1) % messages.length;
+        return messages[next];
+    }
+}
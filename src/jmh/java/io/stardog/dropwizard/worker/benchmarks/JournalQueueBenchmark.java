@@ -0,0 +1,75 @@
+package io.stardog.dropwizard.worker.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.JournalConfig;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.journal.JournalQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages through a JournalQueue: each operation appends a message, then takes and acks the oldest one. With a
+ * memoryCapacity of 0 every message is read back from its segment and parsed; otherwise they come from memory,
+ * and the cost is the encode and append alone. Point java.io.tmpdir at the disk to be measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalQueueBenchmark {
+    @Param({"0", "10000"})
+    public int memoryCapacity;
+
+    private File directory;
+    private JournalQueue queue;
+    private WorkMessage message;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("journal-benchmark").toFile();
+        queue = new JournalQueue(JournalConfig.builder().directory(directory.getPath()).build(), memoryCapacity,
+                WorkMethods.of(ImmutableList.of()));
+        queue.open();
+        message = WorkMessage.of("sendEmail", ImmutableMap.of("userId", "5a7e1b2c9d", "template", "welcome"));
+        // keep a backlog, so that reads trail writes as they would under a burst
+        for (int i = 0; i < 1000; i++) {
+            queue.offer(message);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        queue.close();
+        File[] files = directory.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public WorkMessage offerPollAck() {
+        queue.offer(message);
+        WorkMessage taken = queue.poll();
+        queue.ack(taken);
+        return taken;
+    }
+}
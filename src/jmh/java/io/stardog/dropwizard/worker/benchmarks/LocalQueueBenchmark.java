@@ -0,0 +1,74 @@
+package io.stardog.dropwizard.worker.benchmarks;
+
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.util.RingBufferQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues LocalWorker could hold its messages in, under contention from four producers and four consumers:
+ * RingBufferQueue, versus a ConcurrentLinkedQueue (unbounded, allocating a node per message) and an
+ * ArrayBlockingQueue (bounded, behind a single lock). Run with the GC profiler to compare the bytes
+ * allocated per message.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalQueueBenchmark {
+    private static final int CAPACITY = 1024;
+
+    @Param({"ringBuffer", "concurrentLinked", "arrayBlocking"})
+    public String queueType;
+
+    private Queue<WorkMessage> queue;
+    private WorkMessage message;
+
+    @Setup
+    public void setUp() {
+        switch (queueType) {
+            case "concurrentLinked":
+                queue = new ConcurrentLinkedQueue<>();
+                break;
+            case "arrayBlocking":
+                queue = new ArrayBlockingQueue<>(CAPACITY);
+                break;
+            default:
+                queue = new RingBufferQueue<>(CAPACITY);
+        }
+        message = WorkMessage.of("noop");
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public boolean offer() {
+        // keep the unbounded queue from growing without limit
+        return queue.size() < CAPACITY && queue.offer(message);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(4)
+    public WorkMessage poll() {
+        return queue.poll();
+    }
+}
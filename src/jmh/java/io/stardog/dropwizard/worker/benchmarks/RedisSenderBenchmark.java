@@ -0,0 +1,105 @@
+package io.stardog.dropwizard.worker.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.data.AsyncSenderConfig;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.senders.AsyncSender;
+import io.stardog.dropwizard.worker.senders.RedisSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares ways of publishing messages with RedisSender: one round trip per send(), from one thread and from
+ * several, a single pipelined sendBatch(), and a burst of sendAsync()s batched up by an AsyncSender.
+ *
+ * Needs a Redis to publish to, on localhost unless -p host=... is given; run it on its own with
+ * -Djmh.include=RedisSenderBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisSenderBenchmark {
+    private final static int BURST = 1000;
+    private final static int THREADS = 8;
+
+    @Param({"localhost"})
+    public String host;
+
+    private JedisPool jedisPool;
+    private RedisSender sender;
+    private AsyncSender asyncSender;
+    private List<WorkMessage> messages;
+
+    @Setup
+    public void setUp() throws Exception {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(THREADS + 2);
+        jedisPool = new JedisPool(poolConfig, host, 6379);
+        sender = new RedisSender(jedisPool, "benchmark");
+        asyncSender = new AsyncSender("benchmark", sender,
+                AsyncSenderConfig.builder().maxBatchSize(RedisSender.MAX_PIPELINE_SIZE).lingerMillis(1).build(),
+                new MetricRegistry());
+        asyncSender.start();
+
+        messages = new ArrayList<>(BURST);
+        for (int i = 0; i < BURST; i++) {
+            messages.add(WorkMessage.of("ping", ImmutableMap.of("i", i)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        asyncSender.stop();
+        jedisPool.close();
+    }
+
+    @Benchmark
+    public void send() {
+        sender.send(messages.get(0));
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void sendFromThreads() {
+        sender.send(messages.get(0));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void sendBatch() {
+        sender.sendBatch(messages);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void sendAsync() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(BURST);
+        for (WorkMessage message : messages) {
+            futures.add(asyncSender.sendAsync(message));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+}
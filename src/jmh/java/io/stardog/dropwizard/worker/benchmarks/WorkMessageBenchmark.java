@@ -0,0 +1,65 @@
+package io.stardog.dropwizard.worker.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson round trips of WorkMessages through WorkerDefaults.MAPPER, as every sender and worker does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkMessageBenchmark {
+    private WorkMessage message;
+    private String json;
+    private String jsonWithoutParams;
+
+    @Setup
+    public void setUp() throws Exception {
+        message = WorkMessage.of("send-email", ImmutableMap.of(
+                "userId", "5b9f6a1e2c8d4e0001a1b2c3",
+                "template", "welcome",
+                "count", 3,
+                "tags", ImmutableMap.of("campaign", "fall", "priority", true)),
+                Instant.ofEpochMilli(1540000000000L));
+        json = WorkerDefaults.MAPPER.writeValueAsString(message);
+        jsonWithoutParams = WorkerDefaults.MAPPER.writeValueAsString(WorkMessage.of("ping"));
+    }
+
+    @Benchmark
+    public String serialize() throws Exception {
+        return WorkerDefaults.MAPPER.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public WorkMessage deserialize() throws Exception {
+        return WorkerDefaults.MAPPER.readValue(json, WorkMessage.class);
+    }
+
+    @Benchmark
+    public WorkMessage deserializeWithoutParams() throws Exception {
+        return WorkerDefaults.MAPPER.readValue(jsonWithoutParams, WorkMessage.class);
+    }
+
+    @Benchmark
+    public WorkMessage roundTrip() throws Exception {
+        return WorkerDefaults.MAPPER.readValue(WorkerDefaults.MAPPER.writeValueAsString(message), WorkMessage.class);
+    }
+}
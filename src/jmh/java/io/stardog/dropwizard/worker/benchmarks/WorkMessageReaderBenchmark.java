@@ -0,0 +1,78 @@
+package io.stardog.dropwizard.worker.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.util.WorkMessageReader;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting from a message payload to a call of a method that takes a params class: reading the message into a map
+ * and then converting the map, versus reading the params straight into the class with WorkMessageReader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkMessageReaderBenchmark {
+    private WorkMethods methods;
+    private WorkMessageReader reader;
+    private String json;
+
+    public static class EmailParams {
+        public String userId;
+        public String template;
+        public int count;
+        public List<String> tags;
+        public Map<String,Object> extra;
+    }
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws Exception {
+        methods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.fn("send-email", WorkerDefaults.MAPPER, EmailParams.class, p -> {
+                    blackhole.consume(p);
+                    return true;
+                })));
+        reader = new WorkMessageReader(WorkerDefaults.MAPPER, methods);
+        json = WorkerDefaults.MAPPER.writeValueAsString(WorkMessage.of("send-email", ImmutableMap.of(
+                "userId", "5b9f6a1e2c8d4e0001a1b2c3",
+                "template", "welcome",
+                "count", 3,
+                "tags", ImmutableList.of("fall", "onboarding"),
+                "extra", ImmutableMap.of("campaign", "fall", "priority", true)),
+                Instant.ofEpochMilli(1540000000000L)));
+    }
+
+    @Benchmark
+    public boolean mapThenConvert() throws Exception {
+        WorkMessage message = WorkerDefaults.MAPPER.readValue(json, WorkMessage.class);
+        return methods.getMethod(message.getMethod()).getFunction().apply(message.getParams());
+    }
+
+    @Benchmark
+    public boolean streamingTyped() throws Exception {
+        WorkMessage message = reader.read(json);
+        return methods.getMethod(message.getMethod()).apply(message);
+    }
+}
@@ -0,0 +1,84 @@
+package io.stardog.dropwizard.worker.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up methods by name, and the params conversion done by WorkMethod.fn(name, mapper, class, func).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkMethodBenchmark {
+    @Param({"10", "100"})
+    public int methodCount;
+
+    private WorkMethods methods;
+    private String lookupName;
+    private WorkMethod rawMethod;
+    private WorkMethod typedMethod;
+    private Map<String,Object> params;
+
+    public static class EmailParams {
+        public String userId;
+        public String template;
+        public int count;
+    }
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        List<WorkMethod> list = new ArrayList<>(methodCount);
+        for (int i = 0; i < methodCount; i++) {
+            list.add(WorkMethod.of("method-" + i, p -> { }));
+        }
+        methods = WorkMethods.of(list);
+        lookupName = "method-" + (methodCount / 2);
+
+        rawMethod = WorkMethod.fn("raw", p -> {
+            blackhole.consume(p);
+            return true;
+        });
+        typedMethod = WorkMethod.fn("typed", WorkerDefaults.MAPPER, EmailParams.class, p -> {
+            blackhole.consume(p);
+            return true;
+        });
+        params = ImmutableMap.of("userId", "5b9f6a1e2c8d4e0001a1b2c3", "template", "welcome", "count", 3);
+    }
+
+    @Benchmark
+    public WorkMethod getMethod() {
+        return methods.getMethod(lookupName);
+    }
+
+    @Benchmark
+    public Boolean applyMapParams() {
+        return rawMethod.getFunction().apply(params);
+    }
+
+    @Benchmark
+    public Boolean applyTypedParams() {
+        return typedMethod.getFunction().apply(params);
+    }
+}
@@ -0,0 +1,86 @@
+package io.stardog.dropwizard.worker.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.WorkerManager;
+import io.stardog.dropwizard.worker.data.LocalWorkerConfig;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.data.WorkerConfig;
+import io.stardog.dropwizard.worker.workers.LocalWorker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end throughput of a WorkerManager scaling up threads to drain a LocalWorker of no-op messages.
+ * Each invocation queues a burst of messages and waits until all of them have been processed, so this
+ * includes the cost of the manager ramping its threads up from one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkerManagerBenchmark {
+    private final static int BURST = 10000;
+
+    @Param({"1", "4", "16"})
+    public int threads;
+
+    private final AtomicLong processed = new AtomicLong();
+    private LocalWorker worker;
+    private WorkerManager manager;
+    private WorkMessage message;
+
+    @Setup
+    public void setUp() throws Exception {
+        WorkMethods methods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("noop", params -> processed.incrementAndGet())
+        ));
+        worker = new LocalWorker(methods, LocalWorkerConfig.builder().queueCapacity(BURST).build());
+        // poll again almost immediately when idle, so that the sleeper interval doesn't dominate
+        WorkerConfig config = WorkerConfig.builder()
+                .maxThreads(threads)
+                .minIntervalMillis(0)
+                .incIntervalMillis(1)
+                .maxIntervalMillis(1)
+                .build();
+        manager = new WorkerManager("benchmark", config, worker, new MetricRegistry());
+        manager.start();
+        message = WorkMessage.of("noop");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        manager.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public long drainBurst() {
+        long target = processed.get() + BURST;
+        for (int i = 0; i < BURST; i++) {
+            worker.submitMessage(message);
+        }
+        while (processed.get() < target) {
+            Thread.yield();
+        }
+        return processed.get();
+    }
+}
@@ -0,0 +1,310 @@
+package io.stardog.dropwizard.worker;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.lifecycle.Managed;
+import io.stardog.dropwizard.worker.data.WorkerConfig;
+import io.stardog.dropwizard.worker.data.WorkerShareConfig;
+import io.stardog.dropwizard.worker.interfaces.ManagedWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages several workers, usually one per queue, on a single pool of maxThreads threads, instead of giving each
+ * its own WorkerManager and pool.
+ *
+ * Each thread polls one worker at a time, and the workers take turns by deficit round-robin: in each round, a busy
+ * worker gets as many polls as its weight. A worker that finds no messages drops out of the rotation and is
+ * polled by a single thread, after an idle interval that grows as it would under WorkerManager, so that busy
+ * workers borrow the threads idle ones aren't using. Workers below their minThreads are polled ahead of the
+ * rotation, and workers at their maxThreads are left out of it.
+ *
+ * Records the following gauges:
+ *   MultiWorkerManager.[name].[queue].workers
+ *     number of threads currently polling or processing the queue
+ *   MultiWorkerManager.[name].[queue].share
+ *     fraction of maxThreads currently polling or processing the queue
+ *   MultiWorkerManager.[name].[queue].interval
+ *     the queue's current idle interval
+ */
+public class MultiWorkerManager implements Managed {
+    private final String name;
+    private final WorkerConfig config;
+    private final MetricRegistry metrics;
+    private final List<Share> shares = new ArrayList<>();
+    private final ExecutorService executor;
+    private int cursor = 0;
+    private volatile boolean isRunning = false;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(MultiWorkerManager.class);
+
+    /**
+     * @param config    maxThreads is the thread budget shared by every worker; the intervals apply to each worker
+     */
+    public MultiWorkerManager(String name, WorkerConfig config, MetricRegistry metrics) {
+        this.name = name;
+        this.config = config;
+        this.metrics = metrics;
+        this.executor = Executors.newFixedThreadPool(config.getMaxThreads());
+    }
+
+    /**
+     * Add a worker to be managed, with an equal share of the threads.
+     */
+    public MultiWorkerManager addWorker(String queue, ManagedWorker worker) {
+        return addWorker(queue, worker, WorkerShareConfig.builder().build());
+    }
+
+    /**
+     * Add a worker to be managed. Workers must all be added before the manager starts.
+     * @param queue name of the worker's queue, used in the metric names
+     */
+    public MultiWorkerManager addWorker(String queue, ManagedWorker worker, WorkerShareConfig shareConfig) {
+        if (isRunning) {
+            throw new IllegalStateException("Workers must be added before " + name + " starts");
+        }
+        int reserved = shareConfig.getMinThreads();
+        for (Share share : shares) {
+            if (share.queue.equals(queue)) {
+                throw new IllegalArgumentException("Queue " + queue + " has already been added to " + name);
+            }
+            reserved += share.config.getMinThreads();
+        }
+        if (reserved > config.getMaxThreads()) {
+            throw new IllegalArgumentException("minThreads of the workers add up to more than maxThreads of " + name);
+        }
+
+        Share share = new Share(queue, worker, shareConfig, this.config.getMinIntervalMillis());
+        shares.add(share);
+        worker.setWakeUpHook(() -> wakeUp(share));
+        return this;
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (shares.isEmpty()) {
+            throw new IllegalStateException("No workers have been added to " + name);
+        }
+        LOGGER.info("Starting " + name + " with " + shares.size() + " workers and config: " + config);
+
+        for (Share share : shares) {
+            share.worker.start();
+            metrics.register(MetricRegistry.name(MultiWorkerManager.class, name, share.queue, "workers"),
+                    (Gauge<Integer>) () -> share.inUse);
+            metrics.register(MetricRegistry.name(MultiWorkerManager.class, name, share.queue, "share"),
+                    (Gauge<Double>) () -> (double)share.inUse / config.getMaxThreads());
+            metrics.register(MetricRegistry.name(MultiWorkerManager.class, name, share.queue, "interval"),
+                    (Gauge<Long>) () -> share.intervalMillis);
+        }
+
+        isRunning = true;
+        for (int i = 0; i < config.getMaxThreads(); i++) {
+            executor.submit(this::runProcessMessages);
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        LOGGER.info("Starting shutdown");
+
+        synchronized (this) {
+            isRunning = false;
+            notifyAll();
+        }
+
+        LOGGER.debug("Draining workers");
+        for (Share share : shares) {
+            try {
+                share.worker.drain();
+            } catch (Exception e) {
+                LOGGER.warn("Exception draining " + share.queue, e);
+            }
+        }
+
+        LOGGER.debug("Shutting down executor");
+        executor.shutdown();
+        long maxShutdownMillis = config.getMaxShutdownMillis();
+        LOGGER.debug("Awaiting termination for " + maxShutdownMillis + "ms");
+        executor.awaitTermination(maxShutdownMillis, TimeUnit.MILLISECONDS);
+        executor.shutdownNow();
+
+        // only once the jobs in flight have finished, as the workers may still be looking after them
+        LOGGER.debug("Shutting down workers");
+        for (Share share : shares) {
+            share.worker.stop();
+        }
+
+        LOGGER.info("Finished shutdown");
+    }
+
+    /**
+     * Poll the worker for a queue right away if it is sleeping out its idle interval, for when it's known that
+     * messages are waiting.
+     */
+    public void wakeUp(String queue) {
+        for (Share share : shares) {
+            if (share.queue.equals(queue)) {
+                wakeUp(share);
+            }
+        }
+    }
+
+    private synchronized void wakeUp(Share share) {
+        // a poll still under way may have missed the message, so the last thread out of it shouldn't sleep
+        share.wokenUp = true;
+        if (share.idle) {
+            share.intervalMillis = config.getMinIntervalMillis();
+            share.nextPollAt = 0;
+            notifyAll();
+        }
+    }
+
+    /**
+     * The loop each of the maxThreads threads runs: take the next worker due a poll, and poll it.
+     */
+    private void runProcessMessages() {
+        while (isRunning) {
+            Share share;
+            try {
+                share = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (share == null) {
+                return;
+            }
+
+            boolean needsMore = false;
+            try {
+                needsMore = share.worker.processMessages();
+            } catch (Exception e) {
+                LOGGER.error("Exception processing messages from " + share.queue, e);
+            } finally {
+                release(share, needsMore);
+            }
+        }
+    }
+
+    /**
+     * Wait for a worker to be due a poll, and claim a thread for it. Returns null once the manager has stopped.
+     */
+    private synchronized Share take() throws InterruptedException {
+        while (isRunning) {
+            long now = System.currentTimeMillis();
+            Share share = pick(now);
+            if (share != null) {
+                share.inUse++;
+                share.wokenUp = false;
+                return share;
+            }
+
+            long waitMillis = Long.MAX_VALUE;
+            for (Share idle : shares) {
+                if (idle.idle && idle.inUse == 0) {
+                    waitMillis = Math.min(waitMillis, idle.nextPollAt - now);
+                }
+            }
+            if (waitMillis == Long.MAX_VALUE) {
+                // every worker is busy to its limit, so wait for a thread to finish
+                wait();
+            } else {
+                wait(Math.max(1, waitMillis));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Choose the worker to poll next: first any busy worker below its minThreads, then the next worker in the
+     * deficit round-robin. Returns null if no worker is due a poll.
+     */
+    private Share pick(long now) {
+        for (Share share : shares) {
+            if (share.inUse < share.config.getMinThreads() && isDue(share, now)) {
+                return share;
+            }
+        }
+
+        for (int i = 0; i < shares.size(); i++) {
+            Share share = shares.get(cursor);
+            if (!isDue(share, now)) {
+                // a worker that can't use a thread doesn't bank its turn for later
+                share.deficit = 0;
+                cursor = (cursor + 1) % shares.size();
+                continue;
+            }
+            if (share.deficit <= 0) {
+                share.deficit = share.config.getWeight();
+            }
+            share.deficit--;
+            if (share.deficit <= 0) {
+                cursor = (cursor + 1) % shares.size();
+            }
+            return share;
+        }
+        return null;
+    }
+
+    private boolean isDue(Share share, long now) {
+        int maxThreads = share.config.getMaxThreads();
+        if (maxThreads > 0 && share.inUse >= maxThreads) {
+            return false;
+        }
+        if (share.idle) {
+            return share.inUse == 0 && now >= share.nextPollAt;
+        }
+        return true;
+    }
+
+    private synchronized void release(Share share, boolean needsMore) {
+        share.inUse--;
+        if (needsMore) {
+            share.idle = false;
+            share.intervalMillis = config.getMinIntervalMillis();
+        } else {
+            share.idle = true;
+            if (share.inUse == 0 && share.wokenUp) {
+                share.intervalMillis = config.getMinIntervalMillis();
+                share.nextPollAt = 0;
+            } else if (share.inUse == 0) {
+                // the last thread out of an empty queue sets when it is next polled
+                share.intervalMillis = config.getIdleBackoff().nextIntervalMillis(share.intervalMillis,
+                        config.getIncIntervalMillis(), config.getMaxIntervalMillis());
+                share.nextPollAt = System.currentTimeMillis() + share.intervalMillis;
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * The state of one worker, guarded by the manager's lock.
+     */
+    private static class Share {
+        private final String queue;
+        private final ManagedWorker worker;
+        private final WorkerShareConfig config;
+        private volatile int inUse = 0;
+        private volatile long intervalMillis;
+        private boolean idle = true;
+        private boolean wokenUp = false;
+        private long nextPollAt = 0;
+        private int deficit = 0;
+
+        Share(String queue, ManagedWorker worker, WorkerShareConfig config, long intervalMillis) {
+            this.queue = queue;
+            this.worker = worker;
+            this.config = config;
+            this.intervalMillis = intervalMillis;
+        }
+    }
+}
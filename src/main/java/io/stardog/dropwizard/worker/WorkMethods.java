@@ -2,6 +2,8 @@ package io.stardog.dropwizard.worker;
 
 import io.stardog.dropwizard.worker.data.WorkMethod;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -25,9 +27,14 @@ public class WorkMethods {
     }
 
     public WorkMethod getMethod(String name) {
-        if (!methodMap.containsKey(name)) {
+        WorkMethod method = methodMap.get(name);
+        if (method == null) {
             throw new IllegalArgumentException("Unknown work method: " + name);
         }
-        return methodMap.get(name);
+        return method;
+    }
+
+    public Collection<WorkMethod> getMethods() {
+        return Collections.unmodifiableCollection(methodMap.values());
     }
 }
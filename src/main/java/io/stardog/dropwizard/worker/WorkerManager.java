@@ -2,37 +2,67 @@ package io.stardog.dropwizard.worker;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.dropwizard.lifecycle.Managed;
 import io.stardog.dropwizard.worker.data.WorkerConfig;
+import io.stardog.dropwizard.worker.interfaces.ConcurrencyLimit;
 import io.stardog.dropwizard.worker.interfaces.ManagedWorker;
+import io.stardog.dropwizard.worker.util.VirtualThreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Manages a worker, polling it on a pool of up to maxThreads threads while it has messages, and backing off to
+ * an idle interval while it doesn't.
+ *
+ * On stop, the worker is drained first: it stops taking messages and releases any it has received but not
+ * started, then the threads are given up to maxShutdownMillis to finish the messages in flight. The worker itself
+ * is only stopped after that, so that it can keep looking after those messages, such as extending their visibility.
+ *
+ * Records the following gauges:
+ *   WorkerManager.[name].workers
+ *     number of threads currently polling or processing
+ *   WorkerManager.[name].interval
+ *     the current idle interval
+ *   WorkerManager.[name].limit
+ *     number of threads to keep working while there are messages
+ *
+ * And the following timers:
+ *   WorkerManager.[name].drain
+ *     how long shutdown took, from draining the worker to the last thread finishing
+ */
 @Singleton
 public class WorkerManager implements Managed {
     private final String name;
     private final ManagedWorker worker;
     private final Provider<WorkerConfig> configProvider;
     private final MetricRegistry metrics;
+    private final ConcurrencyLimit limit;
 
     private final AtomicInteger workerCount = new AtomicInteger(0);
 
     private final ScheduledExecutorService scheduler;
-    private ScheduledFuture<?> sleeper = null;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private volatile ScheduledFuture<?> sleeper = null;
+    private volatile boolean wakeUpRequested = false;
     private volatile boolean isRunning = false;
-    private long currentIntervalMillis;
+    private volatile long currentIntervalMillis;
 
     private final static Logger LOGGER = LoggerFactory.getLogger(WorkerManager.class);
 
@@ -42,15 +72,42 @@ public class WorkerManager implements Managed {
     }
 
     public WorkerManager(String name, Provider<WorkerConfig> configProvider, ManagedWorker worker, MetricRegistry metrics) {
+        this(name, configProvider, worker, metrics, null);
+    }
+
+    /**
+     * @param limit chooses how many threads to keep working while there are messages, up to maxThreads; if null,
+     *              threads are added while there are messages until there are maxThreads of them
+     */
+    public WorkerManager(String name, Provider<WorkerConfig> configProvider, ManagedWorker worker, MetricRegistry metrics, @Nullable ConcurrencyLimit limit) {
         this.name = name;
         this.worker = worker;
         this.configProvider = configProvider;
         this.metrics = metrics;
+        this.limit = limit;
 
         WorkerConfig config = configProvider.get();
 
-        this.scheduler = Executors.newScheduledThreadPool(config.getMaxThreads());
+        ExecutorService virtualExecutor = config.isVirtualThreads() ? VirtualThreads.newExecutor() : null;
+        if (virtualExecutor != null) {
+            // a single platform thread handles the idle timers, and a semaphore takes the place of the pool size
+            this.scheduler = Executors.newSingleThreadScheduledExecutor();
+            this.executor = virtualExecutor;
+            this.permits = new Semaphore(config.getMaxThreads());
+        } else {
+            if (config.isVirtualThreads()) {
+                LOGGER.warn("Virtual threads are not supported by this JVM, using platform threads for " + name);
+            }
+            this.scheduler = Executors.newScheduledThreadPool(config.getMaxThreads());
+            this.executor = scheduler;
+            this.permits = null;
+        }
         this.currentIntervalMillis = config.getMinIntervalMillis();
+
+        if (limit != null) {
+            worker.addListener(limit);
+        }
+        worker.setWakeUpHook(this::wakeUp);
     }
 
     public boolean isRunning() {
@@ -68,6 +125,8 @@ public class WorkerManager implements Managed {
                 (Gauge<Integer>) ()-> workerCount.get());
         metrics.register(MetricRegistry.name(WorkerManager.class, name, "interval"),
                 (Gauge<Long>) ()-> currentIntervalMillis);
+        metrics.register(MetricRegistry.name(WorkerManager.class, name, "limit"),
+                (Gauge<Integer>) this::getTargetWorkers);
 
         isRunning = true;
         submitProcessMessages();
@@ -76,6 +135,7 @@ public class WorkerManager implements Managed {
     @Override
     public void stop() throws Exception {
         LOGGER.info("Starting shutdown");
+        Timer.Context drainTimer = metrics.timer(MetricRegistry.name(WorkerManager.class, name, "drain")).time();
 
         isRunning = false;
         if (sleeper != null) {
@@ -83,22 +143,49 @@ public class WorkerManager implements Managed {
             sleeper.cancel(false);
         }
 
-        LOGGER.debug("Shutting down worker");
-        worker.stop();
+        LOGGER.debug("Draining worker");
+        try {
+            worker.drain();
+        } catch (Exception e) {
+            LOGGER.warn("Exception draining worker", e);
+        }
 
         LOGGER.debug("Shutting down scheduler");
         scheduler.shutdown();
+        executor.shutdown();
         long maxShutdownMillis = configProvider.get().getMaxShutdownMillis();
         LOGGER.debug("Awaiting termination for " + maxShutdownMillis + "ms");
-        scheduler.awaitTermination(maxShutdownMillis, TimeUnit.MILLISECONDS);
+        executor.awaitTermination(maxShutdownMillis, TimeUnit.MILLISECONDS);
+        executor.shutdownNow();
         scheduler.shutdownNow();
 
-        LOGGER.info("Finished shutdown");
+        // only once the jobs in flight have finished, as the worker may still be looking after them (such as
+        // extending their visibility)
+        LOGGER.debug("Shutting down worker");
+        worker.stop();
+
+        long drainNanos = drainTimer.stop();
+        LOGGER.info("Finished shutdown in " + TimeUnit.NANOSECONDS.toMillis(drainNanos) + "ms");
+    }
+
+    /**
+     * Start polling right away if the manager is sleeping between idle polls, for when it's known that messages
+     * are waiting. Does nothing if threads are already working.
+     */
+    public void wakeUp() {
+        // if the last poll is still finishing, it may have missed the message; decWorkers sees this before sleeping
+        wakeUpRequested = true;
+        ScheduledFuture<?> current = sleeper;
+        if (isRunning && current != null && current.cancel(false)) {
+            LOGGER.debug("Waking up");
+            currentIntervalMillis = configProvider.get().getMinIntervalMillis();
+            submitProcessMessages();
+        }
     }
 
     protected void submitProcessMessages() {
         try {
-            scheduler.submit(() -> { this.processMessages(); });
+            executor.submit(this::runProcessMessages);
         } catch (Exception e) {
             if (!isRunning) {
                 return;
@@ -111,7 +198,9 @@ public class WorkerManager implements Managed {
     protected void scheduleProcessMessages(long millis) {
         try {
             LOGGER.debug("Scheduling next processMessages in " + millis + "ms");
-            sleeper = scheduler.schedule(() -> { this.processMessages(); }, millis, TimeUnit.MILLISECONDS);
+            // with virtual threads, the timer thread only hands the poll off
+            Runnable poll = executor == scheduler ? this::runProcessMessages : this::submitProcessMessages;
+            sleeper = scheduler.schedule(poll, millis, TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             if (!isRunning) {
                 return;
@@ -121,11 +210,34 @@ public class WorkerManager implements Managed {
         }
     }
 
+    private void runProcessMessages() {
+        if (permits == null) {
+            processMessages();
+            return;
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            processMessages();
+        } finally {
+            permits.release();
+        }
+    }
+
     protected void processMessages() {
         while (isRunning) {
             try {
+                wakeUpRequested = false;
                 boolean needsMoreWorkers = worker.processMessages();
-                if (needsMoreWorkers) {
+                if (needsMoreWorkers && workerCount.get() > getTargetWorkers()) {
+                    // the limit has come down, so this thread can stop
+                    decWorkers();
+                    return;
+                } else if (needsMoreWorkers) {
                     incWorkers();
                 } else {
                     decWorkers();
@@ -139,13 +251,22 @@ public class WorkerManager implements Managed {
         }
     }
 
+    /**
+     * How many threads should be working while there are messages: maxThreads, or less if the limit says so.
+     */
+    public int getTargetWorkers() {
+        int maxThreads = configProvider.get().getMaxThreads();
+        return limit != null ? Math.min(maxThreads, limit.getLimit()) : maxThreads;
+    }
+
     protected void incWorkers() {
         WorkerConfig config = configProvider.get();
-        if (workerCount.get() >= config.getMaxThreads()) {
+        int targetWorkers = getTargetWorkers();
+        if (workerCount.get() >= targetWorkers) {
             return;
         }
         int currentCount = workerCount.incrementAndGet();
-        if (currentCount > config.getMaxThreads()) {
+        if (currentCount > targetWorkers) {
             workerCount.decrementAndGet();
         } else {
             LOGGER.debug("Increasing workerCount to " + currentCount);
@@ -163,11 +284,21 @@ public class WorkerManager implements Managed {
         if (currentCount <= 0) {
             currentCount = workerCount.incrementAndGet();
             if (currentCount == 1) {
-                currentIntervalMillis = Math.min(currentIntervalMillis + config.getIncIntervalMillis(), config.getMaxIntervalMillis());
+                currentIntervalMillis = nextIntervalMillis(config, currentIntervalMillis);
                 scheduleProcessMessages(currentIntervalMillis);
+                if (wakeUpRequested) {
+                    wakeUp();
+                }
             } else {
                 workerCount.decrementAndGet();
             }
         }
     }
+
+    /**
+     * Work out how long to sleep before the next poll, after a poll that found nothing.
+     */
+    protected long nextIntervalMillis(WorkerConfig config, long intervalMillis) {
+        return config.getIdleBackoff().nextIntervalMillis(intervalMillis, config.getIncIntervalMillis(), config.getMaxIntervalMillis());
+    }
 }
@@ -0,0 +1,52 @@
+package io.stardog.dropwizard.worker.blobs;
+
+import io.stardog.dropwizard.worker.interfaces.BlobStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps blobs as files in a local directory. Only useful when every sender and worker shares that directory,
+ * so mostly for tests and local development.
+ */
+public class FileBlobStore implements BlobStore {
+    private final static Pattern VALID_KEY = Pattern.compile("[A-Za-z0-9_.-]+");
+
+    private final Path directory;
+
+    public FileBlobStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public void put(String key, byte[] data) throws IOException {
+        // write to a temporary file first, so that a reader never sees a partial blob
+        Path temp = Files.createTempFile(directory, ".blob", ".tmp");
+        try {
+            Files.write(temp, data);
+            Files.move(temp, resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public byte[] get(String key) throws IOException {
+        return Files.readAllBytes(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    private Path resolve(String key) {
+        if (!VALID_KEY.matcher(key).matches() || key.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid blob key: " + key);
+        }
+        return directory.resolve(key);
+    }
+}
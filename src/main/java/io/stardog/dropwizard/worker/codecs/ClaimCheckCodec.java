@@ -0,0 +1,76 @@
+package io.stardog.dropwizard.worker.codecs;
+
+import com.fasterxml.jackson.core.JsonParser;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.BlobStore;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
+import io.stardog.dropwizard.worker.senders.SqsSender;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Keeps payloads written by another codec that are over a threshold size in a BlobStore, and sends only their
+ * key behind the marker "blob1:". Smaller payloads are left as the other codec wrote them.
+ *
+ * Reading, referenced payloads are fetched from the store and handed to the other codec; everything else goes
+ * straight to it. Workers therefore need a ClaimCheckCodec on the same store to read these messages.
+ *
+ * Blobs are not deleted once their message is processed, since a message may be delivered more than once;
+ * expire them with the store's own retention instead, such as an S3 lifecycle rule.
+ */
+public class ClaimCheckCodec implements MessageCodec {
+    public final static String MARKER = "blob1:";
+
+    private final MessageCodec codec;
+    private final BlobStore store;
+    private final int thresholdBytes;
+
+    /**
+     * @param codec codec to write the payloads to store, and to read them once fetched
+     * @param store store to keep large payloads in
+     * @param thresholdBytes    size in bytes above which payloads are stored
+     */
+    public ClaimCheckCodec(MessageCodec codec, BlobStore store, int thresholdBytes) {
+        if (thresholdBytes < MARKER.length() + 36) {
+            throw new IllegalArgumentException("thresholdBytes must leave room for a blob reference");
+        }
+        this.codec = codec;
+        this.store = store;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    /**
+     * Stores payloads over the SQS size limit.
+     */
+    public ClaimCheckCodec(MessageCodec codec, BlobStore store) {
+        this(codec, store, SqsSender.MAX_PAYLOAD_BYTES);
+    }
+
+    @Override
+    public String getMarker() {
+        return MARKER;
+    }
+
+    @Override
+    public String encode(WorkMessage message) throws IOException {
+        String payload = codec.encode(message);
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= thresholdBytes) {
+            return payload;
+        }
+        String key = UUID.randomUUID().toString();
+        store.put(key, bytes);
+        return MARKER + key;
+    }
+
+    @Override
+    public JsonParser createParser(String payload) throws IOException {
+        if (!payload.startsWith(MARKER)) {
+            return codec.createParser(payload);
+        }
+        byte[] bytes = store.get(payload.substring(MARKER.length()));
+        return codec.createParser(new String(bytes, StandardCharsets.UTF_8));
+    }
+}
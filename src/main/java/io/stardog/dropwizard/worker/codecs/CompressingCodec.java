@@ -0,0 +1,91 @@
+package io.stardog.dropwizard.worker.codecs;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips the payloads written by another codec once they reach a threshold size, base64 encoding them behind
+ * the marker "gz1:". Smaller payloads, and any that would not come out smaller, are left as the other codec
+ * wrote them.
+ *
+ * Reading, compressed payloads are decompressed and handed to the other codec; everything else goes straight to it.
+ */
+public class CompressingCodec implements MessageCodec {
+    public final static String MARKER = "gz1:";
+    public final static int DEFAULT_THRESHOLD_BYTES = 8192;
+
+    private final MessageCodec codec;
+    private final int thresholdBytes;
+
+    /**
+     * @param codec codec to write the payloads to compress, and to read them once decompressed
+     * @param thresholdBytes    size in bytes from which payloads are compressed
+     */
+    public CompressingCodec(MessageCodec codec, int thresholdBytes) {
+        if (thresholdBytes < 0) {
+            throw new IllegalArgumentException("thresholdBytes must not be negative");
+        }
+        this.codec = codec;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    public CompressingCodec(MessageCodec codec) {
+        this(codec, DEFAULT_THRESHOLD_BYTES);
+    }
+
+    @Override
+    public String getMarker() {
+        return MARKER;
+    }
+
+    @Override
+    public String encode(WorkMessage message) throws IOException {
+        String payload = codec.encode(message);
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < thresholdBytes) {
+            return payload;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(bytes);
+        }
+        String encoded = MARKER + Base64.getEncoder().encodeToString(compressed.toByteArray());
+        return encoded.length() < payload.length() ? encoded : payload;
+    }
+
+    @Override
+    public JsonParser createParser(String payload) throws IOException {
+        if (!payload.startsWith(MARKER)) {
+            return codec.createParser(payload);
+        }
+
+        byte[] compressed;
+        try {
+            compressed = Base64.getDecoder().decode(payload.substring(MARKER.length()));
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(null, "Payload is not valid base64", e);
+        }
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream(compressed.length * 4);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                decompressed.write(buffer, 0, read);
+            }
+        }
+        return codec.createParser(new String(decompressed.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,39 @@
+package io.stardog.dropwizard.worker.codecs;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+
+import java.io.IOException;
+
+/**
+ * Plain JSON, with no marker: the format every version of this library has read and written.
+ */
+public class JsonCodec implements MessageCodec {
+    private final ObjectMapper mapper;
+
+    public JsonCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public JsonCodec() {
+        this(WorkerDefaults.MAPPER);
+    }
+
+    @Override
+    public String getMarker() {
+        return "";
+    }
+
+    @Override
+    public String encode(WorkMessage message) throws IOException {
+        return mapper.writeValueAsString(message);
+    }
+
+    @Override
+    public JsonParser createParser(String payload) throws IOException {
+        return mapper.getFactory().createParser(payload);
+    }
+}
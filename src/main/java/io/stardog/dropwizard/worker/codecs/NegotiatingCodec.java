@@ -0,0 +1,72 @@
+package io.stardog.dropwizard.worker.codecs;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes one format, and reads any of several, telling them apart by their markers.
+ *
+ * Workers read with one of these by default, so a format can be rolled out without a flag day: upgrade the
+ * workers first, and then switch the senders over.
+ */
+public class NegotiatingCodec implements MessageCodec {
+    private final MessageCodec encoder;
+    private final List<MessageCodec> decoders;
+
+    /**
+     * @param encoder   codec to write messages with
+     * @param decoders  codecs to read messages with; at most one of them may be unmarked
+     */
+    public NegotiatingCodec(MessageCodec encoder, Collection<MessageCodec> decoders) {
+        this.encoder = encoder;
+        this.decoders = ImmutableList.copyOf(decoders);
+        if (this.decoders.stream().filter(d -> d.getMarker().isEmpty()).count() > 1) {
+            throw new IllegalArgumentException("At most one codec may be unmarked");
+        }
+    }
+
+    /**
+     * Writes plain JSON with the given mapper, and reads plain JSON and CBOR, compressed or not.
+     */
+    public static NegotiatingCodec of(ObjectMapper mapper) {
+        JsonCodec json = new JsonCodec(mapper);
+        CborCodec cbor = new CborCodec();
+        NegotiatingCodec formats = new NegotiatingCodec(json, ImmutableList.of(json, cbor));
+        return new NegotiatingCodec(json, ImmutableList.of(json, cbor, new CompressingCodec(formats)));
+    }
+
+    @Override
+    public String getMarker() {
+        return encoder.getMarker();
+    }
+
+    @Override
+    public String encode(WorkMessage message) throws IOException {
+        return encoder.encode(message);
+    }
+
+    @Override
+    public JsonParser createParser(String payload) throws IOException {
+        MessageCodec unmarked = null;
+        for (MessageCodec decoder : decoders) {
+            String marker = decoder.getMarker();
+            if (marker.isEmpty()) {
+                unmarked = decoder;
+            } else if (payload.startsWith(marker)) {
+                return decoder.createParser(payload);
+            }
+        }
+        if (unmarked == null) {
+            throw new JsonParseException(null, "Payload is not in any known format");
+        }
+        return unmarked.createParser(payload);
+    }
+}
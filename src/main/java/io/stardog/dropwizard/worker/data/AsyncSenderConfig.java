@@ -0,0 +1,67 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+@AutoValue
+@JsonDeserialize(builder=AutoValue_AsyncSenderConfig.Builder.class)
+public abstract class AsyncSenderConfig {
+    /** Flush as soon as this many messages are waiting **/
+    public abstract int getMaxBatchSize();
+    /** Flush before the size of a batch, as measured by the wrapped sender, would exceed this; 0 for no limit **/
+    public abstract int getMaxBatchBytes();
+    /** Flush once the oldest waiting message has waited this long **/
+    public abstract long getLingerMillis();
+    /** Maximum number of messages waiting to be flushed **/
+    public abstract int getBufferCapacity();
+    /** When the buffer is full, block the caller until there is room, rather than failing the send **/
+    public abstract boolean isBlockWhenFull();
+    /** Number of threads sending batches to the underlying sender **/
+    public abstract int getFlushThreads();
+
+    public abstract Builder toBuilder();
+    public static AsyncSenderConfig.Builder builder() { return new AutoValue_AsyncSenderConfig.Builder(); }
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            maxBatchSize(10);
+            maxBatchBytes(0);
+            lingerMillis(10L);
+            bufferCapacity(10000);
+            blockWhenFull(true);
+            flushThreads(1);
+        }
+        public abstract Builder maxBatchSize(int maxBatchSize);
+        public abstract Builder maxBatchBytes(int maxBatchBytes);
+        public abstract Builder lingerMillis(long millis);
+        public abstract Builder bufferCapacity(int bufferCapacity);
+        public abstract Builder blockWhenFull(boolean blockWhenFull);
+        public abstract Builder flushThreads(int flushThreads);
+
+        abstract AsyncSenderConfig autoBuild();
+
+        public AsyncSenderConfig build() {
+            AsyncSenderConfig config = autoBuild();
+            if (config.getMaxBatchSize() < 1) {
+                throw new IllegalArgumentException("maxBatchSize must be at least 1");
+            }
+            if (config.getMaxBatchBytes() < 0) {
+                throw new IllegalArgumentException("maxBatchBytes must not be negative");
+            }
+            if (config.getLingerMillis() < 0) {
+                throw new IllegalArgumentException("lingerMillis must not be negative");
+            }
+            if (config.getBufferCapacity() < 1) {
+                throw new IllegalArgumentException("bufferCapacity must be at least 1");
+            }
+            if (config.getFlushThreads() < 1) {
+                throw new IllegalArgumentException("flushThreads must be at least 1");
+            }
+            return config;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+@AutoValue
+@JsonDeserialize(builder=AutoValue_ConcurrencyLimitConfig.Builder.class)
+public abstract class ConcurrencyLimitConfig {
+    public abstract int getInitialLimit();
+    public abstract int getMinLimit();
+    public abstract int getMaxLimit();
+    /** Messages sampled before each change to the limit, so that it doesn't chase every slow message **/
+    public abstract int getWindowSize();
+    /** Messages waiting longer than this to be picked up show a backlog that more threads would help with **/
+    public abstract long getTargetDelayMillis();
+    /** Share of failed messages in a window above which the limit backs off **/
+    public abstract double getMaxErrorRate();
+    /** What the limit is multiplied by when it backs off **/
+    public abstract double getBackoffRatio();
+    /** AimdLimit: average processing time above which the limit backs off; 0 to go on errors alone **/
+    public abstract long getMaxLatencyMillis();
+    /** GradientLimit: how far processing time may rise above its long-term average before the limit shrinks **/
+    public abstract double getTolerance();
+
+    public abstract Builder toBuilder();
+    public static ConcurrencyLimitConfig.Builder builder() { return new AutoValue_ConcurrencyLimitConfig.Builder(); }
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            initialLimit(1);
+            minLimit(1);
+            maxLimit(100);
+            windowSize(50);
+            targetDelayMillis(1000L);
+            maxErrorRate(0.1);
+            backoffRatio(0.9);
+            maxLatencyMillis(0L);
+            tolerance(1.5);
+        }
+        public abstract Builder initialLimit(int initialLimit);
+        public abstract Builder minLimit(int minLimit);
+        public abstract Builder maxLimit(int maxLimit);
+        public abstract Builder windowSize(int windowSize);
+        public abstract Builder targetDelayMillis(long millis);
+        public abstract Builder maxErrorRate(double maxErrorRate);
+        public abstract Builder backoffRatio(double backoffRatio);
+        public abstract Builder maxLatencyMillis(long millis);
+        public abstract Builder tolerance(double tolerance);
+
+        abstract ConcurrencyLimitConfig autoBuild();
+
+        public ConcurrencyLimitConfig build() {
+            ConcurrencyLimitConfig config = autoBuild();
+            if (config.getMinLimit() < 1 || config.getMaxLimit() < config.getMinLimit()) {
+                throw new IllegalArgumentException("minLimit must be at least 1, and maxLimit at least minLimit");
+            }
+            if (config.getInitialLimit() < config.getMinLimit() || config.getInitialLimit() > config.getMaxLimit()) {
+                throw new IllegalArgumentException("initialLimit must be between minLimit and maxLimit");
+            }
+            if (config.getWindowSize() < 1) {
+                throw new IllegalArgumentException("windowSize must be at least 1");
+            }
+            if (config.getBackoffRatio() <= 0 || config.getBackoffRatio() >= 1) {
+                throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+            }
+            if (config.getTolerance() < 1) {
+                throw new IllegalArgumentException("tolerance must be at least 1");
+            }
+            return config;
+        }
+    }
+}
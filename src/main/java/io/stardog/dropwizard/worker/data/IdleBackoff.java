@@ -0,0 +1,41 @@
+package io.stardog.dropwizard.worker.data;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How the interval between polls grows while a worker keeps finding nothing to do.
+ */
+public enum IdleBackoff {
+    /** Add incIntervalMillis each time **/
+    LINEAR,
+    /** Start at incIntervalMillis and double each time **/
+    EXPONENTIAL,
+    /**
+     * Pick at random between incIntervalMillis and three times the last interval, so that workers on many
+     * nodes drift apart rather than polling in lockstep
+     */
+    DECORRELATED_JITTER;
+
+    /**
+     * Work out the next interval to sleep after a poll that found nothing.
+     * @param intervalMillis    the last interval
+     * @param incMillis the first interval, and the step between intervals
+     * @param maxMillis the longest interval
+     */
+    public long nextIntervalMillis(long intervalMillis, long incMillis, long maxMillis) {
+        long next;
+        switch (this) {
+            case EXPONENTIAL:
+                next = Math.max(incMillis, intervalMillis * 2);
+                break;
+            case DECORRELATED_JITTER:
+                long upperMillis = Math.max(incMillis, intervalMillis * 3);
+                next = ThreadLocalRandom.current().nextLong(incMillis, upperMillis + 1);
+                break;
+            default:
+                next = intervalMillis + incMillis;
+                break;
+        }
+        return Math.min(next, maxMillis);
+    }
+}
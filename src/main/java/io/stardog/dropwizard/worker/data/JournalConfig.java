@@ -0,0 +1,47 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+@AutoValue
+@JsonDeserialize(builder=AutoValue_JournalConfig.Builder.class)
+public abstract class JournalConfig {
+    public final static int MIN_SEGMENT_BYTES = 1024;
+
+    /** Directory holding the journal's segments and consumer offset, used by no other queue **/
+    public abstract String getDirectory();
+    /** Size of each memory-mapped segment file; no single message may be larger **/
+    public abstract int getSegmentBytes();
+    /** Number of times a message whose method throws is run before it is dropped **/
+    public abstract int getMaxAttempts();
+
+    public abstract Builder toBuilder();
+    public static JournalConfig.Builder builder() { return new AutoValue_JournalConfig.Builder(); }
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            segmentBytes(64 * 1024 * 1024);
+            maxAttempts(5);
+        }
+        public abstract Builder directory(String directory);
+        public abstract Builder segmentBytes(int segmentBytes);
+        public abstract Builder maxAttempts(int maxAttempts);
+
+        abstract JournalConfig autoBuild();
+
+        public JournalConfig build() {
+            JournalConfig config = autoBuild();
+            if (config.getSegmentBytes() < MIN_SEGMENT_BYTES) {
+                throw new IllegalArgumentException("segmentBytes must be at least " + MIN_SEGMENT_BYTES);
+            }
+            if (config.getMaxAttempts() < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            return config;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+
+@AutoValue
+@JsonDeserialize(builder=AutoValue_LocalWorkerConfig.Builder.class)
+public abstract class LocalWorkerConfig {
+    /** Maximum number of submitted messages waiting to be processed, rounded up to a power of two **/
+    public abstract int getQueueCapacity();
+    /** Maximum number of messages processed by each call to processMessages **/
+    public abstract int getBatchSize();
+    /** What to do with a submitted message when the queue is full **/
+    public abstract OverflowPolicy getOverflowPolicy();
+    /** Journal to keep messages in on disk, or null to keep them in memory only **/
+    @Nullable
+    public abstract JournalConfig getJournal();
+
+    public abstract Builder toBuilder();
+    public static LocalWorkerConfig.Builder builder() { return new AutoValue_LocalWorkerConfig.Builder(); }
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            queueCapacity(10000);
+            batchSize(10);
+            overflowPolicy(OverflowPolicy.BLOCK);
+        }
+        public abstract Builder queueCapacity(int queueCapacity);
+        public abstract Builder batchSize(int batchSize);
+        public abstract Builder overflowPolicy(OverflowPolicy overflowPolicy);
+        public abstract Builder journal(@Nullable JournalConfig journal);
+
+        abstract LocalWorkerConfig autoBuild();
+
+        public LocalWorkerConfig build() {
+            LocalWorkerConfig config = autoBuild();
+            if (config.getQueueCapacity() < 1) {
+                throw new IllegalArgumentException("queueCapacity must be at least 1");
+            }
+            if (config.getBatchSize() < 1) {
+                throw new IllegalArgumentException("batchSize must be at least 1");
+            }
+            return config;
+        }
+    }
+}
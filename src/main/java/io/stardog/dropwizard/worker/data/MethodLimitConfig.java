@@ -0,0 +1,56 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+@AutoValue
+@JsonDeserialize(builder=AutoValue_MethodLimitConfig.Builder.class)
+public abstract class MethodLimitConfig {
+    /** Most messages of the method to process at once, across all of a worker's threads; 0 for no limit **/
+    public abstract int getMaxConcurrent();
+    /** Most messages of the method to start per second, on average; 0 for no limit **/
+    public abstract double getRatePerSecond();
+    /** Most messages of the method to start at once after a quiet spell, under ratePerSecond **/
+    public abstract int getBurst();
+    /** How long to put off a message that arrives while its method is saturated **/
+    public abstract int getDeferSeconds();
+
+    public abstract Builder toBuilder();
+    public static MethodLimitConfig.Builder builder() { return new AutoValue_MethodLimitConfig.Builder(); }
+
+    public final static int MAX_DEFER_SECONDS = 43200;
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            maxConcurrent(0);
+            ratePerSecond(0);
+            burst(1);
+            deferSeconds(5);
+        }
+        public abstract Builder maxConcurrent(int maxConcurrent);
+        public abstract Builder ratePerSecond(double ratePerSecond);
+        public abstract Builder burst(int burst);
+        public abstract Builder deferSeconds(int deferSeconds);
+
+        abstract MethodLimitConfig autoBuild();
+
+        public MethodLimitConfig build() {
+            MethodLimitConfig config = autoBuild();
+            if (config.getMaxConcurrent() < 0 || config.getRatePerSecond() < 0) {
+                throw new IllegalArgumentException("maxConcurrent and ratePerSecond must not be negative");
+            }
+            if (config.getBurst() < 1) {
+                throw new IllegalArgumentException("burst must be at least 1");
+            }
+            if (config.getDeferSeconds() < 0 || config.getDeferSeconds() > MAX_DEFER_SECONDS) {
+                // SQS won't set a visibility timeout longer than 12 hours
+                throw new IllegalArgumentException("deferSeconds must be between 0 and " + MAX_DEFER_SECONDS);
+            }
+            return config;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.stardog.dropwizard.worker.data;
+
+/**
+ * What to do with a new message when a bounded dispatch queue is full.
+ */
+public enum OverflowPolicy {
+    /** Wait for room, holding up whoever is delivering messages **/
+    BLOCK,
+    /** Process the message on the delivering thread instead **/
+    CALLER_RUNS,
+    /** Drop the new message **/
+    DROP_NEWEST,
+    /** Drop the message that has been waiting longest, to make room for the new one **/
+    DROP_OLDEST
+}
@@ -0,0 +1,14 @@
+package io.stardog.dropwizard.worker.data;
+
+/**
+ * The lane a message is sent through: a PrioritySender sends each priority to its own queue, and a
+ * PriorityWorker polls the queues in priority order.
+ */
+public enum Priority {
+    /** Interactive work that someone is waiting on **/
+    HIGH,
+    /** Everything else; the priority of messages that don't set one **/
+    NORMAL,
+    /** Bulk work such as backfills, which can wait behind the other lanes **/
+    LOW
+}
@@ -0,0 +1,11 @@
+package io.stardog.dropwizard.worker.data;
+
+/**
+ * How a PriorityWorker chooses which lane to poll first.
+ */
+public enum PriorityPolicy {
+    /** Always poll the highest priority lane first, moving down only when it is empty **/
+    STRICT,
+    /** Share the first poll between the lanes in proportion to their weights **/
+    WEIGHTED
+}
@@ -0,0 +1,62 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+@AutoValue
+@JsonDeserialize(builder=AutoValue_PriorityWorkerConfig.Builder.class)
+public abstract class PriorityWorkerConfig {
+    public abstract PriorityPolicy getPolicy();
+    /** Under WEIGHTED, how often each lane is polled first, relative to the others **/
+    public abstract int getHighWeight();
+    public abstract int getNormalWeight();
+    public abstract int getLowWeight();
+    /** Poll a lane first if it hasn't been polled for this long, however busy the lanes above it are; 0 to never **/
+    public abstract long getMaxStarvationMillis();
+
+    public abstract Builder toBuilder();
+    public static PriorityWorkerConfig.Builder builder() { return new AutoValue_PriorityWorkerConfig.Builder(); }
+
+    public int getWeight(Priority priority) {
+        switch (priority) {
+            case HIGH:
+                return getHighWeight();
+            case LOW:
+                return getLowWeight();
+            default:
+                return getNormalWeight();
+        }
+    }
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            policy(PriorityPolicy.STRICT);
+            highWeight(6);
+            normalWeight(3);
+            lowWeight(1);
+            maxStarvationMillis(5000L);
+        }
+        public abstract Builder policy(PriorityPolicy policy);
+        public abstract Builder highWeight(int weight);
+        public abstract Builder normalWeight(int weight);
+        public abstract Builder lowWeight(int weight);
+        public abstract Builder maxStarvationMillis(long millis);
+
+        abstract PriorityWorkerConfig autoBuild();
+
+        public PriorityWorkerConfig build() {
+            PriorityWorkerConfig config = autoBuild();
+            if (config.getHighWeight() < 1 || config.getNormalWeight() < 1 || config.getLowWeight() < 1) {
+                throw new IllegalArgumentException("weights must be at least 1");
+            }
+            if (config.getMaxStarvationMillis() < 0) {
+                throw new IllegalArgumentException("maxStarvationMillis must not be negative");
+            }
+            return config;
+        }
+    }
+}
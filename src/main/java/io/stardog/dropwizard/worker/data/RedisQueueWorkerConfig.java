@@ -0,0 +1,73 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+
+@AutoValue
+@JsonDeserialize(builder=AutoValue_RedisQueueWorkerConfig.Builder.class)
+public abstract class RedisQueueWorkerConfig {
+    /** Maximum number of messages taken from the queue at once **/
+    public abstract int getMaxNumberOfMessages();
+    /** How long to block waiting for a message; 0 returns immediately when the queue is empty **/
+    public abstract int getWaitTimeSeconds();
+    /** Stable name for this consumer, so a restarted process recovers its own unfinished messages; null picks a random one **/
+    @Nullable
+    public abstract String getConsumerId();
+    /** How long a consumer may go without a heartbeat before its unfinished messages are reclaimed by others **/
+    public abstract int getConsumerTimeoutSeconds();
+    /** How often to check for consumers that have died **/
+    public abstract int getReclaimIntervalSeconds();
+    /** How failed and skipped messages are put off and eventually given up on; maxAttempts(1) gives up at once **/
+    public abstract RetryPolicy getRetryPolicy();
+    /** How often to move put-off messages that have come due back onto the queue **/
+    public abstract long getDelayedPollMillis();
+
+    public abstract Builder toBuilder();
+    public static RedisQueueWorkerConfig.Builder builder() { return new AutoValue_RedisQueueWorkerConfig.Builder(); }
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            maxNumberOfMessages(10);
+            waitTimeSeconds(5);
+            consumerTimeoutSeconds(30);
+            reclaimIntervalSeconds(10);
+            retryPolicy(RetryPolicy.builder().build());
+            delayedPollMillis(1000L);
+        }
+        public abstract Builder maxNumberOfMessages(int maxNumberOfMessages);
+        public abstract Builder waitTimeSeconds(int waitTimeSeconds);
+        public abstract Builder consumerId(@Nullable String consumerId);
+        public abstract Builder consumerTimeoutSeconds(int consumerTimeoutSeconds);
+        public abstract Builder reclaimIntervalSeconds(int reclaimIntervalSeconds);
+        public abstract Builder retryPolicy(RetryPolicy retryPolicy);
+        public abstract Builder delayedPollMillis(long delayedPollMillis);
+
+        abstract RedisQueueWorkerConfig autoBuild();
+
+        public RedisQueueWorkerConfig build() {
+            RedisQueueWorkerConfig config = autoBuild();
+            if (config.getMaxNumberOfMessages() < 1) {
+                throw new IllegalArgumentException("maxNumberOfMessages must be at least 1");
+            }
+            if (config.getWaitTimeSeconds() < 0) {
+                throw new IllegalArgumentException("waitTimeSeconds must not be negative");
+            }
+            if (config.getConsumerTimeoutSeconds() < 3) {
+                throw new IllegalArgumentException("consumerTimeoutSeconds must be at least 3");
+            }
+            if (config.getReclaimIntervalSeconds() < 1) {
+                throw new IllegalArgumentException("reclaimIntervalSeconds must be at least 1");
+            }
+            if (config.getDelayedPollMillis() < 1) {
+                throw new IllegalArgumentException("delayedPollMillis must be at least 1");
+            }
+            return config;
+        }
+    }
+}
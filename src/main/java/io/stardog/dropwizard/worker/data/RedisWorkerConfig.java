@@ -0,0 +1,52 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+
+@AutoValue
+@JsonDeserialize(builder=AutoValue_RedisWorkerConfig.Builder.class)
+public abstract class RedisWorkerConfig {
+    /** Threads processing messages, separate from the thread receiving them from the subscription **/
+    public abstract int getDispatchThreads();
+    /** Maximum number of received messages waiting for a dispatch thread, and of messages waiting to be retried **/
+    public abstract int getQueueCapacity();
+    /** What to do with a received message when the queue is full **/
+    public abstract OverflowPolicy getOverflowPolicy();
+    /** How to retry messages whose method fails, or null to give up on them straight away **/
+    @Nullable
+    public abstract RetryPolicy getRetryPolicy();
+
+    public abstract Builder toBuilder();
+    public static RedisWorkerConfig.Builder builder() { return new AutoValue_RedisWorkerConfig.Builder(); }
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            dispatchThreads(1);
+            queueCapacity(1000);
+            overflowPolicy(OverflowPolicy.BLOCK);
+        }
+        public abstract Builder dispatchThreads(int dispatchThreads);
+        public abstract Builder queueCapacity(int queueCapacity);
+        public abstract Builder overflowPolicy(OverflowPolicy overflowPolicy);
+        public abstract Builder retryPolicy(@Nullable RetryPolicy retryPolicy);
+
+        abstract RedisWorkerConfig autoBuild();
+
+        public RedisWorkerConfig build() {
+            RedisWorkerConfig config = autoBuild();
+            if (config.getDispatchThreads() < 1) {
+                throw new IllegalArgumentException("dispatchThreads must be at least 1");
+            }
+            if (config.getQueueCapacity() < 1) {
+                throw new IllegalArgumentException("queueCapacity must be at least 1");
+            }
+            return config;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+/**
+ * How a worker retries messages whose method fails: after a delay that doubles with each attempt, up to
+ * maxAttempts, after which the message is handed to the worker's dead-letter sender.
+ */
+@AutoValue
+@JsonDeserialize(builder=AutoValue_RetryPolicy.Builder.class)
+public abstract class RetryPolicy {
+    /** Attempts to make at a message, counting the first, before dead-lettering it **/
+    public abstract int getMaxAttempts();
+    /** Delay before the second attempt **/
+    public abstract int getInitialDelaySeconds();
+    /** Longest delay between attempts **/
+    public abstract int getMaxDelaySeconds();
+
+    public abstract Builder toBuilder();
+    public static RetryPolicy.Builder builder() { return new AutoValue_RetryPolicy.Builder(); }
+
+    /**
+     * How long to wait before retrying a message that has failed the given number of attempts.
+     */
+    public int getDelaySeconds(int attempts) {
+        long delaySeconds = (long)getInitialDelaySeconds() << Math.min(Math.max(attempts - 1, 0), 30);
+        return (int)Math.min(delaySeconds, getMaxDelaySeconds());
+    }
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            maxAttempts(5);
+            initialDelaySeconds(10);
+            maxDelaySeconds(900);
+        }
+        public abstract Builder maxAttempts(int maxAttempts);
+        public abstract Builder initialDelaySeconds(int initialDelaySeconds);
+        public abstract Builder maxDelaySeconds(int maxDelaySeconds);
+
+        abstract RetryPolicy autoBuild();
+
+        public RetryPolicy build() {
+            RetryPolicy policy = autoBuild();
+            if (policy.getMaxAttempts() < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            if (policy.getInitialDelaySeconds() < 0 || policy.getMaxDelaySeconds() < policy.getInitialDelaySeconds()) {
+                throw new IllegalArgumentException("initialDelaySeconds must not be negative, and maxDelaySeconds must be at least initialDelaySeconds");
+            }
+            if (policy.getMaxDelaySeconds() > MethodLimitConfig.MAX_DEFER_SECONDS) {
+                throw new IllegalArgumentException("maxDelaySeconds must be at most " + MethodLimitConfig.MAX_DEFER_SECONDS);
+            }
+            return policy;
+        }
+    }
+}
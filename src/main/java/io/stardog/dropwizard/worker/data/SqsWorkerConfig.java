@@ -0,0 +1,105 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+
+@AutoValue
+@JsonDeserialize(builder=AutoValue_SqsWorkerConfig.Builder.class)
+public abstract class SqsWorkerConfig {
+    /** SQS will never return more than 10 messages from a single receive **/
+    public final static int MAX_BATCH_SIZE = 10;
+
+    public abstract int getMaxNumberOfMessages();
+    public abstract int getWaitTimeSeconds();
+    /** Threads in this worker's own executor; 0 processes each batch sequentially on the polling thread **/
+    public abstract int getExecutorThreads();
+    /** Maximum messages handed to the executor at once; 0 means the same as executorThreads **/
+    public abstract int getMaxInFlight();
+    /** How long a finished message may wait for its batched delete when using the executor **/
+    public abstract long getAckLingerMillis();
+    /** Dedicated threads that prefetch messages into a buffer ahead of processing; 0 receives on demand **/
+    public abstract int getPollerThreads();
+    /** Maximum number of messages held in the prefetch buffer **/
+    public abstract int getPrefetchBufferSize();
+    /** Visibility timeout to request on receive; 0 leaves the queue's own setting in effect **/
+    public abstract int getVisibilityTimeoutSeconds();
+    /**
+     * Whether to keep extending the visibility timeout of messages that are still being processed; this reads the
+     * queue's VisibilityTimeout on start, so it needs sqs:GetQueueAttributes as well as sqs:ChangeMessageVisibility
+     **/
+    public abstract boolean isHeartbeatEnabled();
+    /** How long stopping waits for pollers to finish a receive, and for messages still running on the executor **/
+    public abstract long getMaxShutdownMillis();
+    /** How to retry messages whose method fails, or null to leave them to the queue's own redelivery **/
+    @Nullable
+    public abstract RetryPolicy getRetryPolicy();
+
+    public abstract Builder toBuilder();
+    public static SqsWorkerConfig.Builder builder() { return new AutoValue_SqsWorkerConfig.Builder(); }
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            maxNumberOfMessages(MAX_BATCH_SIZE);
+            waitTimeSeconds(20);
+            executorThreads(0);
+            maxInFlight(0);
+            ackLingerMillis(200L);
+            pollerThreads(0);
+            prefetchBufferSize(100);
+            visibilityTimeoutSeconds(0);
+            heartbeatEnabled(false);
+            maxShutdownMillis(60000L);
+        }
+        public abstract Builder maxNumberOfMessages(int maxNumberOfMessages);
+        public abstract Builder waitTimeSeconds(int waitTimeSeconds);
+        public abstract Builder executorThreads(int executorThreads);
+        public abstract Builder maxInFlight(int maxInFlight);
+        public abstract Builder ackLingerMillis(long millis);
+        public abstract Builder pollerThreads(int pollerThreads);
+        public abstract Builder prefetchBufferSize(int prefetchBufferSize);
+        public abstract Builder visibilityTimeoutSeconds(int visibilityTimeoutSeconds);
+        public abstract Builder heartbeatEnabled(boolean heartbeatEnabled);
+        public abstract Builder maxShutdownMillis(long millis);
+        public abstract Builder retryPolicy(@Nullable RetryPolicy retryPolicy);
+
+        abstract SqsWorkerConfig autoBuild();
+
+        public SqsWorkerConfig build() {
+            SqsWorkerConfig config = autoBuild();
+            if (config.getMaxNumberOfMessages() < 1 || config.getMaxNumberOfMessages() > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("maxNumberOfMessages must be between 1 and " + MAX_BATCH_SIZE);
+            }
+            if (config.getWaitTimeSeconds() < 0 || config.getWaitTimeSeconds() > 20) {
+                throw new IllegalArgumentException("waitTimeSeconds must be between 0 and 20");
+            }
+            if (config.getExecutorThreads() < 0 || config.getMaxInFlight() < 0) {
+                throw new IllegalArgumentException("executorThreads and maxInFlight must not be negative");
+            }
+            if (config.getExecutorThreads() > 0 && config.getAckLingerMillis() <= 0) {
+                throw new IllegalArgumentException("ackLingerMillis must be positive when using executorThreads");
+            }
+            if (config.getPollerThreads() < 0) {
+                throw new IllegalArgumentException("pollerThreads must not be negative");
+            }
+            if (config.getPollerThreads() > 0 && config.getWaitTimeSeconds() == 0) {
+                throw new IllegalArgumentException("pollerThreads requires long polling with a waitTimeSeconds of at least 1");
+            }
+            if (config.getPollerThreads() > 0 && config.getPrefetchBufferSize() < config.getMaxNumberOfMessages()) {
+                throw new IllegalArgumentException("prefetchBufferSize must hold at least one batch of maxNumberOfMessages");
+            }
+            if (config.getVisibilityTimeoutSeconds() < 0 || config.getVisibilityTimeoutSeconds() > 43200) {
+                throw new IllegalArgumentException("visibilityTimeoutSeconds must be between 0 and 43200");
+            }
+            if (config.getMaxShutdownMillis() < 0) {
+                throw new IllegalArgumentException("maxShutdownMillis must not be negative");
+            }
+            return config;
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package io.stardog.dropwizard.worker.data;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableMap;
 
@@ -20,19 +23,65 @@ public abstract class WorkMessage {
     public abstract Map<String,Object> getParams();
     @JsonProperty("at")
     public abstract Optional<Instant> getQueueAt();
+    /**
+     * The lane to send the message through. It isn't written to the message, since each lane is its own queue;
+     * messages that are read back are NORMAL.
+     */
+    @JsonIgnore
+    public abstract Priority getPriority();
+    /** The id the queue gave the message as it was received, if it gives one; not written to the message **/
+    @JsonIgnore
+    public abstract Optional<String> getId();
+    /** Params already read into the class their method takes, or null if they are only available as a map **/
+    @JsonIgnore
+    @Nullable
+    public abstract Object getTypedParams();
 
     public static WorkMessage of(String method) {
-        return new AutoValue_WorkMessage(method, ImmutableMap.of(), Optional.empty());
+        return new AutoValue_WorkMessage(method, ImmutableMap.of(), Optional.empty(), Priority.NORMAL, Optional.empty(), null);
     }
 
     public static WorkMessage of(String method, Map<String,Object> params) {
-        return new AutoValue_WorkMessage(method, params, Optional.empty());
+        return new AutoValue_WorkMessage(method, params, Optional.empty(), Priority.NORMAL, Optional.empty(), null);
     }
 
     @JsonCreator
     public static WorkMessage of(@JsonProperty("method") String method,
                                  @JsonProperty("params") @Nullable Map<String,Object> params,
                                  @JsonProperty("at") @Nullable Instant queueAt) {
-        return new AutoValue_WorkMessage(method, params != null ? params : ImmutableMap.of(), Optional.ofNullable(queueAt));
+        return new AutoValue_WorkMessage(method, params != null ? params : ImmutableMap.of(), Optional.ofNullable(queueAt), Priority.NORMAL, Optional.empty(), null);
+    }
+
+    /**
+     * A message whose params have already been read into the class its method takes, as WorkMessageReader does
+     * for methods registered with a params class. Its getParams() is empty.
+     */
+    public static WorkMessage ofTyped(String method, Object typedParams, @Nullable Instant queueAt) {
+        return new AutoValue_WorkMessage(method, ImmutableMap.of(), Optional.ofNullable(queueAt), Priority.NORMAL, Optional.empty(), typedParams);
+    }
+
+    /**
+     * A copy of this message, to be sent with the given priority.
+     */
+    public WorkMessage withPriority(Priority priority) {
+        return new AutoValue_WorkMessage(getMethod(), getParams(), getQueueAt(), priority, getId(), getTypedParams());
+    }
+
+    /**
+     * A copy of this message, with the id its queue gave it.
+     */
+    public WorkMessage withId(@Nullable String id) {
+        return new AutoValue_WorkMessage(getMethod(), getParams(), getQueueAt(), getPriority(), Optional.ofNullable(id), getTypedParams());
+    }
+
+    /**
+     * This message with any typed params turned back into a map, so that it can be sent on.
+     */
+    public WorkMessage withMapParams(ObjectMapper mapper) {
+        if (getTypedParams() == null) {
+            return this;
+        }
+        Map<String,Object> params = mapper.convertValue(getTypedParams(), new TypeReference<Map<String,Object>>() { });
+        return new AutoValue_WorkMessage(getMethod(), params, getQueueAt(), getPriority(), getId(), null);
     }
 }
@@ -1,8 +1,13 @@
 package io.stardog.dropwizard.worker.data;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.auto.value.AutoValue;
+import io.stardog.dropwizard.worker.util.Deduplicator;
+import io.stardog.dropwizard.worker.util.MethodLimiter;
+import io.stardog.dropwizard.worker.util.MethodSaturatedException;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -11,9 +16,20 @@ import java.util.function.Function;
 public abstract class WorkMethod {
     public abstract String getMethod();
     public abstract Function<Map<String,Object>,Boolean> getFunction();
+    /** Reads params straight into the class this method takes, or null if it takes a map **/
+    @Nullable
+    public abstract ObjectReader getParamsReader();
+    @Nullable
+    abstract Function<Object,Boolean> getTypedFunction();
+    /** Limits on how many messages of this method are processed at once, and how often, or null if there are none **/
+    @Nullable
+    public abstract MethodLimiter getLimiter();
+    /** Skips duplicate messages of this method, or null to process every message **/
+    @Nullable
+    public abstract Deduplicator getDeduplicator();
 
     public static WorkMethod fn(String method, Function<Map<String,Object>,Boolean> func) {
-        return new AutoValue_WorkMethod(method, func);
+        return new AutoValue_WorkMethod(method, func, null, null, null, null);
     }
 
     /** For backwards compatibility, continue to allow creation of WorkMethods with a consumer, and always return true **/
@@ -21,14 +37,72 @@ public abstract class WorkMethod {
         return new AutoValue_WorkMethod(method, mapParams -> {
             consumer.accept(mapParams);
             return true;
-        });
+        }, null, null, null, null);
     }
 
-    /** To make it easier to write methods that take a particular object format **/
+    /**
+     * To make it easier to write methods that take a particular object format. Workers read the params of these
+     * methods straight from the message into the class, without going through a map first.
+     */
     public static <T> WorkMethod fn(String method, ObjectMapper mapper, Class<T> klazz, Function<T,Boolean> func) {
         return new AutoValue_WorkMethod(method, mapParams -> {
             T object = mapper.convertValue(mapParams, klazz);
             return func.apply(object);
-        });
+        }, mapper.readerFor(klazz), typedParams -> func.apply(klazz.cast(typedParams)), null, null);
+    }
+
+    /**
+     * A copy of this method that workers run under the given limits, putting its messages off while it is
+     * saturated instead of giving it more threads.
+     */
+    public WorkMethod withLimit(MethodLimitConfig limit) {
+        return new AutoValue_WorkMethod(getMethod(), getFunction(), getParamsReader(), getTypedFunction(),
+                new MethodLimiter(limit), getDeduplicator());
+    }
+
+    /**
+     * A copy of this method that skips messages the deduplicator has already seen.
+     */
+    public WorkMethod withDedup(Deduplicator deduplicator) {
+        return new AutoValue_WorkMethod(getMethod(), getFunction(), getParamsReader(), getTypedFunction(),
+                getLimiter(), deduplicator);
+    }
+
+    /**
+     * Claim a slot to run this method under its limits, if it has any. Each call must be followed by release().
+     * @throws MethodSaturatedException if the method is at its limits
+     */
+    public void acquire() {
+        MethodLimiter limiter = getLimiter();
+        if (limiter != null && !limiter.tryAcquire()) {
+            throw new MethodSaturatedException(getMethod(), limiter.getConfig().getDeferSeconds());
+        }
+    }
+
+    public void release() {
+        MethodLimiter limiter = getLimiter();
+        if (limiter != null) {
+            limiter.release();
+        }
+    }
+
+    /**
+     * Apply this method to a message, using its typed params if they have already been read, unless its
+     * deduplicator has seen the message before.
+     */
+    public boolean apply(WorkMessage message) {
+        Deduplicator deduplicator = getDeduplicator();
+        if (deduplicator != null) {
+            return deduplicator.apply(message, this::applyOnce);
+        }
+        return applyOnce(message);
+    }
+
+    private boolean applyOnce(WorkMessage message) {
+        Object typedParams = message.getTypedParams();
+        if (typedParams != null && getTypedFunction() != null) {
+            return getTypedFunction().apply(typedParams);
+        }
+        return getFunction().apply(message.getParams());
     }
 }
@@ -11,7 +11,14 @@ public abstract class WorkerConfig {
     public abstract long getMinIntervalMillis();
     public abstract long getMaxIntervalMillis();
     public abstract long getIncIntervalMillis();
+    /** How the interval grows while idle, from incIntervalMillis up to maxIntervalMillis **/
+    public abstract IdleBackoff getIdleBackoff();
     public abstract long getMaxShutdownMillis();
+    /**
+     * Run each polling thread as a virtual thread, where the JVM supports them, so that maxThreads can run into
+     * the thousands for work that mostly waits on I/O; falls back to platform threads otherwise
+     */
+    public abstract boolean isVirtualThreads();
 
     public abstract Builder toBuilder();
     public static WorkerConfig.Builder builder() { return new AutoValue_WorkerConfig.Builder(); }
@@ -25,13 +32,17 @@ public abstract class WorkerConfig {
             minIntervalMillis(0);
             maxIntervalMillis(60000L);
             incIntervalMillis(5000L);
+            idleBackoff(IdleBackoff.LINEAR);
             maxShutdownMillis(120000L);
+            virtualThreads(false);
         }
         public abstract Builder maxThreads(int maxThreads);
         public abstract Builder minIntervalMillis(long millis);
         public abstract Builder maxIntervalMillis(long millis);
         public abstract Builder incIntervalMillis(long millis);
+        public abstract Builder idleBackoff(IdleBackoff idleBackoff);
         public abstract Builder maxShutdownMillis(long millis);
+        public abstract Builder virtualThreads(boolean virtualThreads);
         public abstract WorkerConfig build();
     }
 }
@@ -0,0 +1,52 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.google.auto.value.AutoValue;
+
+/**
+ * How one queue's worker shares the threads of a MultiWorkerManager with the others.
+ */
+@AutoValue
+@JsonDeserialize(builder=AutoValue_WorkerShareConfig.Builder.class)
+public abstract class WorkerShareConfig {
+    /** Polls this queue gets per round, relative to the other busy queues **/
+    public abstract int getWeight();
+    /** Threads this queue gets ahead of the others' weights, while it has messages **/
+    public abstract int getMinThreads();
+    /** Most threads this queue may use at once, or 0 for no limit below the manager's maxThreads **/
+    public abstract int getMaxThreads();
+
+    public abstract Builder toBuilder();
+    public static WorkerShareConfig.Builder builder() { return new AutoValue_WorkerShareConfig.Builder(); }
+
+    @AutoValue.Builder
+    @JsonPOJOBuilder(withPrefix = "")
+    public abstract static class Builder {
+        Builder() {
+            // defaults
+            weight(1);
+            minThreads(0);
+            maxThreads(0);
+        }
+        public abstract Builder weight(int weight);
+        public abstract Builder minThreads(int minThreads);
+        public abstract Builder maxThreads(int maxThreads);
+
+        abstract WorkerShareConfig autoBuild();
+
+        public WorkerShareConfig build() {
+            WorkerShareConfig config = autoBuild();
+            if (config.getWeight() < 1) {
+                throw new IllegalArgumentException("weight must be at least 1");
+            }
+            if (config.getMinThreads() < 0 || config.getMaxThreads() < 0) {
+                throw new IllegalArgumentException("minThreads and maxThreads must not be negative");
+            }
+            if (config.getMaxThreads() > 0 && config.getMaxThreads() < config.getMinThreads()) {
+                throw new IllegalArgumentException("maxThreads must be at least minThreads");
+            }
+            return config;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.stardog.dropwizard.worker.dedup;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.stardog.dropwizard.worker.interfaces.DedupStore;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps seen keys in memory, in a cache of at most maximumSize keys that evicts the least recently used first.
+ * Only catches duplicates delivered to the same process; use a RedisDedupStore to catch them across processes.
+ */
+public class LocalDedupStore implements DedupStore {
+    private final ConcurrentMap<String,Long> expiries;
+
+    public LocalDedupStore(long maximumSize) {
+        Cache<String,Long> cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+        this.expiries = cache.asMap();
+    }
+
+    @Override
+    public boolean markIfAbsent(String key, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        boolean[] marked = new boolean[1];
+        expiries.compute(key, (k, expiry) -> {
+            if (expiry != null && expiry > now) {
+                return expiry;
+            }
+            marked[0] = true;
+            return now + ttlMillis;
+        });
+        return marked[0];
+    }
+
+    @Override
+    public void remove(String key) {
+        expiries.remove(key);
+    }
+
+    public long size() {
+        return expiries.size();
+    }
+}
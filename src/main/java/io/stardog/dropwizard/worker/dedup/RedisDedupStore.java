@@ -0,0 +1,40 @@
+package io.stardog.dropwizard.worker.dedup;
+
+import io.stardog.dropwizard.worker.interfaces.DedupStore;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Keeps seen keys in Redis, so that duplicates are caught across every process sharing it. Each key is marked
+ * with a single SET NX PX, and expires on its own.
+ */
+public class RedisDedupStore implements DedupStore {
+    private final JedisPool jedisPool;
+    private final String prefix;
+
+    /**
+     * @param prefix    prepended to every key, to keep them apart from the rest of the keyspace
+     */
+    public RedisDedupStore(JedisPool jedisPool, String prefix) {
+        this.jedisPool = jedisPool;
+        this.prefix = prefix;
+    }
+
+    public RedisDedupStore(JedisPool jedisPool) {
+        this(jedisPool, "dedup:");
+    }
+
+    @Override
+    public boolean markIfAbsent(String key, long ttlMillis) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return "OK".equals(jedis.set(prefix + key, "1", "NX", "PX", ttlMillis));
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.del(prefix + key);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.stardog.dropwizard.worker.interfaces;
+
+import java.io.IOException;
+
+/**
+ * Somewhere to keep payloads too large to send through a queue, for ClaimCheckCodec.
+ */
+public interface BlobStore {
+    void put(String key, byte[] data) throws IOException;
+
+    /**
+     * @throws IOException  if there is no blob with that key, or it cannot be read
+     */
+    byte[] get(String key) throws IOException;
+
+    void delete(String key) throws IOException;
+}
@@ -0,0 +1,8 @@
+package io.stardog.dropwizard.worker.interfaces;
+
+/**
+ * Chooses how many threads a WorkerManager should have working, from what it hears about the messages processed.
+ */
+public interface ConcurrencyLimit extends WorkerListener {
+    int getLimit();
+}
@@ -0,0 +1,17 @@
+package io.stardog.dropwizard.worker.interfaces;
+
+/**
+ * Remembers which messages have been seen, for a Deduplicator.
+ */
+public interface DedupStore {
+    /**
+     * Mark a key as seen for ttlMillis, unless it already is.
+     * @return  true if the key was not already marked, and so the message should be processed
+     */
+    boolean markIfAbsent(String key, long ttlMillis);
+
+    /**
+     * Forget a key, so that the next message with it is processed; for messages that failed.
+     */
+    void remove(String key);
+}
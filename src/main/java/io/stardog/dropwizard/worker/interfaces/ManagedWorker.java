@@ -5,4 +5,27 @@ import io.stardog.dropwizard.worker.WorkerManager;
 
 public interface ManagedWorker extends Managed {
     boolean processMessages();
-}
\ No newline at end of file
+
+    /**
+     * Tell a listener about every message processed from now on. WorkerManager uses this to feed its
+     * ConcurrencyLimit; workers that don't support it ignore the listener, and are managed on queue depth alone.
+     */
+    default void addListener(WorkerListener listener) {
+    }
+
+    /**
+     * Give the worker a hook to call when it knows there are messages waiting, to have WorkerManager start polling
+     * right away instead of sleeping out its idle interval. Workers that can't tell ignore the hook.
+     */
+    default void setWakeUpHook(Runnable wakeUp) {
+    }
+
+    /**
+     * Begin shutting down: stop taking new messages, and hand any that have been received but not yet started
+     * back to the queue, so that another consumer can take them right away instead of waiting out their
+     * visibility timeout. Messages already being processed are left to finish. WorkerManager calls this before
+     * stop(); workers that hold no received messages ignore it.
+     */
+    default void drain() {
+    }
+}
@@ -0,0 +1,22 @@
+package io.stardog.dropwizard.worker.interfaces;
+
+import com.fasterxml.jackson.core.JsonParser;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+
+import java.io.IOException;
+
+/**
+ * The wire format of messages: turns WorkMessages into the text payloads that senders put on a queue, and gives
+ * workers a parser to read those payloads back with.
+ *
+ * Every format other than plain JSON starts its payloads with a marker naming the format and its version, so that
+ * workers can read any format they know while senders move from one format to another.
+ */
+public interface MessageCodec {
+    /** Marker at the start of payloads in this codec's own format; empty for plain JSON **/
+    String getMarker();
+
+    String encode(WorkMessage message) throws IOException;
+
+    JsonParser createParser(String payload) throws IOException;
+}
@@ -1,7 +1,44 @@
 package io.stardog.dropwizard.worker.interfaces;
 
 import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.senders.BatchSendException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
 
 public interface Sender {
     void send(WorkMessage message);
+
+    /**
+     * The size in bytes of a message as this sender would send it, for wrappers that batch by size. Senders that
+     * encode messages measure them with their own codec; by default the size is unknown, and 0.
+     */
+    default int sizeOf(WorkMessage message) throws IOException {
+        return 0;
+    }
+
+    /**
+     * Send several messages at once. Senders that support it send these in as few round trips as possible;
+     * by default they are simply sent one at a time.
+     * @param messages  messages to send
+     * @throws BatchSendException   if any of the messages could not be sent
+     */
+    default void sendBatch(Collection<WorkMessage> messages) {
+        Map<Integer,Exception> failures = new TreeMap<>();
+        int index = 0;
+        for (WorkMessage message : messages) {
+            try {
+                send(message);
+            } catch (Exception e) {
+                failures.put(index, e);
+            }
+            index++;
+        }
+        if (!failures.isEmpty()) {
+            throw new BatchSendException(new ArrayList<>(messages), failures);
+        }
+    }
 }
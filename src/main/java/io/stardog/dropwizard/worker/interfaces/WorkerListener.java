@@ -0,0 +1,13 @@
+package io.stardog.dropwizard.worker.interfaces;
+
+/**
+ * Told about every message a worker processes.
+ */
+public interface WorkerListener {
+    /**
+     * @param delayMillis   how long the message waited to be picked up, or -1 if it doesn't say when it was queued
+     * @param processingNanos   how long its method took
+     * @param failed    whether its method threw
+     */
+    void onMessage(long delayMillis, long processingNanos, boolean failed);
+}
@@ -0,0 +1,452 @@
+package io.stardog.dropwizard.worker.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.codecs.JsonCodec;
+import io.stardog.dropwizard.worker.data.JournalConfig;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
+import io.stardog.dropwizard.worker.util.WorkMessageReader;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Durable queue for a LocalWorker, which appends each message to a journal of memory-mapped segment files, so
+ * that queued messages survive a restart and a burst can queue more than fits on the heap.
+ *
+ * Messages are also kept in memory, up to memoryCapacity of them, so that a worker keeping up with its queue never
+ * reads the journal back; beyond that, they spill to disk only and are read back in order as the worker catches up.
+ *
+ * Every message is identified by its position in the journal, which poll gives it as its id. Once the worker has
+ * finished with it, it must be acked; the consumer offset then moves up to the oldest message not yet acked, and
+ * is kept in the journal directory. On open, every message from the consumer offset on is replayed, so a
+ * message being processed when the process stopped is processed again (as may be a few finished messages queued
+ * after it, which a Deduplicator keyed by message id will skip). Segments wholly behind the consumer offset are
+ * deleted.
+ *
+ * A message whose method throws should be retried rather than acked: it is appended again at the end of the
+ * journal, with its attempt count, and the original acked, so that a message that keeps failing never holds
+ * back the consumer offset. Once it has been tried maxAttempts times, it is dropped instead.
+ *
+ * Written messages survive the process crashing, since the operating system writes them out in its own time;
+ * they are only forced to disk on close, so a crash of the machine itself can lose the most recent of them.
+ *
+ * The segments hold records of a 4-byte length and a 4-byte count of the attempts already made, followed by the
+ * message, encoded as plain JSON. Segments are named for the journal position they start at; a record that won't
+ * fit in the rest of a segment goes in the next one.
+ */
+public class JournalQueue extends AbstractQueue<WorkMessage> {
+    private final File directory;
+    private final int segmentBytes;
+    private final int memoryCapacity;
+    private final int maxAttempts;
+    private final ObjectMapper mapper;
+    private final MessageCodec codec;
+    private final WorkMessageReader reader;
+
+    private final TreeMap<Long,MappedByteBuffer> segments = new TreeMap<>();
+    private final ArrayDeque<Entry> memory = new ArrayDeque<>();
+    private final TreeMap<Long,Integer> inFlight = new TreeMap<>();
+    private MappedByteBuffer offsetBuffer;
+    private long writePosition;
+    private long readPosition;
+    private long committed;
+    private int backlog;
+    private boolean isOpen = false;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(JournalQueue.class);
+    private final static String SEGMENT_SUFFIX = ".segment";
+    private final static String OFFSET_FILE = "consumer.offset";
+    private final static int ATTEMPTS_OFFSET = 4;
+    private final static int HEADER_BYTES = 8;
+
+    /**
+     * @param memoryCapacity    maximum number of messages also held in memory; the rest are only on disk
+     * @param methods           methods to read params for, as WorkMessageReader does
+     */
+    public JournalQueue(JournalConfig config, int memoryCapacity, WorkMethods methods, ObjectMapper mapper) {
+        this.directory = new File(config.getDirectory());
+        this.segmentBytes = config.getSegmentBytes();
+        this.memoryCapacity = memoryCapacity;
+        this.maxAttempts = config.getMaxAttempts();
+        this.mapper = mapper;
+        this.codec = new JsonCodec(mapper);
+        this.reader = new WorkMessageReader(mapper, methods, codec);
+    }
+
+    public JournalQueue(JournalConfig config, int memoryCapacity, WorkMethods methods) {
+        this(config, memoryCapacity, methods, WorkerDefaults.MAPPER);
+    }
+
+    /**
+     * Open the journal, creating it if need be, and make every message not yet acked available to poll again.
+     * @return  the number of messages replayed
+     */
+    public synchronized int open() throws IOException {
+        if (isOpen) {
+            throw new IllegalStateException("Journal in " + directory + " is already open");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+
+        offsetBuffer = map(new File(directory, OFFSET_FILE), Long.BYTES);
+        committed = offsetBuffer.getLong(0);
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        for (File file : files != null ? files : new File[0]) {
+            long base = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+            if (base + segmentBytes <= committed) {
+                delete(file);
+            } else {
+                segments.put(base, map(file, segmentBytes));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            writePosition = committed;
+        } else {
+            // the journal ends at the first empty record of the last segment
+            long base = segments.lastKey();
+            ByteBuffer segment = segments.lastEntry().getValue();
+            int offset = 0;
+            int length;
+            while (offset + HEADER_BYTES <= segmentBytes && (length = segment.getInt(offset)) > 0) {
+                offset += HEADER_BYTES + length;
+            }
+            writePosition = base + offset;
+        }
+        readPosition = segments.isEmpty() ? committed : Math.max(committed, segments.firstKey());
+
+        backlog = 0;
+        for (long position = nextRecord(readPosition); position < writePosition; position = nextRecord(position)) {
+            position += HEADER_BYTES + segmentFor(position).getInt(offsetOf(position));
+            backlog++;
+        }
+        isOpen = true;
+        return backlog;
+    }
+
+    /**
+     * Force everything written out to disk, and close the journal.
+     */
+    public synchronized void close() {
+        if (!isOpen) {
+            return;
+        }
+        for (MappedByteBuffer segment : segments.values()) {
+            segment.force();
+        }
+        offsetBuffer.force();
+        segments.clear();
+        memory.clear();
+        inFlight.clear();
+        isOpen = false;
+    }
+
+    /**
+     * Append a message to the journal. Always succeeds, as the journal is only bounded by the disk.
+     * @throws UncheckedIOException if the message could not be written
+     * @throws IllegalArgumentException if the message is too large for a segment
+     */
+    @Override
+    public boolean offer(WorkMessage message) {
+        append(message, 0);
+        return true;
+    }
+
+    /**
+     * Append a message taken from poll again, at the end of the journal, and ack the original, unless it has been
+     * tried maxAttempts times already.
+     * @return  false if the message was dropped, true otherwise
+     */
+    public boolean retry(WorkMessage message) {
+        long position = positionOf(message);
+        Integer attempts;
+        synchronized (this) {
+            attempts = inFlight.get(position);
+        }
+        if (attempts == null) {
+            // already acked, or the journal was closed since, in which case it is replayed on open
+            return true;
+        }
+        boolean retried = attempts + 1 < maxAttempts;
+        if (retried) {
+            // appended before the original is acked, so that a crash in between runs it twice rather than never
+            append(message.withId(null), attempts + 1);
+        } else {
+            LOGGER.error("Dropping message for " + message.getMethod() + " at " + position + " in " + directory
+                    + " after " + maxAttempts + " attempts");
+        }
+        ack(position);
+        return retried;
+    }
+
+    private void append(WorkMessage message, int attempts) {
+        byte[] payload;
+        try {
+            payload = codec.encode(message.withMapParams(mapper)).getBytes(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (HEADER_BYTES + payload.length > segmentBytes) {
+            throw new IllegalArgumentException("Message of " + payload.length + " bytes is too large for a journal segment of " + segmentBytes);
+        }
+
+        synchronized (this) {
+            checkOpen();
+            long end = writePosition;
+            if (offsetOf(writePosition) + HEADER_BYTES + payload.length > segmentBytes) {
+                writePosition += segmentBytes - offsetOf(writePosition);
+            }
+            long position = writePosition;
+            ByteBuffer segment;
+            try {
+                segment = segmentFor(position);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int offset = offsetOf(position);
+            // the payload goes in before its length, so that a record with a length is always complete
+            ByteBuffer slice = segment.duplicate();
+            slice.position(offset + HEADER_BYTES);
+            slice.put(payload);
+            segment.putInt(offset + ATTEMPTS_OFFSET, attempts);
+            segment.putInt(offset, payload.length);
+            writePosition = position + HEADER_BYTES + payload.length;
+            backlog++;
+
+            // keep it in memory too, as long as memory holds everything between the reader and the end of the journal
+            long memoryEnd = memory.isEmpty() ? readPosition : memory.peekLast().next;
+            if (memory.size() < memoryCapacity && memoryEnd == end) {
+                memory.add(new Entry(position, writePosition, attempts, message));
+            }
+        }
+    }
+
+    /**
+     * Take the next message, with its position in the journal as its id. Ack it once it has been processed.
+     */
+    @Override
+    public WorkMessage poll() {
+        while (true) {
+            Entry entry;
+            byte[] payload = null;
+            synchronized (this) {
+                checkOpen();
+                if (!memory.isEmpty()) {
+                    entry = memory.poll();
+                } else {
+                    long position = nextRecord(readPosition);
+                    if (position >= writePosition) {
+                        return null;
+                    }
+                    payload = readPayload(position);
+                    entry = new Entry(position, position + HEADER_BYTES + payload.length,
+                            readAttempts(position), null);
+                }
+                readPosition = entry.next;
+                inFlight.put(entry.position, entry.attempts);
+                backlog--;
+            }
+
+            if (entry.message != null) {
+                return entry.message.withId(String.valueOf(entry.position));
+            }
+            try {
+                return reader.read(new String(payload, StandardCharsets.UTF_8)).withId(String.valueOf(entry.position));
+            } catch (IOException e) {
+                LOGGER.warn("Skipping unreadable journal entry at " + entry.position + " in " + directory, e);
+                ack(entry.position);
+            }
+        }
+    }
+
+    /**
+     * Mark a message taken from poll as finished with, so that it is not replayed.
+     */
+    public void ack(WorkMessage message) {
+        ack(positionOf(message));
+    }
+
+    private static long positionOf(WorkMessage message) {
+        return Long.parseLong(message.getId().orElseThrow(() ->
+                new IllegalArgumentException("Message was not taken from a journal")));
+    }
+
+    private synchronized void ack(long position) {
+        if (!isOpen || inFlight.remove(position) == null) {
+            return;
+        }
+        long commit = inFlight.isEmpty() ? readPosition : inFlight.firstKey();
+        if (commit <= committed) {
+            return;
+        }
+        committed = commit;
+        offsetBuffer.putLong(0, commit);
+
+        // compact: segments wholly behind the consumer, other than the one being written, are no longer needed
+        Map.Entry<Long,MappedByteBuffer> oldest;
+        while ((oldest = segments.firstEntry()) != null && oldest.getKey() + segmentBytes <= commit
+                && oldest.getKey() + segmentBytes <= writePosition) {
+            segments.remove(oldest.getKey());
+            delete(segmentFile(oldest.getKey()));
+        }
+    }
+
+    @Override
+    public synchronized WorkMessage peek() {
+        checkOpen();
+        if (!memory.isEmpty()) {
+            return memory.peek().message;
+        }
+        long position = nextRecord(readPosition);
+        if (position >= writePosition) {
+            return null;
+        }
+        try {
+            return reader.read(new String(readPayload(position), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Number of messages waiting to be polled, in memory or on disk.
+     */
+    @Override
+    public synchronized int size() {
+        return backlog;
+    }
+
+    /**
+     * Number of waiting messages held only on disk.
+     */
+    public synchronized int getSpilled() {
+        return backlog - memory.size();
+    }
+
+    /**
+     * Number of segment files in the journal.
+     */
+    public synchronized int getSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Iterate over a snapshot of the waiting messages held in memory; those only on disk are left out.
+     */
+    @Override
+    public synchronized Iterator<WorkMessage> iterator() {
+        List<WorkMessage> snapshot = new ArrayList<>(memory.size());
+        for (Entry entry : memory) {
+            snapshot.add(entry.message);
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    /**
+     * The position of the record at or after position, skipping the unused end of a segment.
+     */
+    private long nextRecord(long position) {
+        if (position >= writePosition) {
+            return position;
+        }
+        int offset = offsetOf(position);
+        ByteBuffer segment = segments.get(position - offset);
+        if (offset + HEADER_BYTES > segmentBytes || segment == null || segment.getInt(offset) == 0) {
+            return position + segmentBytes - offset;
+        }
+        return position;
+    }
+
+    private byte[] readPayload(long position) {
+        ByteBuffer segment = segments.get(position - offsetOf(position));
+        int offset = offsetOf(position);
+        byte[] payload = new byte[segment.getInt(offset)];
+        ByteBuffer slice = segment.duplicate();
+        slice.position(offset + HEADER_BYTES);
+        slice.get(payload);
+        return payload;
+    }
+
+    private int readAttempts(long position) {
+        return segments.get(position - offsetOf(position)).getInt(offsetOf(position) + ATTEMPTS_OFFSET);
+    }
+
+    private ByteBuffer segmentFor(long position) throws IOException {
+        long base = position - offsetOf(position);
+        MappedByteBuffer segment = segments.get(base);
+        if (segment == null) {
+            segment = map(segmentFile(base), segmentBytes);
+            segments.put(base, segment);
+        }
+        return segment;
+    }
+
+    private int offsetOf(long position) {
+        return (int)(position % segmentBytes);
+    }
+
+    private File segmentFile(long base) {
+        return new File(directory, String.format("%020d", base) + SEGMENT_SUFFIX);
+    }
+
+    private void checkOpen() {
+        if (!isOpen) {
+            throw new IllegalStateException("Journal in " + directory + " is not open; call start() on its worker first");
+        }
+    }
+
+    private static MappedByteBuffer map(File file, int bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < bytes) {
+                raf.setLength(bytes);
+            }
+            // the mapping stays valid once the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            LOGGER.warn("Unable to delete journal segment " + file);
+        }
+    }
+
+    /**
+     * A message in the journal: where its record starts, where the next one starts, the attempts already made
+     * at it, and the message itself if it is held in memory.
+     */
+    private static class Entry {
+        private final long position;
+        private final long next;
+        private final int attempts;
+        private final WorkMessage message;
+
+        Entry(long position, long next, int attempts, WorkMessage message) {
+            this.position = position;
+            this.next = next;
+            this.attempts = attempts;
+            this.message = message;
+        }
+    }
+}
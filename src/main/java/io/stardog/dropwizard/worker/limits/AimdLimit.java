@@ -0,0 +1,33 @@
+package io.stardog.dropwizard.worker.limits;
+
+import io.stardog.dropwizard.worker.data.ConcurrencyLimitConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Additive increase, multiplicative decrease: adds a thread after each window in which messages were waiting
+ * longer than targetDelayMillis, and multiplies the limit by backoffRatio after each window with too many errors
+ * or, if maxLatencyMillis is set, too slow an average processing time. Otherwise the limit holds steady.
+ */
+public class AimdLimit extends WindowedLimit {
+    public AimdLimit(ConcurrencyLimitConfig config) {
+        super(config);
+    }
+
+    public AimdLimit() {
+        this(ConcurrencyLimitConfig.builder().build());
+    }
+
+    @Override
+    protected double update(double limit, Window window) {
+        boolean tooSlow = config.getMaxLatencyMillis() > 0
+                && window.getAverageNanos() > TimeUnit.MILLISECONDS.toNanos(config.getMaxLatencyMillis());
+        if (window.getErrorRate() > config.getMaxErrorRate() || tooSlow) {
+            return limit * config.getBackoffRatio();
+        }
+        if (window.hasBacklog(config.getTargetDelayMillis())) {
+            return limit + 1;
+        }
+        return limit;
+    }
+}
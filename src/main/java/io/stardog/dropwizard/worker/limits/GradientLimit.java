@@ -0,0 +1,48 @@
+package io.stardog.dropwizard.worker.limits;
+
+import io.stardog.dropwizard.worker.data.ConcurrencyLimitConfig;
+
+/**
+ * Grows or shrinks the limit by comparing the latest window's processing time to its long-term average, in
+ * the manner of TCP Vegas: while processing is no slower than usual the limit keeps growing, by the square root
+ * of itself when there is a backlog, and once more threads start making messages slower, it shrinks in
+ * proportion. Too many errors in a window back it off by backoffRatio as well.
+ */
+public class GradientLimit extends WindowedLimit {
+    /** How quickly the long-term average follows the latest windows **/
+    private final static double LONG_TERM_WEIGHT = 0.05;
+    /** How quickly the limit moves toward its new estimate **/
+    private final static double SMOOTHING = 0.2;
+
+    private double longTermNanos = -1;
+
+    public GradientLimit(ConcurrencyLimitConfig config) {
+        super(config);
+    }
+
+    public GradientLimit() {
+        this(ConcurrencyLimitConfig.builder().build());
+    }
+
+    @Override
+    protected double update(double limit, Window window) {
+        double shortTermNanos = Math.max(1, window.getAverageNanos());
+        if (longTermNanos < 0) {
+            longTermNanos = shortTermNanos;
+        } else {
+            longTermNanos = longTermNanos * (1 - LONG_TERM_WEIGHT) + shortTermNanos * LONG_TERM_WEIGHT;
+        }
+        // after a slow patch, let the long-term average recover faster so the limit isn't held up by it
+        if (longTermNanos > shortTermNanos * 2) {
+            longTermNanos *= 0.95;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, config.getTolerance() * longTermNanos / shortTermNanos));
+        double headroom = window.hasBacklog(config.getTargetDelayMillis()) ? Math.sqrt(limit) : 0;
+        double estimate = limit * gradient + headroom;
+        if (window.getErrorRate() > config.getMaxErrorRate()) {
+            estimate = Math.min(estimate, limit * config.getBackoffRatio());
+        }
+        return limit * (1 - SMOOTHING) + estimate * SMOOTHING;
+    }
+}
@@ -0,0 +1,105 @@
+package io.stardog.dropwizard.worker.limits;
+
+import io.stardog.dropwizard.worker.data.ConcurrencyLimitConfig;
+import io.stardog.dropwizard.worker.interfaces.ConcurrencyLimit;
+
+/**
+ * A limit that collects samples into windows of windowSize messages, and reconsiders itself once per window.
+ * Working over whole windows, and keeping the limit fractional so that it only moves a thread at a time once it
+ * has drifted a whole step, keeps the thread count from flapping with every slow or failed message.
+ */
+public abstract class WindowedLimit implements ConcurrencyLimit {
+    protected final ConcurrencyLimitConfig config;
+
+    private volatile double limit;
+    private int count;
+    private int errors;
+    private long totalNanos;
+    private int delayCount;
+    private long totalDelayMillis;
+
+    protected WindowedLimit(ConcurrencyLimitConfig config) {
+        this.config = config;
+        this.limit = config.getInitialLimit();
+    }
+
+    @Override
+    public int getLimit() {
+        return (int)limit;
+    }
+
+    @Override
+    public void onMessage(long delayMillis, long processingNanos, boolean failed) {
+        Window window = null;
+        synchronized (this) {
+            count++;
+            totalNanos += processingNanos;
+            if (failed) {
+                errors++;
+            }
+            if (delayMillis >= 0) {
+                delayCount++;
+                totalDelayMillis += delayMillis;
+            }
+            if (count >= config.getWindowSize()) {
+                window = new Window(count, errors, totalNanos / count,
+                        delayCount > 0 ? totalDelayMillis / delayCount : -1);
+                count = 0;
+                errors = 0;
+                totalNanos = 0;
+                delayCount = 0;
+                totalDelayMillis = 0;
+                double updated = update(limit, window);
+                limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), updated));
+            }
+        }
+    }
+
+    /**
+     * Work out the new limit at the end of a window.
+     * @param limit current limit
+     * @param window    what was seen during the window
+     * @return  the new limit, which is kept between minLimit and maxLimit
+     */
+    protected abstract double update(double limit, Window window);
+
+    protected static class Window {
+        private final int count;
+        private final int errors;
+        private final long averageNanos;
+        private final long averageDelayMillis;
+
+        private Window(int count, int errors, long averageNanos, long averageDelayMillis) {
+            this.count = count;
+            this.errors = errors;
+            this.averageNanos = averageNanos;
+            this.averageDelayMillis = averageDelayMillis;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getErrorRate() {
+            return (double)errors / count;
+        }
+
+        /** Average time taken to process each message **/
+        public long getAverageNanos() {
+            return averageNanos;
+        }
+
+        /** Average time messages waited to be picked up, or -1 if none of them said when they were queued **/
+        public long getAverageDelayMillis() {
+            return averageDelayMillis;
+        }
+
+        /**
+         * Whether messages are waiting longer than targetDelayMillis to be picked up. Without any delays to go on,
+         * assume there is a backlog, since the manager only asks for more threads while messages keep arriving.
+         */
+        public boolean hasBacklog(long targetDelayMillis) {
+            return averageDelayMillis < 0 || averageDelayMillis >= targetDelayMillis;
+        }
+    }
+}
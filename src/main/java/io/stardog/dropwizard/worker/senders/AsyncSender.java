@@ -0,0 +1,268 @@
+package io.stardog.dropwizard.worker.senders;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.lifecycle.Managed;
+import io.stardog.dropwizard.worker.data.AsyncSenderConfig;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.Sender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sender that buffers messages and sends them to another sender in batches from background threads, so that
+ * callers never wait on a round trip.
+ *
+ * A batch is flushed as soon as it reaches maxBatchSize messages or maxBatchBytes of payload, or once its oldest
+ * message has waited lingerMillis. Payloads are measured by the wrapped sender, in its own wire format; as that
+ * encodes each message an extra time, leave maxBatchBytes at 0 unless the wrapped sender can't split batches by
+ * size itself (SqsSender already keeps to the SQS limits). When the buffer is full, senders either block or fail,
+ * depending on blockWhenFull. Everything still buffered is flushed when the sender is stopped, so register it with
+ * the Dropwizard lifecycle.
+ *
+ * Records the following metrics:
+ *   AsyncSender.[name].buffered
+ *      gauge of messages waiting to be flushed
+ *   AsyncSender.[name].batchSize
+ *      histogram of the number of messages in each flushed batch
+ *   AsyncSender.[name].sent
+ *      number of messages sent successfully
+ *   AsyncSender.[name].failed
+ *      number of messages the underlying sender failed to send
+ *   AsyncSender.[name].rejected
+ *      number of messages rejected because the buffer was full or the sender was stopped
+ */
+public class AsyncSender implements Sender, Managed {
+    private final String name;
+    private final Sender sender;
+    private final AsyncSenderConfig config;
+    private final BlockingQueue<Pending> buffer;
+    private final ExecutorService flushers;
+    private final Histogram batchSize;
+    private final Meter sent;
+    private final Meter failed;
+    private final Meter rejected;
+    private volatile boolean isRunning = false;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(AsyncSender.class);
+
+    public AsyncSender(String name, Sender sender, AsyncSenderConfig config, MetricRegistry metrics) {
+        this.name = name;
+        this.sender = sender;
+        this.config = config;
+        this.buffer = new ArrayBlockingQueue<>(config.getBufferCapacity());
+        this.flushers = Executors.newFixedThreadPool(config.getFlushThreads());
+        this.batchSize = metrics.histogram(MetricRegistry.name(AsyncSender.class, name, "batchSize"));
+        this.sent = metrics.meter(MetricRegistry.name(AsyncSender.class, name, "sent"));
+        this.failed = metrics.meter(MetricRegistry.name(AsyncSender.class, name, "failed"));
+        this.rejected = metrics.meter(MetricRegistry.name(AsyncSender.class, name, "rejected"));
+        metrics.register(MetricRegistry.name(AsyncSender.class, name, "buffered"), (Gauge<Integer>) buffer::size);
+    }
+
+    @Override
+    public void start() throws Exception {
+        LOGGER.info("Starting " + name + " with config: " + config);
+        isRunning = true;
+        for (int i = 0; i < config.getFlushThreads(); i++) {
+            flushers.submit(this::flushLoop);
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        LOGGER.info("Flushing " + buffer.size() + " buffered messages");
+        isRunning = false;
+        flushers.shutdown();
+        flushers.awaitTermination(60, TimeUnit.SECONDS);
+        flushers.shutdownNow();
+
+        // anything left now could not be flushed in time
+        Pending pending;
+        while ((pending = buffer.poll()) != null) {
+            rejected.mark();
+            pending.future.completeExceptionally(new RejectedExecutionException("Sender stopped before the message could be sent"));
+        }
+        LOGGER.info("Stopped");
+    }
+
+    /**
+     * Buffer a message to be sent in the background. Fails immediately if the message cannot be buffered.
+     * @throws RejectedExecutionException   if the buffer is full (and blockWhenFull is off) or the sender is stopped
+     */
+    @Override
+    public void send(WorkMessage message) {
+        CompletableFuture<Void> future = sendAsync(message);
+        if (future.isCompletedExceptionally()) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Buffer a message to be sent in the background.
+     * @param message   message to send
+     * @return  a future that completes once the message has been sent, or completes exceptionally
+     * if it could not be buffered or sent
+     */
+    public CompletableFuture<Void> sendAsync(WorkMessage message) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!isRunning) {
+            rejected.mark();
+            future.completeExceptionally(new RejectedExecutionException("Sender " + name + " is not running"));
+            return future;
+        }
+
+        int bytes = 0;
+        if (config.getMaxBatchBytes() > 0) {
+            try {
+                bytes = sender.sizeOf(message);
+            } catch (IOException e) {
+                future.completeExceptionally(new UncheckedIOException(e));
+                return future;
+            }
+        }
+
+        Pending pending = new Pending(message, bytes, System.nanoTime(), future);
+        boolean buffered;
+        try {
+            if (config.isBlockWhenFull()) {
+                buffer.put(pending);
+                buffered = true;
+            } else {
+                buffered = buffer.offer(pending);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            buffered = false;
+        }
+        if (!buffered) {
+            rejected.mark();
+            future.completeExceptionally(new RejectedExecutionException("Buffer for sender " + name + " is full"));
+        } else if (!isRunning && buffer.remove(pending)) {
+            // stopped while it was being buffered, and the final flush may have already gone; if it is no longer in
+            // the buffer, a flusher or stop() has it and will complete it
+            rejected.mark();
+            future.completeExceptionally(new RejectedExecutionException("Sender " + name + " is not running"));
+        }
+        return future;
+    }
+
+    private void flushLoop() {
+        Pending carried = null;
+        while (isRunning || carried != null || !buffer.isEmpty()) {
+            List<Pending> batch = new ArrayList<>(config.getMaxBatchSize());
+            try {
+                Pending first = carried != null ? carried : buffer.poll(100, TimeUnit.MILLISECONDS);
+                carried = null;
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                int bytes = first.bytes;
+                long deadline = first.queuedNanos + TimeUnit.MILLISECONDS.toNanos(config.getLingerMillis());
+                while (batch.size() < config.getMaxBatchSize()) {
+                    // linger in short slices so a stop is noticed; once stopped, just flush whatever is left
+                    long wait = isRunning ? Math.min(deadline - System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(100)) : 0;
+                    Pending next = wait > 0 ? buffer.poll(wait, TimeUnit.NANOSECONDS) : buffer.poll();
+                    if (next == null) {
+                        if (isRunning && System.nanoTime() < deadline) {
+                            continue;
+                        }
+                        break;
+                    }
+                    if (config.getMaxBatchBytes() > 0 && bytes + next.bytes > config.getMaxBatchBytes()) {
+                        carried = next;
+                        break;
+                    }
+                    batch.add(next);
+                    bytes += next.bytes;
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (carried != null) {
+                    batch.add(carried);
+                }
+                for (Pending pending : batch) {
+                    rejected.mark();
+                    pending.future.completeExceptionally(new RejectedExecutionException("Sender stopped before the message could be sent"));
+                }
+                return;
+            } catch (Exception e) {
+                LOGGER.error("Unexpected exception flushing " + name, e);
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        List<WorkMessage> messages = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            messages.add(pending.message);
+        }
+        batchSize.update(batch.size());
+
+        Map<Integer,Exception> failures = null;
+        try {
+            sender.sendBatch(messages);
+        } catch (BatchSendException e) {
+            failures = e.getFailures();
+        } catch (Exception e) {
+            LOGGER.warn("Exception sending batch of " + batch.size() + " messages", e);
+            failed.mark(batch.size());
+            for (Pending pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Exception failure = failures != null ? failures.get(i) : null;
+            if (failure != null) {
+                LOGGER.warn("Exception sending message: " + batch.get(i).message, failure);
+                failed.mark();
+                batch.get(i).future.completeExceptionally(failure);
+            } else {
+                sent.mark();
+                batch.get(i).future.complete(null);
+            }
+        }
+    }
+
+    private static class Pending {
+        private final WorkMessage message;
+        private final int bytes;
+        private final long queuedNanos;
+        private final CompletableFuture<Void> future;
+
+        private Pending(WorkMessage message, int bytes, long queuedNanos, CompletableFuture<Void> future) {
+            this.message = message;
+            this.bytes = bytes;
+            this.queuedNanos = queuedNanos;
+            this.future = future;
+        }
+    }
+}
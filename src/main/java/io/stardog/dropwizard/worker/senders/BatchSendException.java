@@ -0,0 +1,46 @@
+package io.stardog.dropwizard.worker.senders;
+
+import io.stardog.dropwizard.worker.data.WorkMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Thrown when some of the messages in a batch send could not be sent. Messages not listed as failures
+ * were sent successfully.
+ */
+public class BatchSendException extends RuntimeException {
+    private final List<WorkMessage> messages;
+    private final Map<Integer,Exception> failures;
+
+    /**
+     * @param messages  the messages submitted, in order
+     * @param failures  the cause of each failure, keyed by the message's position in messages
+     */
+    public BatchSendException(List<WorkMessage> messages, Map<Integer,Exception> failures) {
+        super(failures.size() + " of " + messages.size() + " messages failed to send");
+        this.messages = messages;
+        this.failures = Collections.unmodifiableMap(new TreeMap<>(failures));
+        for (Exception e : failures.values()) {
+            addSuppressed(e);
+        }
+    }
+
+    /**
+     * @return  the cause of each failure, keyed by the position of the message in the submitted batch
+     */
+    public Map<Integer,Exception> getFailures() {
+        return failures;
+    }
+
+    public List<WorkMessage> getFailedMessages() {
+        List<WorkMessage> failed = new ArrayList<>(failures.size());
+        for (Integer index : failures.keySet()) {
+            failed.add(messages.get(index));
+        }
+        return failed;
+    }
+}
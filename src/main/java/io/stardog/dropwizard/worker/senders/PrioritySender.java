@@ -0,0 +1,85 @@
+package io.stardog.dropwizard.worker.senders;
+
+import io.stardog.dropwizard.worker.data.Priority;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.Sender;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sends each message through the lane for its priority, normally a separate SQS queue or Redis queue for each,
+ * to be polled by a PriorityWorker. Messages whose priority has no lane of its own go through the NORMAL lane.
+ */
+public class PrioritySender implements Sender {
+    private final Map<Priority,Sender> lanes;
+
+    /**
+     * @param lanes the sender for each priority; there must be one for NORMAL
+     */
+    public PrioritySender(Map<Priority,Sender> lanes) {
+        if (!lanes.containsKey(Priority.NORMAL)) {
+            throw new IllegalArgumentException("PrioritySender needs a sender for NORMAL priority");
+        }
+        this.lanes = new EnumMap<>(lanes);
+    }
+
+    public PrioritySender(Sender high, Sender normal, Sender low) {
+        this.lanes = new EnumMap<>(Priority.class);
+        lanes.put(Priority.HIGH, high);
+        lanes.put(Priority.NORMAL, normal);
+        lanes.put(Priority.LOW, low);
+    }
+
+    @Override
+    public void send(WorkMessage message) {
+        laneFor(message.getPriority()).send(message);
+    }
+
+    /**
+     * Send the messages for each lane as one batch.
+     * @throws BatchSendException   if any of the messages could not be sent, with the failures keyed by position
+     *                              in messages
+     */
+    @Override
+    public void sendBatch(Collection<WorkMessage> messages) {
+        Map<Sender,List<Integer>> indexesByLane = new LinkedHashMap<>();
+        List<WorkMessage> all = new ArrayList<>(messages);
+        for (int i = 0; i < all.size(); i++) {
+            indexesByLane.computeIfAbsent(laneFor(all.get(i).getPriority()), lane -> new ArrayList<>()).add(i);
+        }
+
+        Map<Integer,Exception> failures = new TreeMap<>();
+        for (Map.Entry<Sender,List<Integer>> entry : indexesByLane.entrySet()) {
+            List<Integer> indexes = entry.getValue();
+            List<WorkMessage> batch = new ArrayList<>(indexes.size());
+            for (Integer index : indexes) {
+                batch.add(all.get(index));
+            }
+            try {
+                entry.getKey().sendBatch(batch);
+            } catch (BatchSendException e) {
+                for (Map.Entry<Integer,Exception> failure : e.getFailures().entrySet()) {
+                    failures.put(indexes.get(failure.getKey()), failure.getValue());
+                }
+            } catch (Exception e) {
+                for (Integer index : indexes) {
+                    failures.put(index, e);
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new BatchSendException(all, failures);
+        }
+    }
+
+    private Sender laneFor(Priority priority) {
+        Sender lane = lanes.get(priority);
+        return lane != null ? lane : lanes.get(Priority.NORMAL);
+    }
+}
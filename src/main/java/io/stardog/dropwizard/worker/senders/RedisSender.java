@@ -1,48 +1,167 @@
 package io.stardog.dropwizard.worker.senders;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stardog.dropwizard.worker.codecs.JsonCodec;
 import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
 import io.stardog.dropwizard.worker.interfaces.Sender;
 import io.stardog.dropwizard.worker.util.WorkerDefaults;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
 
 import javax.inject.Inject;
+import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * Sends messages to Redis, either publishing them to a channel or pushing them onto a queue.
+ *
+ * Each send borrows a connection from the pool for a single round trip. To send many messages, use
+ * sendBatch, which pipelines them over one connection; to batch up concurrent single sends the same way,
+ * wrap this sender in an AsyncSender.
+ *
+ * Messages are written as plain JSON unless another codec is given. Before switching a channel or queue to a new
+ * format, make sure every worker reading from it understands that format.
+ */
 public class RedisSender implements Sender {
+    /** Pipelined commands are flushed at least this often, to bound the buffers on both ends **/
+    public final static int MAX_PIPELINE_SIZE = 1000;
+
+    /**
+     * How messages are delivered: PUBLISH to every RedisWorker subscribed to a channel, or QUEUE onto a list
+     * for exactly one RedisQueueWorker to take.
+     */
+    public enum Mode { PUBLISH, QUEUE }
+
     private final JedisPool jedisPool;
     private final String defaultChannel;
-    private final ObjectMapper mapper;
+    private final Mode mode;
+    private final MessageCodec codec;
     private final Logger LOGGER = LoggerFactory.getLogger(RedisSender.class);
 
     @Inject
     public RedisSender(JedisPool jedisPool, String defaultChannel, ObjectMapper mapper) {
+        this(jedisPool, defaultChannel, Mode.PUBLISH, mapper);
+    }
+
+    public RedisSender(JedisPool jedisPool, String defaultChannel, Mode mode, ObjectMapper mapper) {
+        this(jedisPool, defaultChannel, mode, new JsonCodec(mapper));
+    }
+
+    public RedisSender(JedisPool jedisPool, String defaultChannel, Mode mode, MessageCodec codec) {
         this.jedisPool = jedisPool;
         this.defaultChannel = defaultChannel;
-        this.mapper = mapper;
+        this.mode = mode;
+        this.codec = codec;
+    }
+
+    public RedisSender(JedisPool jedisPool, String defaultChannel, Mode mode) {
+        this(jedisPool, defaultChannel, mode, WorkerDefaults.MAPPER);
     }
 
     public RedisSender(JedisPool jedisPool, String defaultChannel) {
         this(jedisPool, defaultChannel, WorkerDefaults.MAPPER);
     }
 
+    @Override
+    public int sizeOf(WorkMessage message) throws IOException {
+        return codec.encode(message).getBytes(StandardCharsets.UTF_8).length;
+    }
+
     @Override
     public void send(WorkMessage message) {
         send(message, defaultChannel);
     }
 
+    /**
+     * Send a message to a channel, or in QUEUE mode, to the queue of that name.
+     */
     public void send(WorkMessage message, String channel) {
         try {
-            String payload = mapper.writeValueAsString(message);
-            Jedis jedis = jedisPool.getResource();
-            jedis.publish(channel, payload);
-            jedis.close();
-        } catch (JsonProcessingException e) {
+            String payload = codec.encode(message);
+            try (Jedis jedis = jedisPool.getResource()) {
+                if (mode == Mode.QUEUE) {
+                    // RedisQueueWorker takes from the other end, so the queue is first in, first out
+                    jedis.lpush(channel, payload);
+                } else {
+                    jedis.publish(channel, payload);
+                }
+            }
+        } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
+
+    @Override
+    public void sendBatch(Collection<WorkMessage> messages) {
+        send(messages, defaultChannel);
+    }
+
+    /**
+     * Send many messages to a channel (or queue) over a single connection, pipelining the commands
+     * rather than waiting on a round trip for each message.
+     * @param messages  messages to send
+     * @param channel   channel, or in QUEUE mode the queue, to send to
+     * @throws BatchSendException   if any of the messages could not be sent
+     */
+    public void send(Collection<WorkMessage> messages, String channel) {
+        List<WorkMessage> messageList = new ArrayList<>(messages);
+        Map<Integer,Exception> failures = new TreeMap<>();
+        List<Integer> indexes = new ArrayList<>(messageList.size());
+        List<String> payloads = new ArrayList<>(messageList.size());
+        for (int i = 0; i < messageList.size(); i++) {
+            try {
+                payloads.add(codec.encode(messageList.get(i)));
+                indexes.add(i);
+            } catch (IOException e) {
+                failures.put(i, new UncheckedIOException(e));
+            }
+        }
+
+        if (!payloads.isEmpty()) {
+            try (Jedis jedis = jedisPool.getResource()) {
+                for (int start = 0; start < payloads.size(); start += MAX_PIPELINE_SIZE) {
+                    List<String> chunk = payloads.subList(start, Math.min(start + MAX_PIPELINE_SIZE, payloads.size()));
+                    try {
+                        sendPipelined(jedis, chunk, channel);
+                    } catch (Exception e) {
+                        for (int i = start; i < start + chunk.size(); i++) {
+                            failures.put(indexes.get(i), e);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                // unable to get a connection at all
+                for (Integer index : indexes) {
+                    failures.putIfAbsent(index, e);
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw new BatchSendException(messageList, failures);
+        }
+    }
+
+    private void sendPipelined(Jedis jedis, List<String> payloads, String channel) {
+        if (mode == Mode.QUEUE) {
+            // a single LPUSH of the whole chunk keeps it in order for a FIFO consumer
+            jedis.lpush(channel, payloads.toArray(new String[0]));
+            return;
+        }
+        Pipeline pipeline = jedis.pipelined();
+        for (String payload : payloads) {
+            pipeline.publish(channel, payload);
+        }
+        pipeline.sync();
+    }
 }
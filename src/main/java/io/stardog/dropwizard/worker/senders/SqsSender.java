@@ -1,36 +1,76 @@
 package io.stardog.dropwizard.worker.senders;
 
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.AmazonSQSException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stardog.dropwizard.worker.codecs.JsonCodec;
 import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
 import io.stardog.dropwizard.worker.interfaces.Sender;
 import io.stardog.dropwizard.worker.util.WorkerDefaults;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
+/**
+ * Sends messages to SQS queues.
+ *
+ * Queue URLs are resolved once per queue name and cached; if SQS reports that a queue no longer exists,
+ * the cached URL is dropped and resolved again before retrying once.
+ *
+ * Messages are written as plain JSON unless another codec is given. Before switching a queue to a new format,
+ * make sure every worker reading from it understands that format.
+ */
 public class SqsSender implements Sender {
+    /** SQS accepts at most 10 entries per batch... **/
+    public final static int MAX_BATCH_SIZE = 10;
+    /** ...and at most 256KB of payload per message and per batch **/
+    public final static int MAX_PAYLOAD_BYTES = 262144;
+
     private final AmazonSQS sqs;
     private final String defaultQueueName;
     private final String defaultMessageGroupId;
-    private final ObjectMapper mapper;
+    private final MessageCodec codec;
+    private final Map<String,String> queueUrls = new ConcurrentHashMap<>();
 
     @Inject
     public SqsSender(AmazonSQS sqs, @Named("sqsQueueName") String defaultQueueName, @Named("sqsMessageGroupId") String defaultMessageGroupId, ObjectMapper mapper) {
+        this(sqs, defaultQueueName, defaultMessageGroupId, new JsonCodec(mapper));
+    }
+
+    public SqsSender(AmazonSQS sqs, String defaultQueueName, @Nullable String defaultMessageGroupId, MessageCodec codec) {
         this.sqs = sqs;
         this.defaultQueueName = defaultQueueName;
         this.defaultMessageGroupId = defaultMessageGroupId;
-        this.mapper = mapper;
+        this.codec = codec;
     }
 
     public SqsSender(AmazonSQS sqs, String defaultQueueName, @Nullable String defaultMessageGroupId) {
         this(sqs, defaultQueueName, defaultMessageGroupId, WorkerDefaults.MAPPER);
     }
 
+    @Override
+    public int sizeOf(WorkMessage message) throws IOException {
+        return codec.encode(message).getBytes(StandardCharsets.UTF_8).length;
+    }
+
     @Override
     public void send(WorkMessage message) {
         send(message, defaultQueueName, defaultMessageGroupId);
@@ -38,16 +78,110 @@ public class SqsSender implements Sender {
 
     public void send(WorkMessage message, String queueName, @Nullable String messageGroupId) {
         try {
-            String body = mapper.writeValueAsString(message);
-            SendMessageRequest request = new SendMessageRequest()
-                    .withQueueUrl(sqs.getQueueUrl(queueName).getQueueUrl())
-                    .withMessageBody(body);
+            String body = codec.encode(message);
+            withQueueUrl(queueName, queueUrl -> {
+                SendMessageRequest request = new SendMessageRequest()
+                        .withQueueUrl(queueUrl)
+                        .withMessageBody(body);
+                if (messageGroupId != null) {
+                        request.withMessageGroupId(messageGroupId);
+                }
+                return sqs.sendMessage(request);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void sendBatch(Collection<WorkMessage> messages) {
+        sendBatch(messages, defaultQueueName, defaultMessageGroupId);
+    }
+
+    /**
+     * Send messages using SendMessageBatch, splitting them into as few batches as the SQS limits of
+     * 10 entries and 256KB per batch allow.
+     * @param messages  messages to send
+     * @param queueName name of the queue to send to
+     * @param messageGroupId    message group for FIFO queues, or null
+     * @throws BatchSendException   if any of the messages could not be sent
+     */
+    public void sendBatch(Collection<WorkMessage> messages, String queueName, @Nullable String messageGroupId) {
+        List<WorkMessage> messageList = new ArrayList<>(messages);
+        Map<Integer,Exception> failures = new TreeMap<>();
+
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>(MAX_BATCH_SIZE);
+        int batchBytes = 0;
+        for (int i = 0; i < messageList.size(); i++) {
+            String body;
+            try {
+                body = codec.encode(messageList.get(i));
+            } catch (IOException e) {
+                failures.put(i, new UncheckedIOException(e));
+                continue;
+            }
+            int bytes = body.getBytes(StandardCharsets.UTF_8).length;
+            if (bytes > MAX_PAYLOAD_BYTES) {
+                failures.put(i, new IllegalArgumentException("Message of " + bytes + " bytes exceeds the SQS limit of " + MAX_PAYLOAD_BYTES + " bytes"));
+                continue;
+            }
+
+            if (entries.size() == MAX_BATCH_SIZE || batchBytes + bytes > MAX_PAYLOAD_BYTES) {
+                sendEntries(queueName, entries, failures);
+                entries = new ArrayList<>(MAX_BATCH_SIZE);
+                batchBytes = 0;
+            }
+            SendMessageBatchRequestEntry entry = new SendMessageBatchRequestEntry(String.valueOf(i), body);
             if (messageGroupId != null) {
-                    request.withMessageGroupId(messageGroupId);
+                entry.withMessageGroupId(messageGroupId);
             }
-            sqs.sendMessage(request);
-        } catch (JsonProcessingException e) {
-            throw new UncheckedIOException(e);
+            entries.add(entry);
+            batchBytes += bytes;
+        }
+        if (!entries.isEmpty()) {
+            sendEntries(queueName, entries, failures);
+        }
+
+        if (!failures.isEmpty()) {
+            throw new BatchSendException(messageList, failures);
+        }
+    }
+
+    private void sendEntries(String queueName, List<SendMessageBatchRequestEntry> entries, Map<Integer,Exception> failures) {
+        SendMessageBatchResult result;
+        try {
+            result = withQueueUrl(queueName, queueUrl -> sqs.sendMessageBatch(new SendMessageBatchRequest(queueUrl, entries)));
+        } catch (Exception e) {
+            for (SendMessageBatchRequestEntry entry : entries) {
+                failures.put(Integer.parseInt(entry.getId()), e);
+            }
+            return;
         }
+
+        if (result != null && result.getFailed() != null) {
+            for (BatchResultErrorEntry failed : result.getFailed()) {
+                AmazonSQSException e = new AmazonSQSException(failed.getMessage());
+                e.setErrorCode(failed.getCode());
+                failures.put(Integer.parseInt(failed.getId()), e);
+            }
+        }
+    }
+
+    /**
+     * Make a call against the URL of a queue, resolving it if it is not already cached. If the queue no longer
+     * exists at the cached URL, resolve it once more and retry.
+     */
+    protected <T> T withQueueUrl(String queueName, Function<String,T> call) {
+        String queueUrl = getQueueUrl(queueName);
+        try {
+            return call.apply(queueUrl);
+        } catch (QueueDoesNotExistException e) {
+            queueUrls.remove(queueName, queueUrl);
+            return call.apply(getQueueUrl(queueName));
+        }
+    }
+
+    protected String getQueueUrl(String queueName) {
+        return queueUrls.computeIfAbsent(queueName, name -> sqs.getQueueUrl(name).getQueueUrl());
     }
 }
@@ -0,0 +1,173 @@
+package io.stardog.dropwizard.worker.util;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.DedupStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Skips messages that have already been processed, as at-least-once delivery and retries will sometimes hand
+ * over the same message twice. Each message is keyed by a key function, such as its queue's message id or one of
+ * its params; the first message with a key is processed, and later ones within ttlMillis are skipped as though
+ * they had been. Messages the key function gives no key for are always processed.
+ *
+ * A key is forgotten again if its message fails (or its method returns false), so that the redelivery is
+ * processed; but a duplicate that turns up while the first is still being processed is skipped. If the store
+ * can't be reached, messages are processed rather than held up.
+ *
+ * Records the following meters:
+ *   Deduplicator.[name].hit
+ *      number of duplicate messages skipped
+ *   Deduplicator.[name].miss
+ *      number of messages processed for the first time
+ *   Deduplicator.[name].error
+ *      number of messages processed without a check because the store failed
+ *
+ * And the following gauges:
+ *   Deduplicator.[name].hitRate
+ *      proportion of the messages checked that were duplicates
+ */
+public class Deduplicator {
+    private final String name;
+    private final DedupStore store;
+    private final Function<WorkMessage,String> keyFunction;
+    private final long ttlMillis;
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter errors;
+    private final static Logger LOGGER = LoggerFactory.getLogger(Deduplicator.class);
+
+    /**
+     * @param name          name for the metrics, and the namespace for keys in the store
+     * @param keyFunction   gives the key for a message, or null to process it without a check
+     * @param ttlMillis     how long to remember a key for
+     */
+    public Deduplicator(String name, DedupStore store, Function<WorkMessage,String> keyFunction, long ttlMillis, MetricRegistry metrics) {
+        this.name = name;
+        this.store = store;
+        this.keyFunction = keyFunction;
+        this.ttlMillis = ttlMillis;
+        this.hits = metrics.meter(MetricRegistry.name(Deduplicator.class, name, "hit"));
+        this.misses = metrics.meter(MetricRegistry.name(Deduplicator.class, name, "miss"));
+        this.errors = metrics.meter(MetricRegistry.name(Deduplicator.class, name, "error"));
+        metrics.register(MetricRegistry.name(Deduplicator.class, name, "hitRate"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+            }
+        });
+    }
+
+    /**
+     * Key messages by the id their queue gave them (such as the SQS message id), which catches redeliveries of the
+     * same message, but not the same message sent twice.
+     */
+    public static Function<WorkMessage,String> byMessageId() {
+        return message -> message.getId().orElse(null);
+    }
+
+    /**
+     * Key messages by the value of one of their params, which catches the same work sent twice. Params that have
+     * already been read into a class are converted back with the default mapper to find it; byTypedParams avoids
+     * that cost.
+     */
+    public static Function<WorkMessage,String> byParam(String param) {
+        return byParam(param, WorkerDefaults.MAPPER);
+    }
+
+    /**
+     * Key messages by the value of one of their params, converting typed params with the given mapper.
+     */
+    public static Function<WorkMessage,String> byParam(String param, ObjectMapper mapper) {
+        return message -> {
+            Object typedParams = message.getTypedParams();
+            if (typedParams != null) {
+                JsonNode value = mapper.valueToTree(typedParams).get(param);
+                if (value == null || value.isNull()) {
+                    return null;
+                }
+                return value.isValueNode() ? value.asText() : value.toString();
+            }
+            Map<String,Object> params = message.getParams();
+            Object value = params != null ? params.get(param) : null;
+            return value != null ? value.toString() : null;
+        };
+    }
+
+    /**
+     * Key messages of a method that takes a params class by a value read straight from their params. Messages
+     * whose params haven't been read into that class are processed without a check.
+     */
+    public static <T> Function<WorkMessage,String> byTypedParams(Class<T> paramsClass, Function<T,?> keyFunction) {
+        return message -> {
+            Object typedParams = message.getTypedParams();
+            if (!paramsClass.isInstance(typedParams)) {
+                return null;
+            }
+            Object value = keyFunction.apply(paramsClass.cast(typedParams));
+            return value != null ? value.toString() : null;
+        };
+    }
+
+    /**
+     * Process a message unless it is a duplicate.
+     * @param process   processes the message, returning whether it was processed
+     * @return  the result of process, or true if the message was skipped as a duplicate
+     */
+    public boolean apply(WorkMessage message, Predicate<WorkMessage> process) {
+        String key = storeKey(message);
+        if (key == null) {
+            return process.test(message);
+        }
+
+        boolean first;
+        try {
+            first = store.markIfAbsent(key, ttlMillis);
+        } catch (Exception e) {
+            LOGGER.warn("Unable to check for duplicate of " + key + ", processing anyway", e);
+            errors.mark();
+            return process.test(message);
+        }
+        if (!first) {
+            LOGGER.debug("Skipping duplicate " + key);
+            hits.mark();
+            return true;
+        }
+
+        misses.mark();
+        boolean processed = false;
+        try {
+            processed = process.test(message);
+            return processed;
+        } finally {
+            if (!processed) {
+                forget(key);
+            }
+        }
+    }
+
+    @Nullable
+    private String storeKey(WorkMessage message) {
+        String key = keyFunction.apply(message);
+        return key != null ? name + ":" + key : null;
+    }
+
+    private void forget(String key) {
+        try {
+            store.remove(key);
+        } catch (Exception e) {
+            LOGGER.warn("Unable to forget " + key + " after it failed; duplicates of it will be skipped", e);
+            errors.mark();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.stardog.dropwizard.worker.util;
+
+import io.stardog.dropwizard.worker.data.MethodLimitConfig;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps how many messages of one method are processed at once (a semaphore of maxConcurrent permits) and how
+ * often they start (a token bucket refilled at ratePerSecond, holding up to burst tokens). Workers check it before
+ * running the method, and put the message off rather than wait when it is saturated, so that one slow method
+ * can't take every thread.
+ */
+public class MethodLimiter {
+    private final MethodLimitConfig config;
+    private final Semaphore permits;
+    private double tokens;
+    private long refilledNanos;
+
+    public MethodLimiter(MethodLimitConfig config) {
+        this.config = config;
+        this.permits = config.getMaxConcurrent() > 0 ? new Semaphore(config.getMaxConcurrent()) : null;
+        this.tokens = config.getBurst();
+        this.refilledNanos = System.nanoTime();
+    }
+
+    public MethodLimitConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Claim a slot to process a message, if the method isn't saturated. Each successful call must be followed
+     * by a call to release() once the message is done.
+     * @return  false if the method is at maxConcurrent, or out of tokens
+     */
+    public boolean tryAcquire() {
+        if (permits != null && !permits.tryAcquire()) {
+            return false;
+        }
+        if (config.getRatePerSecond() > 0 && !tryTakeToken()) {
+            if (permits != null) {
+                permits.release();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    public void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    /**
+     * Number of messages currently holding a slot, if concurrency is limited.
+     */
+    public int getInFlight() {
+        return permits != null ? config.getMaxConcurrent() - permits.availablePermits() : 0;
+    }
+
+    private synchronized boolean tryTakeToken() {
+        long now = System.nanoTime();
+        tokens = Math.min(config.getBurst(), tokens + (now - refilledNanos) * config.getRatePerSecond() / 1e9);
+        refilledNanos = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
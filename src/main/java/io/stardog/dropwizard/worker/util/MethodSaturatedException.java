@@ -0,0 +1,27 @@
+package io.stardog.dropwizard.worker.util;
+
+/**
+ * Thrown by a worker when a message's method is already at its limits, so the message should be put off rather
+ * than processed or counted as an error.
+ */
+public class MethodSaturatedException extends RuntimeException {
+    private final String method;
+    private final int deferSeconds;
+
+    public MethodSaturatedException(String method, int deferSeconds) {
+        super("Method " + method + " is saturated");
+        this.method = method;
+        this.deferSeconds = deferSeconds;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * How long to put the message off for.
+     */
+    public int getDeferSeconds() {
+        return deferSeconds;
+    }
+}
@@ -0,0 +1,149 @@
+package io.stardog.dropwizard.worker.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free queue safe for any number of producers and consumers, after Dmitry Vyukov's MPMC ring
+ * buffer. Its slots are allocated once up front, so unlike a linked queue it allocates nothing per message.
+ *
+ * Each slot has a sequence number saying whose turn it is: a producer may fill the slot for position pos once its
+ * sequence is pos, and a consumer may empty it once its sequence is pos + 1. Producers and consumers each claim a
+ * position with a single compare-and-set, and only contend with each other when the queue is nearly full or empty.
+ *
+ * offer returns false rather than waiting when the queue is full, and poll returns null when it is empty. size,
+ * peek and iteration are only a snapshot, which may already be out of date.
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePos = new PaddedAtomicLong();
+    private final AtomicLong dequeuePos = new PaddedAtomicLong();
+
+    /**
+     * @param capacity  maximum number of elements, rounded up to a power of two (and at least 2)
+     */
+    public RingBufferQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        this.capacity = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.mask = this.capacity - 1;
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long pos = enqueuePos.get();
+        int index;
+        while (true) {
+            index = (int)(pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (enqueuePos.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = enqueuePos.get();
+            } else if (diff < 0) {
+                // the slot still holds the element from a lap ago, so the queue is full
+                return false;
+            } else {
+                // another producer got here first
+                pos = enqueuePos.get();
+            }
+        }
+        elements.lazySet(index, element);
+        sequences.lazySet(index, pos + 1);
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        long pos = dequeuePos.get();
+        int index;
+        while (true) {
+            index = (int)(pos & mask);
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = dequeuePos.get();
+            } else if (diff < 0) {
+                // the slot hasn't been filled yet, so the queue is empty
+                return null;
+            } else {
+                // another consumer got here first
+                pos = dequeuePos.get();
+            }
+        }
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        // hand the slot on to the producer one lap ahead
+        sequences.lazySet(index, pos + capacity);
+        return element;
+    }
+
+    @Override
+    public E peek() {
+        long pos = dequeuePos.get();
+        int index = (int)(pos & mask);
+        return sequences.get(index) == pos + 1 ? elements.get(index) : null;
+    }
+
+    @Override
+    public int size() {
+        long size = enqueuePos.get() - dequeuePos.get();
+        return (int)Math.max(0, Math.min(capacity, size));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Iterate over a snapshot of the queue; removing through the iterator is not supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long end = enqueuePos.get();
+        for (long pos = dequeuePos.get(); pos < end; pos++) {
+            int index = (int)(pos & mask);
+            E element = elements.get(index);
+            if (sequences.get(index) == pos + 1 && element != null) {
+                snapshot.add(element);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    /**
+     * An AtomicLong padded out to its own cache line, so that producers updating one position don't slow down
+     * consumers reading the other.
+     */
+    @SuppressWarnings("unused")
+    private static class PaddedAtomicLong extends AtomicLong {
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -0,0 +1,49 @@
+package io.stardog.dropwizard.worker.util;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads on JVMs that have them (Java 21 and later), while still building for Java 8.
+ */
+public class VirtualThreads {
+    @Nullable
+    private final static Method NEW_EXECUTOR = findNewExecutor();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * @return  an executor that starts a new virtual thread for each task, or null if the JVM doesn't support them
+     */
+    @Nullable
+    public static ExecutorService newExecutor() {
+        if (NEW_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService)NEW_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Method findNewExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // virtual threads were a preview before Java 21, and fail when previews aren't enabled
+            ((ExecutorService)method.invoke(null)).shutdown();
+            return method;
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.stardog.dropwizard.worker.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.codecs.NegotiatingCodec;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Reads WorkMessages in a single streaming pass, in whatever format the codec reads.
+ *
+ * For methods registered with a params class (WorkMethod.fn(method, mapper, class, func)), the params are read
+ * straight into that class, rather than into a map that the method then converts again. Senders write the
+ * method before the params, so it is known by the time the params are reached; if a message has them the other
+ * way around, the params are buffered until the method turns up.
+ */
+public class WorkMessageReader {
+    private final ObjectMapper mapper;
+    private final WorkMethods methods;
+    private final MessageCodec codec;
+    private final JavaType mapType;
+
+    public WorkMessageReader(ObjectMapper mapper, WorkMethods methods, MessageCodec codec) {
+        this.mapper = mapper;
+        this.methods = methods;
+        this.codec = codec;
+        this.mapType = mapper.getTypeFactory().constructMapType(Map.class, String.class, Object.class);
+    }
+
+    /**
+     * Reads every format this library writes.
+     */
+    public WorkMessageReader(ObjectMapper mapper, WorkMethods methods) {
+        this(mapper, methods, NegotiatingCodec.of(mapper));
+    }
+
+    public WorkMessage read(String payload) throws IOException {
+        try (JsonParser parser = codec.createParser(payload)) {
+            return read(parser);
+        }
+    }
+
+    private WorkMessage read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw JsonMappingException.from(parser, "Expected a JSON object for WorkMessage");
+        }
+
+        String method = null;
+        Instant queueAt = null;
+        Object params = null;
+        TokenBuffer bufferedParams = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("method".equals(field)) {
+                method = token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+            } else if ("params".equals(field)) {
+                if (token == JsonToken.VALUE_NULL) {
+                    params = null;
+                } else if (method != null) {
+                    params = readParams(method, parser);
+                } else {
+                    bufferedParams = new TokenBuffer(parser);
+                    bufferedParams.copyCurrentStructure(parser);
+                }
+            } else if ("at".equals(field)) {
+                queueAt = token == JsonToken.VALUE_NULL ? null : mapper.readValue(parser, Instant.class);
+            } else if (mapper.isEnabled(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)) {
+                throw JsonMappingException.from(parser, "Unrecognized field \"" + field + "\" in WorkMessage");
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (method == null) {
+            throw JsonMappingException.from(parser, "Missing method in WorkMessage");
+        }
+
+        if (bufferedParams != null) {
+            try (JsonParser buffered = bufferedParams.asParser(parser.getCodec())) {
+                buffered.nextToken();
+                params = readParams(method, buffered);
+            }
+        }
+        if (params != null && paramsReaderFor(method) != null) {
+            return WorkMessage.ofTyped(method, params, queueAt);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String,Object> mapParams = (Map<String,Object>)params;
+        return WorkMessage.of(method, mapParams, queueAt);
+    }
+
+    private Object readParams(String method, JsonParser parser) throws IOException {
+        ObjectReader paramsReader = paramsReaderFor(method);
+        if (paramsReader != null) {
+            return paramsReader.readValue(parser);
+        }
+        return mapper.readValue(parser, mapType);
+    }
+
+    private ObjectReader paramsReaderFor(String method) {
+        return methods.isMethod(method) ? methods.getMethod(method).getParamsReader() : null;
+    }
+}
@@ -0,0 +1,200 @@
+package io.stardog.dropwizard.worker.util;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.interfaces.WorkerListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics a worker records for every message, resolved from the registry up front so that recording them
+ * is only a field access rather than a name concatenation and a registry lookup.
+ *
+ * Metrics are named [WorkerClass].[name].[metric], and per-method metrics are kept in a table built from the
+ * methods registered with WorkMethods. A method that isn't registered gets its entry on first use.
+ */
+public class WorkerMetrics {
+    private final MetricRegistry metrics;
+    private final Class<?> workerClass;
+    private final String name;
+    private final Meter received;
+    private final Meter processed;
+    private final Meter skipped;
+    private final Meter error;
+    private final Meter parseError;
+    private final Meter saturated;
+    private final Meter retried;
+    private final Meter deadLettered;
+    private final Timer delay;
+    private final Map<String,MethodMetrics> methodMetrics = new ConcurrentHashMap<>();
+    private final List<WorkerListener> listeners = new CopyOnWriteArrayList<>();
+
+    public WorkerMetrics(MetricRegistry metrics, Class<?> workerClass, String name, WorkMethods methods) {
+        this.metrics = metrics;
+        this.workerClass = workerClass;
+        this.name = name;
+        this.received = meter("received");
+        this.processed = meter("processed");
+        this.skipped = meter("skipped");
+        this.error = meter("error");
+        this.parseError = meter("error", "parse");
+        this.saturated = meter("saturated");
+        this.retried = meter("retried");
+        this.deadLettered = meter("deadLettered");
+        this.delay = metrics.timer(MetricRegistry.name(workerClass, name, "delay"));
+        for (WorkMethod method : methods.getMethods()) {
+            methodMetrics.put(method.getMethod(), new MethodMetrics(method.getMethod()));
+        }
+    }
+
+    /**
+     * Resolve another meter under this worker's name, for the worker to hold on to.
+     */
+    public Meter meter(String... names) {
+        return metrics.meter(MetricRegistry.name(MetricRegistry.name(workerClass, name), names));
+    }
+
+    public Meter getReceived() {
+        return received;
+    }
+
+    public Meter getProcessed() {
+        return processed;
+    }
+
+    public Meter getSkipped() {
+        return skipped;
+    }
+
+    public Meter getError() {
+        return error;
+    }
+
+    public Meter getParseError() {
+        return parseError;
+    }
+
+    public Timer getDelay() {
+        return delay;
+    }
+
+    public MethodMetrics forMethod(String method) {
+        MethodMetrics found = methodMetrics.get(method);
+        return found != null ? found : methodMetrics.computeIfAbsent(method, MethodMetrics::new);
+    }
+
+    /**
+     * Add a listener to be told about every message processed.
+     */
+    public void addListener(WorkerListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Record how long a message waited between being queued and being picked up, if it says when it was queued.
+     * @return  the delay in milliseconds, or -1 if the message doesn't say when it was queued
+     */
+    public long recordDelay(WorkMessage message) {
+        if (!message.getQueueAt().isPresent()) {
+            return -1;
+        }
+        long delayMillis = Math.max(0, System.currentTimeMillis() - message.getQueueAt().get().toEpochMilli());
+        delay.update(delayMillis, TimeUnit.MILLISECONDS);
+        return delayMillis;
+    }
+
+    /**
+     * Record a message having been processed: the time taken by its method if it succeeded, and a sample for
+     * any listeners either way. Failures are counted separately, by recordError.
+     */
+    public void recordProcessing(String method, long delayMillis, long processingNanos, boolean failed) {
+        if (!failed) {
+            forMethod(method).getTimer().update(processingNanos, TimeUnit.NANOSECONDS);
+        }
+        for (WorkerListener listener : listeners) {
+            listener.onMessage(delayMillis, processingNanos, failed);
+        }
+    }
+
+    /**
+     * Record a message failing: the overall error count, and the count for its method.
+     */
+    public void recordError(String method) {
+        error.mark();
+        forMethod(method).getError().mark();
+    }
+
+    /**
+     * Record a message being put off because its method was saturated: the overall count, and the count for its
+     * method.
+     */
+    public void recordSaturated(String method) {
+        saturated.mark();
+        forMethod(method).getSaturated().mark();
+    }
+
+    /**
+     * Record a failed message being scheduled for another attempt.
+     */
+    public void recordRetry(String method) {
+        retried.mark();
+        forMethod(method).getRetried().mark();
+    }
+
+    /**
+     * Record a message being given up on after its last attempt, and dead-lettered.
+     */
+    public void recordDeadLetter(String method) {
+        deadLettered.mark();
+        forMethod(method).getDeadLettered().mark();
+    }
+
+    public class MethodMetrics {
+        private final Timer timer;
+        private final Meter error;
+        private final Meter saturated;
+        private final Meter retried;
+        private final Meter deadLettered;
+
+        private MethodMetrics(String method) {
+            this.timer = metrics.timer(MetricRegistry.name(workerClass, name, "timer", method));
+            this.error = meter("error", method);
+            this.saturated = meter("saturated", method);
+            this.retried = meter("retried", method);
+            this.deadLettered = meter("deadLettered", method);
+        }
+
+        /** Time spent processing messages of this method **/
+        public Timer getTimer() {
+            return timer;
+        }
+
+        /** Messages of this method that failed **/
+        public Meter getError() {
+            return error;
+        }
+
+        /** Messages of this method put off because it was at its limits **/
+        public Meter getSaturated() {
+            return saturated;
+        }
+
+        /** Failed messages of this method scheduled for another attempt **/
+        public Meter getRetried() {
+            return retried;
+        }
+
+        /** Messages of this method given up on after their last attempt **/
+        public Meter getDeadLettered() {
+            return deadLettered;
+        }
+    }
+}
@@ -1,51 +1,295 @@
 package io.stardog.dropwizard.worker.workers;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import io.stardog.dropwizard.worker.WorkMethods;
 import io.stardog.dropwizard.worker.WorkerManager;
+import io.stardog.dropwizard.worker.data.LocalWorkerConfig;
 import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
 import io.stardog.dropwizard.worker.interfaces.ManagedWorker;
+import io.stardog.dropwizard.worker.journal.JournalQueue;
+import io.stardog.dropwizard.worker.interfaces.WorkerListener;
+import io.stardog.dropwizard.worker.util.MethodSaturatedException;
+import io.stardog.dropwizard.worker.util.RingBufferQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Singleton;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Worker that processes messages submitted to it in the same process, for use with a WorkerManager like any
+ * other worker.
+ *
+ * Given a LocalWorkerConfig, messages wait in a bounded, lock-free RingBufferQueue of queueCapacity, so that any
+ * number of threads can submit while the manager's threads process. Each call to processMessages processes up to batchSize
+ * messages. When the queue is full, the overflowPolicy decides whether submitMessage waits for room, processes
+ * the message on the submitting thread, or drops a message.
+ *
+ * With a journal configured, messages are kept in a JournalQueue on disk instead, so that they survive a restart:
+ * start() replays any that were not finished, and only queueCapacity of them are held in memory, the rest waiting
+ * on disk. The journal is never full, so the overflowPolicy doesn't apply. A message whose method throws goes
+ * back on the end of the journal to be tried again, up to the journal's maxAttempts, and is then dropped.
+ *
+ * Records the following meters:
+ *   LocalWorker.[name].dropped
+ *      number of messages dropped because the queue was full, or their method kept throwing
+ *   LocalWorker.[name].replayed
+ *      number of unfinished messages replayed from the journal on start
+ *   LocalWorker.[name].error
+ *      number of messages whose method threw
+ *
+ * And the following gauges:
+ *   LocalWorker.[name].depth
+ *      number of messages waiting in the queue
+ *   LocalWorker.[name].utilization
+ *      fraction of the queue's capacity in use (only with the default RingBufferQueue)
+ *   LocalWorker.[name].spilled
+ *      number of waiting messages held only on disk (only with a journal)
+ */
 @Singleton
 public class LocalWorker implements ManagedWorker {
     private final WorkMethods methods;
     private final Queue<WorkMessage> queue;
+    private final LocalWorkerConfig config;
+    private final Meter dropped;
+    private final Meter replayed;
+    private final Meter errors;
+    private final List<WorkerListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Runnable wakeUp = () -> { };
+    private final static Logger LOGGER = LoggerFactory.getLogger(LocalWorker.class);
+    private final static long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
 
+    /**
+     * Process messages one at a time from an unbounded queue, so that submitMessage never waits or drops, even
+     * from a job submitting follow-up jobs.
+     */
     public LocalWorker(WorkMethods methods) {
-        this(methods, new LinkedList<>());
+        this(methods, new ConcurrentLinkedQueue<>());
     }
 
+    public LocalWorker(WorkMethods methods, LocalWorkerConfig config) {
+        this(methods, "local", config, new MetricRegistry());
+    }
+
+    public LocalWorker(WorkMethods methods, String name, LocalWorkerConfig config, MetricRegistry metrics) {
+        this(methods, name, newQueue(methods, config), config, metrics);
+    }
+
+    /**
+     * Process messages one at a time from the given queue.
+     * @param queue the queue to hold submitted messages, which must be safe for concurrent use if the worker is
+     *              managed by more than one thread
+     */
     public LocalWorker(WorkMethods methods, Queue<WorkMessage> queue) {
+        this(methods, "local", queue, LocalWorkerConfig.builder().batchSize(1).build(), new MetricRegistry());
+    }
+
+    /**
+     * @param name      name for the metrics
+     * @param queue     the queue to hold submitted messages; the config's queueCapacity only applies to the
+     *                  default RingBufferQueue
+     */
+    public LocalWorker(WorkMethods methods, String name, Queue<WorkMessage> queue, LocalWorkerConfig config, MetricRegistry metrics) {
         this.methods = methods;
         this.queue = queue;
+        this.config = config;
+        this.dropped = metrics.meter(MetricRegistry.name(LocalWorker.class, name, "dropped"));
+        this.replayed = metrics.meter(MetricRegistry.name(LocalWorker.class, name, "replayed"));
+        this.errors = metrics.meter(MetricRegistry.name(LocalWorker.class, name, "error"));
+        metrics.register(MetricRegistry.name(LocalWorker.class, name, "depth"), (Gauge<Integer>) queue::size);
+        if (queue instanceof RingBufferQueue) {
+            int capacity = ((RingBufferQueue<WorkMessage>)queue).capacity();
+            metrics.register(MetricRegistry.name(LocalWorker.class, name, "utilization"),
+                    (Gauge<Double>) () -> (double)queue.size() / capacity);
+        }
+        if (queue instanceof JournalQueue) {
+            metrics.register(MetricRegistry.name(LocalWorker.class, name, "spilled"),
+                    (Gauge<Integer>) ((JournalQueue)queue)::getSpilled);
+        }
+    }
+
+    private static Queue<WorkMessage> newQueue(WorkMethods methods, LocalWorkerConfig config) {
+        if (config.getJournal() != null) {
+            return new JournalQueue(config.getJournal(), config.getQueueCapacity(), methods);
+        }
+        return new RingBufferQueue<>(config.getQueueCapacity());
     }
 
     @Override
     public void start() throws Exception {
-
+        if (queue instanceof JournalQueue) {
+            int count = ((JournalQueue)queue).open();
+            if (count > 0) {
+                LOGGER.info("Replaying " + count + " unfinished messages from the journal");
+                replayed.mark(count);
+            }
+        }
     }
 
     @Override
     public void stop() throws Exception {
+        if (queue instanceof JournalQueue) {
+            ((JournalQueue)queue).close();
+        }
+    }
 
+    @Override
+    public void addListener(WorkerListener listener) {
+        listeners.add(listener);
     }
 
+    @Override
+    public void setWakeUpHook(Runnable wakeUp) {
+        this.wakeUp = wakeUp;
+    }
+
+    /**
+     * Process up to batchSize messages from the queue.
+     */
     @Override
     public boolean processMessages() {
-        WorkMessage message = queue.poll();
-        if (message == null) {
-            return false;
+        for (int i = 0; i < config.getBatchSize(); i++) {
+            WorkMessage message = queue.poll();
+            if (message == null) {
+                return i > 0;
+            }
+            boolean handled;
+            try {
+                handled = handleMessage(message);
+            } catch (Exception e) {
+                LOGGER.warn("Exception processing message for " + message.getMethod(), e);
+                errors.mark();
+                retry(message);
+                continue;
+            }
+            if (!handled) {
+                // back of the queue; report no work, so the manager backs off rather than spinning on it
+                requeue(message);
+                ack(message);
+                return false;
+            }
+            ack(message);
         }
+        return true;
+    }
 
-        methods.getMethod(message.getMethod()).getFunction().apply(message.getParams());
+    /**
+     * Queue a message to be processed. If the queue is full, the overflowPolicy decides what happens.
+     * @return  true if the message was queued or processed, false if it was dropped
+     */
+    public boolean submitMessage(WorkMessage message) {
+        boolean accepted = queue.offer(message) || overflow(message);
+        wakeUp.run();
+        return accepted;
+    }
 
+    private boolean overflow(WorkMessage message) {
+        switch (config.getOverflowPolicy()) {
+            case CALLER_RUNS:
+                if (handleMessage(message)) {
+                    return true;
+                }
+                // its method is saturated, so it can only wait its turn like everything else
+                return blockUntilQueued(message);
+            case DROP_NEWEST:
+                dropped.mark();
+                return false;
+            case DROP_OLDEST:
+                while (!queue.offer(message)) {
+                    if (queue.poll() != null) {
+                        dropped.mark();
+                    }
+                }
+                return true;
+            case BLOCK:
+            default:
+                return blockUntilQueued(message);
+        }
+    }
+
+    private boolean blockUntilQueued(WorkMessage message) {
+        while (!queue.offer(message)) {
+            // make sure the manager is draining the queue while we wait for room
+            wakeUp.run();
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            if (Thread.currentThread().isInterrupted()) {
+                dropped.mark();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tell the journal, if there is one, that a message is finished with.
+     */
+    private void ack(WorkMessage message) {
+        if (queue instanceof JournalQueue) {
+            ((JournalQueue)queue).ack(message);
+        }
+    }
+
+    /**
+     * Give a journal, if there is one, a message whose method threw, to try again later.
+     */
+    private void retry(WorkMessage message) {
+        if (queue instanceof JournalQueue && !((JournalQueue)queue).retry(message)) {
+            dropped.mark();
+        }
+    }
+
+    private void requeue(WorkMessage message) {
+        if (!queue.offer(message)) {
+            LOGGER.warn("Dropping message for saturated method " + message.getMethod() + ", as the queue is full");
+            dropped.mark();
+        }
+    }
+
+    /**
+     * Process a message, unless its method is at its limits.
+     * @return  false if the method is saturated and the message was not processed
+     */
+    private boolean handleMessage(WorkMessage message) {
+        WorkMethod method = methods.getMethod(message.getMethod());
+        try {
+            method.acquire();
+        } catch (MethodSaturatedException e) {
+            return false;
+        }
+        try {
+            processMessage(method, message);
+        } finally {
+            method.release();
+        }
         return true;
     }
 
-    public void submitMessage(WorkMessage message) {
-        queue.add(message);
+    private void processMessage(WorkMethod method, WorkMessage message) {
+        if (listeners.isEmpty()) {
+            method.apply(message);
+            return;
+        }
+
+        long delayMillis = message.getQueueAt().isPresent()
+                ? Math.max(0, System.currentTimeMillis() - message.getQueueAt().get().toEpochMilli()) : -1;
+        long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            method.apply(message);
+            failed = false;
+        } finally {
+            long processingNanos = System.nanoTime() - startNanos;
+            for (WorkerListener listener : listeners) {
+                listener.onMessage(delayMillis, processingNanos, failed);
+            }
+        }
     }
 }
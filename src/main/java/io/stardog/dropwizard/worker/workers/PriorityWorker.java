@@ -0,0 +1,175 @@
+package io.stardog.dropwizard.worker.workers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.stardog.dropwizard.worker.data.Priority;
+import io.stardog.dropwizard.worker.data.PriorityPolicy;
+import io.stardog.dropwizard.worker.data.PriorityWorkerConfig;
+import io.stardog.dropwizard.worker.interfaces.ManagedWorker;
+import io.stardog.dropwizard.worker.interfaces.WorkerListener;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker that polls a worker for each priority lane (normally each on its own queue, written to by a
+ * PrioritySender), so that urgent messages don't wait behind bulk ones. Manage it with a WorkerManager like any
+ * other worker.
+ *
+ * Each poll tries the lanes in turn until one has messages. Under the STRICT policy, the lanes are tried from
+ * highest priority down; under WEIGHTED, the lane tried first rotates in proportion to the lanes' weights. Either
+ * way, a lane that hasn't been polled for maxStarvationMillis is tried first, so low priority work still moves
+ * while the lanes above it are busy.
+ *
+ * Empty lanes are passed over on every poll, so give the lanes' workers a short poll wait (such as an SqsWorker
+ * with waitTimeSeconds of 0 or 1); a long poll on an empty high priority lane holds up the lanes below it.
+ *
+ * Records the following timers:
+ *   PriorityWorker.[name].[lane].delay
+ *      amount of time messages in each lane are spending between being queued and processed
+ */
+public class PriorityWorker implements ManagedWorker {
+    private final Map<Priority,ManagedWorker> lanes;
+    private final PriorityWorkerConfig config;
+    private final Map<Priority,Long> lastPolledMillis = new EnumMap<>(Priority.class);
+    private final Map<Priority,Integer> credits = new EnumMap<>(Priority.class);
+
+    /**
+     * @param name  name for the metrics
+     * @param lanes the worker for each priority; lanes may be left out
+     */
+    public PriorityWorker(String name, Map<Priority,ManagedWorker> lanes, PriorityWorkerConfig config, MetricRegistry metrics) {
+        if (lanes.isEmpty()) {
+            throw new IllegalArgumentException("PriorityWorker needs at least one lane");
+        }
+        this.lanes = new EnumMap<>(lanes);
+        this.config = config;
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Priority,ManagedWorker> lane : this.lanes.entrySet()) {
+            Timer delay = metrics.timer(MetricRegistry.name(PriorityWorker.class, name, lane.getKey().name().toLowerCase(), "delay"));
+            lane.getValue().addListener((delayMillis, processingNanos, failed) -> {
+                if (delayMillis >= 0) {
+                    delay.update(delayMillis, TimeUnit.MILLISECONDS);
+                }
+            });
+            lastPolledMillis.put(lane.getKey(), now);
+            credits.put(lane.getKey(), 0);
+        }
+    }
+
+    public PriorityWorker(String name, ManagedWorker high, ManagedWorker normal, ManagedWorker low, MetricRegistry metrics) {
+        this(name, lanesOf(high, normal, low), PriorityWorkerConfig.builder().build(), metrics);
+    }
+
+    @Override
+    public void start() throws Exception {
+        for (ManagedWorker lane : lanes.values()) {
+            lane.start();
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        for (ManagedWorker lane : lanes.values()) {
+            lane.stop();
+        }
+    }
+
+    @Override
+    public void drain() {
+        for (ManagedWorker lane : lanes.values()) {
+            lane.drain();
+        }
+    }
+
+    @Override
+    public boolean processMessages() {
+        for (Priority lane : pollOrder(System.currentTimeMillis())) {
+            synchronized (this) {
+                lastPolledMillis.put(lane, System.currentTimeMillis());
+            }
+            if (lanes.get(lane).processMessages()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void addListener(WorkerListener listener) {
+        for (ManagedWorker lane : lanes.values()) {
+            lane.addListener(listener);
+        }
+    }
+
+    @Override
+    public void setWakeUpHook(Runnable wakeUp) {
+        for (ManagedWorker lane : lanes.values()) {
+            lane.setWakeUpHook(wakeUp);
+        }
+    }
+
+    /**
+     * The order to try the lanes in for the next poll.
+     */
+    synchronized List<Priority> pollOrder(long now) {
+        List<Priority> order = new ArrayList<>(lanes.keySet());
+        if (config.getPolicy() == PriorityPolicy.WEIGHTED) {
+            moveToFront(order, nextWeighted());
+        }
+
+        if (config.getMaxStarvationMillis() > 0) {
+            // the lane waiting longest goes first, and the lower priority lane if they've waited as long
+            Priority starved = null;
+            for (Priority lane : order) {
+                long waitedMillis = now - lastPolledMillis.get(lane);
+                if (waitedMillis >= config.getMaxStarvationMillis()
+                        && (starved == null || lastPolledMillis.get(lane) <= lastPolledMillis.get(starved))) {
+                    starved = lane;
+                }
+            }
+            if (starved != null) {
+                // claim the poll now, so that only this thread jumps the starved lane ahead
+                lastPolledMillis.put(starved, now);
+                moveToFront(order, starved);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Smooth weighted round-robin: every lane earns its weight in credit each turn, and the lane with the most
+     * credit goes first, paying back the total weight.
+     */
+    private Priority nextWeighted() {
+        Priority best = null;
+        int totalWeight = 0;
+        for (Priority lane : lanes.keySet()) {
+            int weight = config.getWeight(lane);
+            totalWeight += weight;
+            credits.put(lane, credits.get(lane) + weight);
+            if (best == null || credits.get(lane) > credits.get(best)) {
+                best = lane;
+            }
+        }
+        credits.put(best, credits.get(best) - totalWeight);
+        return best;
+    }
+
+    private static void moveToFront(List<Priority> order, Priority lane) {
+        order.remove(lane);
+        order.add(0, lane);
+    }
+
+    private static Map<Priority,ManagedWorker> lanesOf(ManagedWorker high, ManagedWorker normal, ManagedWorker low) {
+        Map<Priority,ManagedWorker> lanes = new EnumMap<>(Priority.class);
+        lanes.put(Priority.HIGH, high);
+        lanes.put(Priority.NORMAL, normal);
+        lanes.put(Priority.LOW, low);
+        return lanes;
+    }
+}
@@ -0,0 +1,526 @@
+package io.stardog.dropwizard.worker.workers;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import io.dropwizard.lifecycle.Managed;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.codecs.NegotiatingCodec;
+import io.stardog.dropwizard.worker.data.RedisQueueWorkerConfig;
+import io.stardog.dropwizard.worker.data.RetryPolicy;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.interfaces.ManagedWorker;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
+import io.stardog.dropwizard.worker.interfaces.Sender;
+import io.stardog.dropwizard.worker.interfaces.WorkerListener;
+import io.stardog.dropwizard.worker.util.MethodSaturatedException;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import io.stardog.dropwizard.worker.util.WorkMessageReader;
+import io.stardog.dropwizard.worker.util.WorkerMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker that reliably takes messages off a Redis list, for use with a WorkerManager like SqsWorker.
+ *
+ * Unlike RedisWorker's pub/sub, messages wait on the list until a consumer is available. Each message is
+ * atomically moved onto this consumer's own processing list as it is taken (BRPOPLPUSH), and only removed
+ * from it once processed, so nothing is lost if the process dies part way through.
+ *
+ * Messages that fail or return false are put off under the config's retryPolicy: they wait in a sorted set,
+ * scored by when they come due, for longer after each attempt, and are moved back to the far end of the queue
+ * once due. After maxAttempts they are handed to the dead-letter sender, or dropped without one. Messages whose method is at its limits are put
+ * off the same way, for the limit's deferSeconds, without counting as an attempt. Attempts are counted per
+ * payload, so identical messages share a count.
+ *
+ * Each consumer keeps a liveness key with a TTL alive while it runs. Every consumer periodically looks for
+ * registered consumers whose liveness key has expired, and moves their unfinished messages back to the
+ * front of the queue. Send to the queue with a RedisSender in QUEUE mode.
+ *
+ * On shutdown, the worker first drains: it stops taking messages, and puts any it has taken but not yet started
+ * back at the front of the queue for other consumers.
+ *
+ * Uses the following keys:
+ *   [queue]                            the queue itself
+ *   [queue]:processing:[consumer]      messages taken by a consumer but not yet finished
+ *   [queue]:consumer:[consumer]        liveness key for a consumer
+ *   [queue]:consumers                  set of consumers that may have unfinished messages
+ *   [queue]:delayed                    messages put off for a later attempt, scored by when they are due
+ *   [queue]:attempts                   hash of payload to the number of failed attempts at it
+ *
+ * Records the following meters:
+ *   RedisQueueWorker.[queue].received
+ *      number of messages taken from the queue
+ *   RedisQueueWorker.[queue].processed
+ *      number of messages successfully processed
+ *   RedisQueueWorker.[queue].requeued
+ *      number of messages put off for a later attempt after failing, being skipped, or finding their method saturated
+ *   RedisQueueWorker.[queue].retried.[method]
+ *      number of failed or skipped messages put off for another attempt, under the retryPolicy
+ *   RedisQueueWorker.[queue].deadLettered.[method]
+ *      number of messages given up on after their last attempt, and dead-lettered or dropped
+ *   RedisQueueWorker.[queue].saturated.[method]
+ *      number of messages put off because their method was at its limits
+ *   RedisQueueWorker.[queue].released
+ *      number of messages taken but not started before shutdown, put back at the front of the queue
+ *   RedisQueueWorker.[queue].reclaimed
+ *      number of unfinished messages recovered from consumers that died
+ *   RedisQueueWorker.[queue].error
+ *      number of messages erroring out
+ *   RedisQueueWorker.[queue].error.[method]
+ *      number of errors per method type
+ *   RedisQueueWorker.[queue].error.parse
+ *      number of messages dropped because they could not be parsed
+ *
+ *  And the following timers:
+ *    RedisQueueWorker.[queue].delay
+ *      amount of time messages are spending waiting in the queue
+ *    RedisQueueWorker.[queue].timer.[method]
+ *      amount of time messages of each type are taking to process
+ */
+@Singleton
+public class RedisQueueWorker implements ManagedWorker, Managed {
+    private final WorkMethods methods;
+    private final JedisPool jedisPool;
+    private final String queueName;
+    private final RedisQueueWorkerConfig config;
+    private final MetricRegistry metrics;
+    private final ObjectMapper mapper;
+    private final WorkMessageReader reader;
+    private final Sender deadLetterSender;
+    private final WorkerMetrics workerMetrics;
+    private final Meter requeued;
+    private final Meter reclaimed;
+    private final Meter released;
+    private final String consumerId;
+    private final String processingKey;
+    private final String consumerKey;
+    private final String consumersKey;
+    private final String delayedKey;
+    private final String attemptsKey;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean draining = false;
+    private final static Logger LOGGER = LoggerFactory.getLogger(RedisQueueWorker.class);
+
+    // take up to ARGV[1] more messages without blocking, in a single round trip
+    private final static String TAKE_SCRIPT =
+            "local taken = {}\n" +
+            "for i = 1, tonumber(ARGV[1]) do\n" +
+            "  local message = redis.call('rpoplpush', KEYS[1], KEYS[2])\n" +
+            "  if not message then break end\n" +
+            "  taken[i] = message\n" +
+            "end\n" +
+            "return taken";
+
+    // remove finished messages, and forget any failed attempts at them
+    private final static String ACK_SCRIPT =
+            "for i = 1, #ARGV do\n" +
+            "  redis.call('lrem', KEYS[1], 1, ARGV[i])\n" +
+            "  redis.call('hdel', KEYS[2], ARGV[i])\n" +
+            "end\n" +
+            "return #ARGV";
+
+    // put messages off until they are due, but only if this consumer still holds them; ARGV holds triples of
+    // payload, due time and a token that keeps identical payloads apart in the sorted set
+    private final static String DEFER_SCRIPT =
+            "local deferred = 0\n" +
+            "for i = 1, #ARGV, 3 do\n" +
+            "  if redis.call('lrem', KEYS[1], 1, ARGV[i]) > 0 then\n" +
+            "    redis.call('zadd', KEYS[2], ARGV[i + 1], ARGV[i + 2] .. ':' .. ARGV[i])\n" +
+            "    deferred = deferred + 1\n" +
+            "  end\n" +
+            "end\n" +
+            "return deferred";
+
+    // move up to ARGV[2] put-off messages that are due by ARGV[1] to the far end of the queue
+    private final static String PROMOTE_SCRIPT =
+            "local due = redis.call('zrangebyscore', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))\n" +
+            "for i = 1, #due do\n" +
+            "  redis.call('zrem', KEYS[1], due[i])\n" +
+            "  local separator = string.find(due[i], ':', 1, true)\n" +
+            "  redis.call('lpush', KEYS[2], string.sub(due[i], separator + 1))\n" +
+            "end\n" +
+            "return #due";
+
+    private final static int PROMOTE_BATCH = 100;
+
+    /** Returned by handleMessage for a message that is finished with and can be removed **/
+    protected final static int FINISHED = -1;
+
+    // put messages back at the front of the queue, newest first so that they are taken in their original order,
+    // but only if this consumer still holds them
+    private final static String RELEASE_SCRIPT =
+            "local released = 0\n" +
+            "for i = #ARGV, 1, -1 do\n" +
+            "  if redis.call('lrem', KEYS[1], 1, ARGV[i]) > 0 then\n" +
+            "    redis.call('rpush', KEYS[2], ARGV[i])\n" +
+            "    released = released + 1\n" +
+            "  end\n" +
+            "end\n" +
+            "return released";
+
+    // if a consumer is no longer alive (or ARGV[2] forces it), move its unfinished messages to the front of the
+    // queue, oldest first
+    private final static String RECLAIM_SCRIPT =
+            "if ARGV[2] ~= '1' and redis.call('exists', KEYS[3]) == 1 then return 0 end\n" +
+            "local reclaimed = 0\n" +
+            "while true do\n" +
+            "  local message = redis.call('lpop', KEYS[1])\n" +
+            "  if not message then break end\n" +
+            "  redis.call('rpush', KEYS[2], message)\n" +
+            "  reclaimed = reclaimed + 1\n" +
+            "end\n" +
+            "redis.call('srem', KEYS[4], ARGV[1])\n" +
+            "return reclaimed";
+
+    @Inject
+    public RedisQueueWorker(WorkMethods methods, JedisPool jedisPool, @Named("redisQueueName") String queueName, MetricRegistry metrics, ObjectMapper mapper) {
+        this(methods, jedisPool, queueName, RedisQueueWorkerConfig.builder().build(), metrics, mapper);
+    }
+
+    public RedisQueueWorker(WorkMethods methods, JedisPool jedisPool, String queueName, RedisQueueWorkerConfig config, MetricRegistry metrics, ObjectMapper mapper) {
+        this(methods, jedisPool, queueName, config, metrics, mapper, NegotiatingCodec.of(mapper));
+    }
+
+    /**
+     * @param codec codec to read messages with; by default, one that reads every format this library writes
+     */
+    public RedisQueueWorker(WorkMethods methods, JedisPool jedisPool, String queueName, RedisQueueWorkerConfig config, MetricRegistry metrics, ObjectMapper mapper, MessageCodec codec) {
+        this(methods, jedisPool, queueName, config, metrics, mapper, codec, null);
+    }
+
+    /**
+     * @param deadLetterSender  where to send messages that have failed every attempt of the config's retryPolicy;
+     *                          if null, they are logged and dropped
+     */
+    public RedisQueueWorker(WorkMethods methods, JedisPool jedisPool, String queueName, RedisQueueWorkerConfig config, MetricRegistry metrics, ObjectMapper mapper, MessageCodec codec, @Nullable Sender deadLetterSender) {
+        this.methods = methods;
+        this.jedisPool = jedisPool;
+        this.queueName = queueName;
+        this.config = config;
+        this.metrics = metrics;
+        this.mapper = mapper;
+        this.reader = new WorkMessageReader(mapper, methods, codec);
+        this.deadLetterSender = deadLetterSender;
+        this.workerMetrics = new WorkerMetrics(metrics, RedisQueueWorker.class, queueName, methods);
+        this.requeued = workerMetrics.meter("requeued");
+        this.reclaimed = workerMetrics.meter("reclaimed");
+        this.released = workerMetrics.meter("released");
+        this.consumerId = config.getConsumerId() != null ? config.getConsumerId() : UUID.randomUUID().toString();
+        this.processingKey = queueName + ":processing:" + consumerId;
+        this.consumerKey = queueName + ":consumer:" + consumerId;
+        this.consumersKey = queueName + ":consumers";
+        this.delayedKey = queueName + ":delayed";
+        this.attemptsKey = queueName + ":attempts";
+    }
+
+    public RedisQueueWorker(WorkMethods methods, JedisPool jedisPool, String queueName, RedisQueueWorkerConfig config, MetricRegistry metrics) {
+        this(methods, jedisPool, queueName, config, metrics, WorkerDefaults.MAPPER);
+    }
+
+    public RedisQueueWorker(WorkMethods methods, JedisPool jedisPool, String queueName, MetricRegistry metrics) {
+        this(methods, jedisPool, queueName, metrics, WorkerDefaults.MAPPER);
+    }
+
+    public String getConsumerId() {
+        return consumerId;
+    }
+
+    @Override
+    public void start() throws Exception {
+        LOGGER.info("Starting consumer " + consumerId + " of " + queueName + " with config: " + config);
+
+        // anything left over from a previous run under the same consumer id was never finished
+        long recovered = reclaim(consumerId, true);
+        if (recovered > 0) {
+            LOGGER.info("Recovered " + recovered + " unfinished messages from a previous run");
+        }
+        heartbeat();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::heartbeat,
+                config.getConsumerTimeoutSeconds() / 3, config.getConsumerTimeoutSeconds() / 3, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::reclaimDeadConsumers,
+                config.getReclaimIntervalSeconds(), config.getReclaimIntervalSeconds(), TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::promoteDelayed,
+                config.getDelayedPollMillis(), config.getDelayedPollMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop taking messages; any already taken but not yet started are put back on the queue as they come up.
+     */
+    @Override
+    public void drain() {
+        draining = true;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        // the liveness key is left to expire, so that messages still being finished off are not reclaimed
+        // out from under us; a consumer that restarts with the same id recovers them immediately
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Override
+    public void addListener(WorkerListener listener) {
+        workerMetrics.addListener(listener);
+    }
+
+    @Override
+    public boolean processMessages() {
+        if (scheduler == null) {
+            throw new IllegalStateException("Called processMessages on RedisQueueWorker without calling start() lifecycle method");
+        }
+        if (draining) {
+            return false;
+        }
+
+        List<String> payloads = takeMessages();
+        if (payloads.isEmpty()) {
+            return false;
+        }
+        workerMetrics.getReceived().mark(payloads.size());
+
+        List<String> finished = new ArrayList<>(payloads.size());
+        List<String> deferred = new ArrayList<>();
+        List<String> unstarted = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String payload : payloads) {
+            if (draining) {
+                unstarted.add(payload);
+                continue;
+            }
+            int deferSeconds = handleMessage(payload);
+            if (deferSeconds == FINISHED) {
+                finished.add(payload);
+            } else {
+                deferred.add(payload);
+                deferred.add(String.valueOf(now + TimeUnit.SECONDS.toMillis(deferSeconds)));
+                deferred.add(UUID.randomUUID().toString());
+            }
+        }
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            if (!finished.isEmpty()) {
+                jedis.eval(ACK_SCRIPT, ImmutableList.of(processingKey, attemptsKey), finished);
+            }
+            if (!deferred.isEmpty()) {
+                Object count = jedis.eval(DEFER_SCRIPT, ImmutableList.of(processingKey, delayedKey), deferred);
+                requeued.mark(toLong(count));
+            }
+            if (!unstarted.isEmpty()) {
+                Object count = jedis.eval(RELEASE_SCRIPT, ImmutableList.of(processingKey, queueName), unstarted);
+                released.mark(toLong(count));
+                LOGGER.info("Released " + unstarted.size() + " unstarted messages back to " + queueName);
+            }
+        }
+
+        LOGGER.debug("Completed processing " + payloads.size() + " messages");
+
+        // only report work done if something was finished, so that a queue of failing messages is backed off from
+        return !finished.isEmpty();
+    }
+
+    /**
+     * Move up to maxNumberOfMessages messages from the queue to this consumer's processing list, blocking for up
+     * to waitTimeSeconds for the first one.
+     */
+    protected List<String> takeMessages() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            String first = config.getWaitTimeSeconds() > 0
+                    ? jedis.brpoplpush(queueName, processingKey, config.getWaitTimeSeconds())
+                    : jedis.rpoplpush(queueName, processingKey);
+            if (first == null) {
+                return Collections.emptyList();
+            }
+
+            List<String> payloads = new ArrayList<>(config.getMaxNumberOfMessages());
+            payloads.add(first);
+            if (config.getMaxNumberOfMessages() > 1) {
+                Object more = jedis.eval(TAKE_SCRIPT, ImmutableList.of(queueName, processingKey),
+                        Collections.singletonList(String.valueOf(config.getMaxNumberOfMessages() - 1)));
+                if (more instanceof List) {
+                    for (Object payload : (List<?>)more) {
+                        payloads.add((String)payload);
+                    }
+                }
+            }
+            return payloads;
+        }
+    }
+
+    /**
+     * Parse and process a single message, recording metrics.
+     * @return  FINISHED if the message is finished with and can be removed, otherwise the number of seconds to put
+     * it off for before it is tried again
+     */
+    protected int handleMessage(String payload) {
+        WorkMessage message;
+        try {
+            message = reader.read(payload);
+        } catch (IOException e) {
+            // it will never parse, so retrying would only block the queue
+            LOGGER.warn("Exception parsing, dropping: " + payload);
+            workerMetrics.getError().mark();
+            workerMetrics.getParseError().mark();
+            return FINISHED;
+        }
+
+        try {
+            if (processMessage(message)) {
+                workerMetrics.getProcessed().mark();
+                return FINISHED;
+            }
+            workerMetrics.getSkipped().mark();
+            return handleFailure(payload, message);
+
+        } catch (MethodSaturatedException e) {
+            LOGGER.debug("Deferring message for saturated method " + e.getMethod());
+            workerMetrics.recordSaturated(e.getMethod());
+            return e.getDeferSeconds();
+
+        } catch (Exception e) {
+            LOGGER.warn("Exception processing: " + payload, e);
+            workerMetrics.recordError(message.getMethod());
+            return handleFailure(payload, message);
+        }
+    }
+
+    /**
+     * Apply the retry policy to a message that failed or was skipped: count the attempt, and put the message off
+     * for longer after each one until it has had maxAttempts, when it is dead-lettered.
+     * @return  FINISHED if the message has been dead-lettered, otherwise the number of seconds to put it off for
+     */
+    protected int handleFailure(String payload, WorkMessage message) {
+        RetryPolicy retryPolicy = config.getRetryPolicy();
+        long attempts;
+        try (Jedis jedis = jedisPool.getResource()) {
+            attempts = jedis.hincrBy(attemptsKey, payload, 1);
+        } catch (Exception e) {
+            // without a count, put it off as if it were the first failure rather than risk giving up on it early
+            LOGGER.warn("Unable to count attempts at message for " + message.getMethod(), e);
+            attempts = 1;
+        }
+
+        if (attempts < retryPolicy.getMaxAttempts()) {
+            workerMetrics.recordRetry(message.getMethod());
+            return retryPolicy.getDelaySeconds((int)attempts);
+        }
+
+        if (deadLetterSender == null) {
+            LOGGER.error("Dropping message after " + attempts + " attempts: " + payload);
+        } else {
+            try {
+                deadLetterSender.send(message.withMapParams(mapper));
+            } catch (Exception e) {
+                // it comes due again later, and is dead-lettered again then
+                LOGGER.warn("Unable to dead-letter message for " + message.getMethod(), e);
+                return retryPolicy.getMaxDelaySeconds();
+            }
+        }
+        workerMetrics.recordDeadLetter(message.getMethod());
+        return FINISHED;
+    }
+
+    protected boolean processMessage(WorkMessage message) {
+        WorkMethod workMethod = methods.getMethod(message.getMethod());
+        workMethod.acquire();
+        long delayMillis = workerMetrics.recordDelay(message);
+
+        long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean result = workMethod.apply(message);
+            failed = false;
+            return result;
+        } finally {
+            workMethod.release();
+            workerMetrics.recordProcessing(message.getMethod(), delayMillis, System.nanoTime() - startNanos, failed);
+        }
+    }
+
+    /**
+     * Move put-off messages that have come due back to the far end of the queue.
+     */
+    protected void promoteDelayed() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            long promoted;
+            do {
+                promoted = toLong(jedis.eval(PROMOTE_SCRIPT, ImmutableList.of(delayedKey, queueName),
+                        ImmutableList.of(String.valueOf(System.currentTimeMillis()), String.valueOf(PROMOTE_BATCH))));
+            } while (promoted == PROMOTE_BATCH);
+        } catch (Exception e) {
+            LOGGER.warn("Exception moving due messages back onto " + queueName, e);
+        }
+    }
+
+    /**
+     * Mark this consumer as alive, and registered as one whose messages may need reclaiming.
+     */
+    protected void heartbeat() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.setex(consumerKey, config.getConsumerTimeoutSeconds(), String.valueOf(System.currentTimeMillis()));
+            jedis.sadd(consumersKey, consumerId);
+        } catch (Exception e) {
+            LOGGER.warn("Exception sending heartbeat for consumer " + consumerId, e);
+        }
+    }
+
+    /**
+     * Return the unfinished messages of any consumer whose liveness key has expired to the queue.
+     */
+    protected void reclaimDeadConsumers() {
+        try {
+            Set<String> consumers;
+            try (Jedis jedis = jedisPool.getResource()) {
+                consumers = jedis.smembers(consumersKey);
+            }
+            for (String consumer : consumers) {
+                if (consumer.equals(consumerId)) {
+                    continue;
+                }
+                long reclaimed = reclaim(consumer, false);
+                if (reclaimed > 0) {
+                    LOGGER.warn("Reclaimed " + reclaimed + " unfinished messages from dead consumer " + consumer);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Unexpected exception reclaiming messages", e);
+        }
+    }
+
+    private long reclaim(String consumer, boolean force) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Object result = jedis.eval(RECLAIM_SCRIPT,
+                    ImmutableList.of(queueName + ":processing:" + consumer, queueName, queueName + ":consumer:" + consumer, consumersKey),
+                    ImmutableList.of(consumer, force ? "1" : "0"));
+            long count = toLong(result);
+            reclaimed.mark(count);
+            return count;
+        }
+    }
+
+    private static long toLong(Object reply) {
+        return reply instanceof Long ? (Long)reply : 0;
+    }
+}
@@ -1,46 +1,146 @@
 package io.stardog.dropwizard.worker.workers;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.dropwizard.lifecycle.Managed;
 import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.codecs.NegotiatingCodec;
+import io.stardog.dropwizard.worker.data.OverflowPolicy;
+import io.stardog.dropwizard.worker.data.RedisWorkerConfig;
+import io.stardog.dropwizard.worker.data.RetryPolicy;
 import io.stardog.dropwizard.worker.data.WorkMessage;
 import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
+import io.stardog.dropwizard.worker.interfaces.Sender;
+import io.stardog.dropwizard.worker.util.MethodSaturatedException;
 import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import io.stardog.dropwizard.worker.util.WorkMessageReader;
+import io.stardog.dropwizard.worker.util.WorkerMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPubSub;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Worker that subscribes to a Redis pub/sub channel and processes every message published to it.
+ *
+ * The subscription thread only parses each message and hands it to a pool of dispatch threads through a
+ * bounded queue, so that a slow method never stops the subscription from reading (which would otherwise
+ * leave Redis buffering output until it disconnects the client). When the queue is full, the configured
+ * OverflowPolicy decides whether to block the subscription, run the message on it, or drop a message.
+ *
+ * Pub/sub messages can't be redelivered, so with a retryPolicy, a message whose method fails is dispatched again
+ * from memory, after a delay that grows with each attempt, until it has failed maxAttempts times and is handed to
+ * the dead-letter sender. A message whose method is at its limits is dispatched again the same way, after the
+ * limit's deferSeconds (but at least a second), without counting as an attempt. Messages still waiting when the
+ * worker stops are lost.
+ *
+ * At most queueCapacity messages wait to be retried or deferred. Past that, DROP_OLDEST drops the waiting message
+ * due soonest to make room; every other policy drops the message being put off, since waiting for room would
+ * hold up the dispatch threads that make it.
+ *
+ * Records the following meters:
+ *   RedisWorker.[channel].error
+ *      number of messages erroring out
+ *   RedisWorker.[channel].error.[method]
+ *      number of errors per method type
+ *   RedisWorker.[channel].error.parse
+ *      number of errors specifically related to malformed messages unable to parse
+ *   RedisWorker.[channel].rejected
+ *      number of messages dropped because the dispatch queue or the messages waiting to be retried were full, or
+ *      the worker was stopping
+ *   RedisWorker.[channel].retried.[method]
+ *      number of failed messages scheduled for another attempt, under the retryPolicy
+ *   RedisWorker.[channel].deadLettered.[method]
+ *      number of messages given up on after their last attempt
+ *   RedisWorker.[channel].saturated.[method]
+ *      number of messages put off because their method was at its limits
+ *
+ *  The following gauges:
+ *    RedisWorker.[channel].queued
+ *      number of messages waiting for a dispatch thread
+ *
+ *  And the following timers:
+ *    RedisWorker.[channel].delay
+ *      amount of time messages are spending between being queued and processed
+ *    RedisWorker.[channel].timer.[method]
+ *      amount of time messages of each type are taking to process
+ */
 @Singleton
 public class RedisWorker implements Managed {
     private final WorkMethods workMethods;
     private final JedisPool jedisPool;
     private final String channel;
+    private final RedisWorkerConfig config;
     private final ObjectMapper mapper;
+    private final WorkMessageReader reader;
+    private final Sender deadLetterSender;
     private final MetricRegistry metrics;
+    private final WorkerMetrics workerMetrics;
+    private final Meter rejected;
     private final ExecutorService executorService;
+    private volatile ThreadPoolExecutor dispatcher;
+    private volatile ScheduledThreadPoolExecutor retryScheduler;
     private final Logger LOGGER = LoggerFactory.getLogger(RedisWorker.class);
-    private JedisPubSub subscriber;
+    private final static int MIN_DEFER_SECONDS = 1;
+    private volatile JedisPubSub subscriber;
 
     @Inject
     public RedisWorker(WorkMethods workMethods, JedisPool jedisPool, @Named("redisWorkerChannel") String channel, MetricRegistry metrics, ObjectMapper mapper) {
+        this(workMethods, jedisPool, channel, RedisWorkerConfig.builder().build(), metrics, mapper);
+    }
+
+    public RedisWorker(WorkMethods workMethods, JedisPool jedisPool, String channel, RedisWorkerConfig config, MetricRegistry metrics, ObjectMapper mapper) {
+        this(workMethods, jedisPool, channel, config, metrics, mapper, NegotiatingCodec.of(mapper));
+    }
+
+    /**
+     * @param codec codec to read messages with; by default, one that reads every format this library writes
+     */
+    public RedisWorker(WorkMethods workMethods, JedisPool jedisPool, String channel, RedisWorkerConfig config, MetricRegistry metrics, ObjectMapper mapper, MessageCodec codec) {
+        this(workMethods, jedisPool, channel, config, metrics, mapper, codec, null);
+    }
+
+    /**
+     * @param deadLetterSender  where to send messages that have failed every attempt of the config's retryPolicy;
+     *                          if null, they are logged and dropped
+     */
+    public RedisWorker(WorkMethods workMethods, JedisPool jedisPool, String channel, RedisWorkerConfig config, MetricRegistry metrics, ObjectMapper mapper, MessageCodec codec, @Nullable Sender deadLetterSender) {
         this.workMethods = workMethods;
         this.jedisPool = jedisPool;
         this.channel = channel;
+        this.config = config;
         this.mapper = mapper;
+        this.reader = new WorkMessageReader(mapper, workMethods, codec);
+        this.deadLetterSender = deadLetterSender;
         this.metrics = metrics;
+        this.workerMetrics = new WorkerMetrics(metrics, RedisWorker.class, channel, workMethods);
+        this.rejected = workerMetrics.meter("rejected");
         executorService = Executors.newFixedThreadPool(1);
     }
 
+    public RedisWorker(WorkMethods workMethods, JedisPool jedisPool, String channel, RedisWorkerConfig config, MetricRegistry metrics) {
+        this(workMethods, jedisPool, channel, config, metrics, WorkerDefaults.MAPPER);
+    }
+
     public RedisWorker(WorkMethods workMethods, JedisPool jedisPool, String channel) {
         this(workMethods, jedisPool, channel, new MetricRegistry(), WorkerDefaults.MAPPER);
     }
@@ -51,34 +151,25 @@ public class RedisWorker implements Managed {
 
     @Override
     public void start() {
+        dispatcher = new ThreadPoolExecutor(config.getDispatchThreads(), config.getDispatchThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(config.getQueueCapacity()), overflowHandler());
+        dispatcher.prestartAllCoreThreads();
+        retryScheduler = new ScheduledThreadPoolExecutor(1);
+        metrics.register(MetricRegistry.name(RedisWorker.class, channel, "queued"),
+                (Gauge<Integer>) () -> dispatcher.getQueue().size());
         try {
-            LOGGER.info("Subscribing to channel " + channel);
+            LOGGER.info("Subscribing to channel " + channel + " with config: " + config);
             executorService.submit(() -> {
                 subscriber = new JedisPubSub() {
                     @Override
                     public void onMessage(String channel, String messageString) {
                         super.onMessage(channel, messageString);
-
-                        WorkMessage message;
-                        try {
-                            message = mapper.readValue(messageString, WorkMessage.class);
-                        } catch (Exception e) {
-                            LOGGER.warn("Exception parsing: " + messageString);
-                            metrics.meter(MetricRegistry.name(RedisWorker.class, channel, "error")).mark();
-                            metrics.meter(MetricRegistry.name(RedisWorker.class, channel, "error", "parse")).mark();
-                            return;
-                        }
-
-                        try {
-                            processMessage(message);
-                        } catch (Exception e) {
-                            LOGGER.warn("Exception processing: " + messageString, e);
-                            metrics.meter(MetricRegistry.name(SqsWorker.class, channel, "error")).mark();
-                            metrics.meter(MetricRegistry.name(SqsWorker.class, channel, "error", message.getMethod())).mark();
-                        }
+                        dispatch(messageString);
                     }
                 };
-                jedisPool.getResource().subscribe(subscriber, channel);
+                try (Jedis jedis = jedisPool.getResource()) {
+                    jedis.subscribe(subscriber, channel);
+                }
             });
         } catch (Exception e) {
             LOGGER.warn("Unable to subscribe to redis", e);
@@ -88,28 +179,174 @@ public class RedisWorker implements Managed {
     @Override
     public void stop() throws Exception {
         LOGGER.info("Unsubscribing from channel " + channel);
-        subscriber.unsubscribe();
+        JedisPubSub subscriber = this.subscriber;
+        if (subscriber != null && subscriber.isSubscribed()) {
+            subscriber.unsubscribe();
+        }
         executorService.shutdown();
         executorService.awaitTermination(60, TimeUnit.SECONDS);
         executorService.shutdownNow();
+
+        if (retryScheduler != null) {
+            // messages still waiting would only be run after the dispatcher has stopped, so they're dropped
+            int pending = retryScheduler.shutdownNow().size();
+            if (pending > 0) {
+                LOGGER.warn("Dropping " + pending + " messages waiting to be retried or deferred");
+            }
+        }
+
+        if (dispatcher != null) {
+            LOGGER.info("Finishing " + dispatcher.getQueue().size() + " queued messages");
+            dispatcher.shutdown();
+            dispatcher.awaitTermination(60, TimeUnit.SECONDS);
+            dispatcher.shutdownNow();
+        }
         LOGGER.info("Stopped");
     }
 
-    protected void processMessage(WorkMessage message) {
-        long startTime = System.currentTimeMillis();
+    /**
+     * Parse a message received from the subscription and queue it for a dispatch thread.
+     */
+    protected void dispatch(String messageString) {
+        if (dispatcher == null) {
+            throw new IllegalStateException("Called dispatch on RedisWorker without calling start() lifecycle method");
+        }
+        WorkMessage message;
+        try {
+            message = reader.read(messageString);
+        } catch (Exception e) {
+            LOGGER.warn("Exception parsing: " + messageString);
+            workerMetrics.getError().mark();
+            workerMetrics.getParseError().mark();
+            return;
+        }
+
+        dispatch(message, messageString, 1);
+    }
+
+    private void dispatch(WorkMessage message, String messageString, int attempt) {
+        dispatcher.execute(() -> {
+            try {
+                processMessage(message);
+            } catch (MethodSaturatedException e) {
+                // pub/sub has no way to redeliver a message later, so hold on to it until the method has room
+                workerMetrics.recordSaturated(e.getMethod());
+                schedule(() -> dispatch(message, messageString, attempt), Math.max(MIN_DEFER_SECONDS, e.getDeferSeconds()));
+            } catch (Exception e) {
+                LOGGER.warn("Exception processing: " + messageString, e);
+                workerMetrics.recordError(message.getMethod());
+                handleFailure(message, messageString, attempt);
+            }
+        });
+    }
+
+    /**
+     * Apply the retry policy to a message whose method failed: dispatch it again after a delay that grows with
+     * each attempt, and dead-letter it once it has had maxAttempts. Without a retry policy, the message is dropped.
+     */
+    protected void handleFailure(WorkMessage message, String messageString, int attempt) {
+        RetryPolicy retryPolicy = config.getRetryPolicy();
+        if (retryPolicy == null) {
+            return;
+        }
+
+        if (attempt < retryPolicy.getMaxAttempts()) {
+            workerMetrics.recordRetry(message.getMethod());
+            schedule(() -> dispatch(message, messageString, attempt + 1), retryPolicy.getDelaySeconds(attempt));
+            return;
+        }
 
-        if (message.getQueueAt().isPresent()) {
-            long queueTime = message.getQueueAt().get().toEpochMilli();
-            long delayTime = Math.max(0, queueTime - startTime);
-            metrics.timer(MetricRegistry.name(RedisWorker.class, channel, "delay"))
-                    .update(delayTime, TimeUnit.MILLISECONDS);
+        workerMetrics.recordDeadLetter(message.getMethod());
+        if (deadLetterSender == null) {
+            LOGGER.error("Dropping message after " + attempt + " attempts: " + messageString);
+            return;
+        }
+        try {
+            deadLetterSender.send(message.withMapParams(mapper));
+        } catch (Exception e) {
+            LOGGER.error("Unable to dead-letter message, dropping: " + messageString, e);
         }
+    }
 
+    /**
+     * Dispatch a message again after a delay, unless queueCapacity messages are waiting already, in which case
+     * the overflowPolicy decides which is dropped.
+     */
+    private void schedule(Runnable dispatch, int delaySeconds) {
+        BlockingQueue<Runnable> waiting = retryScheduler.getQueue();
+        if (waiting.size() >= config.getQueueCapacity()) {
+            markRejected();
+            Iterator<Runnable> soonest = waiting.iterator();
+            if (config.getOverflowPolicy() != OverflowPolicy.DROP_OLDEST || !soonest.hasNext()
+                    || !retryScheduler.remove(soonest.next())) {
+                return;
+            }
+        }
+        try {
+            retryScheduler.schedule(dispatch, delaySeconds, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            markRejected();
+        }
+    }
+
+    protected void processMessage(WorkMessage message) {
         WorkMethod workMethod = workMethods.getMethod(message.getMethod());
-        workMethod.getFunction().apply(message.getParams());
-        long endTime = System.currentTimeMillis();
+        workMethod.acquire();
+        long delayMillis = workerMetrics.recordDelay(message);
+
+        long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            workMethod.apply(message);
+            failed = false;
+        } finally {
+            workMethod.release();
+            workerMetrics.recordProcessing(message.getMethod(), delayMillis, System.nanoTime() - startNanos, failed);
+        }
+    }
+
+    private RejectedExecutionHandler overflowHandler() {
+        switch (config.getOverflowPolicy()) {
+            case CALLER_RUNS:
+                return (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        markRejected();
+                    } else {
+                        task.run();
+                    }
+                };
+            case DROP_NEWEST:
+                return (task, executor) -> markRejected();
+            case DROP_OLDEST:
+                return (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        markRejected();
+                        return;
+                    }
+                    if (executor.getQueue().poll() != null) {
+                        markRejected();
+                    }
+                    executor.execute(task);
+                };
+            case BLOCK:
+            default:
+                return (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        markRejected();
+                        return;
+                    }
+                    try {
+                        // the pool's threads are all prestarted, so queueing directly is enough for the task to run
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        markRejected();
+                    }
+                };
+        }
+    }
 
-        metrics.timer(MetricRegistry.name(RedisWorker.class, channel, "timer", message.getMethod()))
-                .update(endTime - startTime, TimeUnit.MILLISECONDS);
+    private void markRejected() {
+        rejected.mark();
     }
 }
@@ -0,0 +1,155 @@
+package io.stardog.dropwizard.worker.workers;
+
+import com.codahale.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Runs dedicated poller threads that keep a bounded buffer of parsed messages filled ahead of the threads
+ * processing them, so that processing never has to wait on an SQS round trip.
+ *
+ * Pollers only prefetch what the processing threads can get through within half a visibility timeout at
+ * their recently observed rate (never less than one batch, never more than the buffer), so that buffered
+ * messages are not left to become visible again. Any that do sit in the buffer too long are dropped
+ * rather than processed, since SQS may already have handed them to another consumer.
+ */
+class SqsPrefetcher {
+    private final IntFunction<List<SqsWorker.Received>> receiver;
+    private final BlockingQueue<SqsWorker.Received> buffer;
+    private final int capacity;
+    private final int batchSize;
+    private final long maxAgeNanos;
+    private final long visibilityTimeoutSeconds;
+    private final Meter taken;
+    private final Meter expired;
+    private final Object spaceAvailable = new Object();
+    private ExecutorService pollers;
+    private volatile boolean isRunning = false;
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(SqsPrefetcher.class);
+
+    SqsPrefetcher(IntFunction<List<SqsWorker.Received>> receiver, int capacity, int batchSize,
+                  int visibilityTimeoutSeconds, Meter taken, Meter expired) {
+        this.receiver = receiver;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+        // leave a safety margin so a message is never started right as its visibility runs out
+        this.maxAgeNanos = TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds) * 9 / 10;
+        this.taken = taken;
+        this.expired = expired;
+    }
+
+    void start(int pollerThreads) {
+        isRunning = true;
+        pollers = Executors.newFixedThreadPool(pollerThreads);
+        for (int i = 0; i < pollerThreads; i++) {
+            pollers.submit(this::poll);
+        }
+    }
+
+    /**
+     * Stop the pollers, giving any in the middle of a receive up to maxWaitMillis to finish it.
+     */
+    void stop(long maxWaitMillis) throws InterruptedException {
+        isRunning = false;
+        synchronized (spaceAvailable) {
+            spaceAvailable.notifyAll();
+        }
+        pollers.shutdown();
+        pollers.awaitTermination(maxWaitMillis, TimeUnit.MILLISECONDS);
+        pollers.shutdownNow();
+    }
+
+    int size() {
+        return buffer.size();
+    }
+
+    /**
+     * Empty the buffer, returning everything in it.
+     */
+    List<SqsWorker.Received> takeAll() {
+        List<SqsWorker.Received> messages = new ArrayList<>(buffer.size());
+        buffer.drainTo(messages);
+        return messages;
+    }
+
+    /**
+     * Maximum number of messages that should be buffered, based on how quickly they are being taken.
+     */
+    int getPrefetchLimit() {
+        long budget = (long)(taken.getOneMinuteRate() * visibilityTimeoutSeconds / 2);
+        return (int)Math.max(batchSize, Math.min(capacity, budget));
+    }
+
+    /**
+     * Take up to max messages from the buffer, waiting up to waitMillis for the first one to arrive.
+     */
+    List<SqsWorker.Received> take(int max, long waitMillis) {
+        List<SqsWorker.Received> messages = new ArrayList<>(max);
+        try {
+            SqsWorker.Received first = buffer.poll(waitMillis, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return messages;
+            }
+            messages.add(first);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return messages;
+        }
+        buffer.drainTo(messages, max - 1);
+        synchronized (spaceAvailable) {
+            spaceAvailable.notifyAll();
+        }
+
+        long now = System.nanoTime();
+        messages.removeIf(message -> {
+            if (now - message.getReceivedNanos() > maxAgeNanos) {
+                LOGGER.warn("Dropping message " + message.getMessage().getMessageId() + " that sat in the prefetch buffer past its visibility timeout");
+                expired.mark();
+                return true;
+            }
+            return false;
+        });
+        taken.mark(messages.size());
+        return messages;
+    }
+
+    private void poll() {
+        while (isRunning) {
+            try {
+                int room = getPrefetchLimit() - buffer.size();
+                if (room <= 0) {
+                    synchronized (spaceAvailable) {
+                        spaceAvailable.wait(100);
+                    }
+                    continue;
+                }
+                for (SqsWorker.Received message : receiver.apply(Math.min(batchSize, room))) {
+                    buffer.put(message);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOGGER.error("Exception polling for messages", e);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package io.stardog.dropwizard.worker.workers;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.codahale.metrics.Meter;
+import io.stardog.dropwizard.worker.data.SqsWorkerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps long-running messages invisible on the queue while they are being processed, so that SQS does not
+ * hand them to another consumer.
+ *
+ * Each tracked message has a deadline at which its visibility timeout runs out. Every tick, any message
+ * within half a visibility timeout of its deadline has its visibility reset to the full timeout, in batches
+ * of up to 10 per ChangeMessageVisibilityBatch call. Messages stop being extended as soon as they are untracked
+ * (processed or failed), or once SQS reports that their receipt handle is no longer valid.
+ */
+class SqsVisibilityHeartbeat {
+    private final AmazonSQS sqs;
+    private final String sqsUrl;
+    private final int visibilityTimeoutSeconds;
+    private final long visibilityTimeoutNanos;
+    private final Meter extended;
+    private final Meter expired;
+    private final Meter apiCalls;
+    private final Map<String,Long> deadlines = new ConcurrentHashMap<>();
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(SqsVisibilityHeartbeat.class);
+
+    SqsVisibilityHeartbeat(AmazonSQS sqs, String sqsUrl, int visibilityTimeoutSeconds, Meter extended, Meter expired, Meter apiCalls) {
+        this.sqs = sqs;
+        this.sqsUrl = sqsUrl;
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+        this.visibilityTimeoutNanos = TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds);
+        this.extended = extended;
+        this.expired = expired;
+        this.apiCalls = apiCalls;
+    }
+
+    /**
+     * How often extend() should run so that no message is missed between ticks.
+     */
+    long getIntervalMillis() {
+        return Math.max(1000L, TimeUnit.SECONDS.toMillis(visibilityTimeoutSeconds) / 6);
+    }
+
+    void track(Message message, long receivedNanos) {
+        if (message.getReceiptHandle() == null) {
+            return;
+        }
+        deadlines.put(message.getReceiptHandle(), receivedNanos + visibilityTimeoutNanos);
+    }
+
+    void untrack(Message message) {
+        if (message.getReceiptHandle() == null) {
+            return;
+        }
+        deadlines.remove(message.getReceiptHandle());
+    }
+
+    int size() {
+        return deadlines.size();
+    }
+
+    void extend() {
+        try {
+            long now = System.nanoTime();
+            List<String> due = new ArrayList<>();
+            for (Map.Entry<String,Long> entry : deadlines.entrySet()) {
+                long remaining = entry.getValue() - now;
+                if (remaining <= 0) {
+                    if (deadlines.remove(entry.getKey(), entry.getValue())) {
+                        LOGGER.warn("Visibility timeout expired on a message that was still being processed");
+                        expired.mark();
+                    }
+                } else if (remaining < visibilityTimeoutNanos / 2) {
+                    due.add(entry.getKey());
+                }
+            }
+
+            for (int start = 0; start < due.size(); start += SqsWorkerConfig.MAX_BATCH_SIZE) {
+                extendBatch(due.subList(start, Math.min(start + SqsWorkerConfig.MAX_BATCH_SIZE, due.size())), now);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Unexpected exception extending visibility", e);
+        }
+    }
+
+    private void extendBatch(List<String> receiptHandles, long now) {
+        List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(receiptHandles.size());
+        for (int i = 0; i < receiptHandles.size(); i++) {
+            entries.add(new ChangeMessageVisibilityBatchRequestEntry(String.valueOf(i), receiptHandles.get(i))
+                    .withVisibilityTimeout(visibilityTimeoutSeconds));
+        }
+
+        ChangeMessageVisibilityBatchResult result;
+        try {
+            apiCalls.mark();
+            result = sqs.changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(sqsUrl, entries));
+        } catch (Exception e) {
+            // leave the deadlines alone, the next tick will try again if there is still time
+            LOGGER.warn("Exception extending visibility of " + receiptHandles.size() + " messages", e);
+            return;
+        }
+        if (result == null) {
+            return;
+        }
+
+        long deadline = now + visibilityTimeoutNanos;
+        if (result.getSuccessful() != null) {
+            for (ChangeMessageVisibilityBatchResultEntry success : result.getSuccessful()) {
+                // only move the deadline if the message is still being processed
+                deadlines.computeIfPresent(receiptHandles.get(Integer.parseInt(success.getId())), (k, v) -> deadline);
+                extended.mark();
+            }
+        }
+        if (result.getFailed() != null) {
+            for (BatchResultErrorEntry failed : result.getFailed()) {
+                if (Boolean.TRUE.equals(failed.getSenderFault())) {
+                    // the receipt handle is no longer valid, so the message has already become visible again
+                    if (deadlines.remove(receiptHandles.get(Integer.parseInt(failed.getId()))) != null) {
+                        LOGGER.warn("Unable to extend visibility: " + failed.getCode() + " " + failed.getMessage());
+                        expired.mark();
+                    }
+                }
+            }
+        }
+    }
+}
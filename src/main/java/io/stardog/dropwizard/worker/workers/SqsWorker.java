@@ -1,32 +1,80 @@
 package io.stardog.dropwizard.worker.workers;
 
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
 import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.QueueAttributeName;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.dropwizard.lifecycle.Managed;
 import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.codecs.NegotiatingCodec;
+import io.stardog.dropwizard.worker.data.RetryPolicy;
+import io.stardog.dropwizard.worker.data.SqsWorkerConfig;
 import io.stardog.dropwizard.worker.data.WorkMessage;
 import io.stardog.dropwizard.worker.interfaces.ManagedWorker;
+import io.stardog.dropwizard.worker.interfaces.MessageCodec;
+import io.stardog.dropwizard.worker.interfaces.Sender;
+import io.stardog.dropwizard.worker.interfaces.WorkerListener;
 import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.util.MethodSaturatedException;
 import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import io.stardog.dropwizard.worker.util.WorkMessageReader;
+import io.stardog.dropwizard.worker.util.WorkerMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Simple worker that reads messages off a particular SQS queue and processes them.
  *
+ * By default each received batch is processed one message at a time on the calling thread. If
+ * executorThreads is configured, messages are instead handed to a bounded executor owned by this worker,
+ * and a new batch is only received once there is in-flight capacity for it.
+ *
+ * If pollerThreads is configured, receiving is decoupled from processing entirely: dedicated poller
+ * threads keep a bounded buffer of parsed messages filled, and processing threads take from that buffer.
+ *
+ * With a retryPolicy, a message whose method fails is put off for longer after each attempt (going by SQS's
+ * ApproximateReceiveCount), and handed to the dead-letter sender once it has failed maxAttempts times.
+ *
+ * On shutdown, the worker first drains: it stops receiving, and makes any messages it has received but not yet
+ * started (in the prefetch buffer, the rest of a batch, or waiting for the executor) visible again right away, so
+ * that other consumers can take them without waiting out their visibility timeout.
+ *
+ * With heartbeatEnabled, messages being processed have their visibility timeout extended as it runs low, so that
+ * slow methods do not cause the message to be delivered a second time.
+ *
  * Records the following meters:
  *   SqsWorker.[queuename].received
  *      number of messages received
@@ -38,6 +86,42 @@ import java.util.concurrent.TimeUnit;
  *      number of errors per method type
  *   SqsWorker.[queuename].error.parse
  *      number of errors specifically related to malformed messages unable to parse
+ *   SqsWorker.[queuename].error.delete
+ *      number of processed messages that could not be deleted from the queue
+ *   SqsWorker.[queuename].retried
+ *      number of failed messages put off for another attempt, under the retryPolicy
+ *   SqsWorker.[queuename].retried.[method]
+ *      number of retries per method
+ *   SqsWorker.[queuename].deadLettered
+ *      number of messages given up on after their last attempt
+ *   SqsWorker.[queuename].deadLettered.[method]
+ *      number of messages given up on per method
+ *   SqsWorker.[queuename].saturated
+ *      number of messages put off because their method was at its limits
+ *   SqsWorker.[queuename].saturated.[method]
+ *      number of messages put off per method
+ *   SqsWorker.[queuename].released
+ *      number of messages received but not started before shutdown, made visible again for other consumers
+ *   SqsWorker.[queuename].prefetch.taken
+ *      number of messages taken from the prefetch buffer
+ *   SqsWorker.[queuename].prefetch.expired
+ *      number of messages dropped after sitting in the prefetch buffer past their visibility timeout
+ *   SqsWorker.[queuename].heartbeat.extended
+ *      number of visibility timeout extensions issued for messages still being processed
+ *   SqsWorker.[queuename].heartbeat.expired
+ *      number of messages whose visibility timeout ran out while they were still being processed
+ *   SqsWorker.[queuename].apiCalls
+ *      number of calls made to the SQS API (receives, deletes and visibility changes)
+ *
+ *  The following gauges:
+ *    SqsWorker.[queuename].apiCallsPerMessage
+ *      ratio of SQS API calls to successfully processed messages
+ *    SqsWorker.[queuename].inFlight
+ *      number of messages currently handed to the executor (only when executorThreads is set)
+ *    SqsWorker.[queuename].prefetched
+ *      number of messages waiting in the prefetch buffer (only when pollerThreads is set)
+ *    SqsWorker.[queuename].heartbeat.tracked
+ *      number of messages currently having their visibility kept alive
  *
  *  And the following timers:
  *    SqsWorker.[queuename].delay
@@ -50,18 +134,72 @@ public class SqsWorker implements ManagedWorker, Managed {
     private final AmazonSQS sqs;
     private final String sqsName;
     private String sqsUrl;
+    private final SqsWorkerConfig config;
     private final WorkMethods methods;
     private final MetricRegistry metrics;
     private final ObjectMapper mapper;
+    private final WorkMessageReader reader;
+    private final Sender deadLetterSender;
+    private final WorkerMetrics workerMetrics;
+    private final Meter apiCalls;
+    private final Meter deleteErrors;
+    private final Meter released;
+    private final List<Message> pendingDeletes = new ArrayList<>();
+    private volatile boolean isRunning = false;
+    private volatile boolean draining = false;
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+    private Semaphore inFlight;
+    private SqsPrefetcher prefetcher;
+    private SqsVisibilityHeartbeat heartbeat;
+    private int visibilityTimeoutSeconds;
     private final static Logger LOGGER = LoggerFactory.getLogger(SqsWorker.class);
+    private final static int DEFAULT_VISIBILITY_TIMEOUT_SECONDS = 30;
+    private final static String APPROXIMATE_RECEIVE_COUNT = "ApproximateReceiveCount";
 
     @Inject
     public SqsWorker(WorkMethods methods, AmazonSQS sqs, @Named("sqsName") String sqsName, MetricRegistry metrics, ObjectMapper mapper) {
+        this(methods, sqs, sqsName, SqsWorkerConfig.builder().build(), metrics, mapper);
+    }
+
+    public SqsWorker(WorkMethods methods, AmazonSQS sqs, String sqsName, SqsWorkerConfig config, MetricRegistry metrics, ObjectMapper mapper) {
+        this(methods, sqs, sqsName, config, metrics, mapper, NegotiatingCodec.of(mapper));
+    }
+
+    /**
+     * @param codec codec to read messages with; by default, one that reads every format this library writes
+     */
+    public SqsWorker(WorkMethods methods, AmazonSQS sqs, String sqsName, SqsWorkerConfig config, MetricRegistry metrics, ObjectMapper mapper, MessageCodec codec) {
+        this(methods, sqs, sqsName, config, metrics, mapper, codec, null);
+    }
+
+    /**
+     * @param deadLetterSender  where to send messages that have failed every attempt of the config's retryPolicy;
+     *                          if null, they are logged and dropped
+     */
+    public SqsWorker(WorkMethods methods, AmazonSQS sqs, String sqsName, SqsWorkerConfig config, MetricRegistry metrics, ObjectMapper mapper, MessageCodec codec, @Nullable Sender deadLetterSender) {
         this.methods = methods;
         this.sqs = sqs;
         this.sqsName = sqsName;
+        this.config = config;
         this.metrics = metrics;
         this.mapper = mapper;
+        this.reader = new WorkMessageReader(mapper, methods, codec);
+        this.deadLetterSender = deadLetterSender;
+        this.workerMetrics = new WorkerMetrics(metrics, SqsWorker.class, sqsName, methods);
+        this.apiCalls = workerMetrics.meter("apiCalls");
+        this.deleteErrors = workerMetrics.meter("error", "delete");
+        this.released = workerMetrics.meter("released");
+        metrics.gauge(MetricRegistry.name(SqsWorker.class, sqsName, "apiCallsPerMessage"), () -> new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(apiCalls.getCount(), workerMetrics.getProcessed().getCount());
+            }
+        });
+    }
+
+    public SqsWorker(WorkMethods methods, AmazonSQS sqs, String sqsName, SqsWorkerConfig config, MetricRegistry metrics) {
+        this(methods, sqs, sqsName, config, metrics, WorkerDefaults.MAPPER);
     }
 
     public SqsWorker(WorkMethods methods, AmazonSQS sqs, String sqsName, MetricRegistry metrics) {
@@ -75,11 +213,82 @@ public class SqsWorker implements ManagedWorker, Managed {
     @Override
     public void start() throws Exception {
         this.sqsUrl = sqs.getQueueUrl(sqsName).getQueueUrl();
+        isRunning = true;
+
+        if (config.getPollerThreads() > 0 || config.isHeartbeatEnabled()) {
+            visibilityTimeoutSeconds = resolveVisibilityTimeout();
+        }
+        if (config.getExecutorThreads() > 0 || config.isHeartbeatEnabled()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+
+        if (config.isHeartbeatEnabled()) {
+            heartbeat = new SqsVisibilityHeartbeat(sqs, sqsUrl, visibilityTimeoutSeconds,
+                    workerMetrics.meter("heartbeat", "extended"),
+                    workerMetrics.meter("heartbeat", "expired"),
+                    apiCalls);
+            scheduler.scheduleWithFixedDelay(heartbeat::extend,
+                    heartbeat.getIntervalMillis(), heartbeat.getIntervalMillis(), TimeUnit.MILLISECONDS);
+            metrics.gauge(MetricRegistry.name(SqsWorker.class, sqsName, "heartbeat", "tracked"),
+                    () -> (Gauge<Integer>) () -> heartbeat.size());
+        }
+
+        if (config.getPollerThreads() > 0) {
+            prefetcher = new SqsPrefetcher(this::receiveFromQueue,
+                    config.getPrefetchBufferSize(), config.getMaxNumberOfMessages(), visibilityTimeoutSeconds,
+                    workerMetrics.meter("prefetch", "taken"),
+                    workerMetrics.meter("prefetch", "expired"));
+            prefetcher.start(config.getPollerThreads());
+            metrics.gauge(MetricRegistry.name(SqsWorker.class, sqsName, "prefetched"),
+                    () -> (Gauge<Integer>) () -> prefetcher.size());
+        }
+
+        if (config.getExecutorThreads() > 0) {
+            int maxInFlight = config.getMaxInFlight() > 0 ? config.getMaxInFlight() : config.getExecutorThreads();
+            inFlight = new Semaphore(maxInFlight);
+            executor = Executors.newFixedThreadPool(config.getExecutorThreads());
+            scheduler.scheduleWithFixedDelay(this::flushDeletes,
+                    config.getAckLingerMillis(), config.getAckLingerMillis(), TimeUnit.MILLISECONDS);
+            metrics.gauge(MetricRegistry.name(SqsWorker.class, sqsName, "inFlight"),
+                    () -> (Gauge<Integer>) () -> maxInFlight - inFlight.availablePermits());
+        }
+    }
+
+    /**
+     * Stop receiving, and make every message that has been received but not started visible again. Messages
+     * already being processed are left to finish.
+     */
+    @Override
+    public void drain() {
+        draining = true;
+        if (prefetcher != null) {
+            try {
+                prefetcher.stop(config.getMaxShutdownMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            releaseMessages(prefetcher.takeAll());
+        }
     }
 
     @Override
     public void stop() throws Exception {
+        drain();
+        isRunning = false;
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(config.getMaxShutdownMillis(), TimeUnit.MILLISECONDS);
+            executor.shutdownNow();
+            flushDeletes();
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
 
+    @Override
+    public void addListener(WorkerListener listener) {
+        workerMetrics.addListener(listener);
     }
 
     @Override
@@ -87,70 +296,453 @@ public class SqsWorker implements ManagedWorker, Managed {
         if (sqsUrl == null) {
             throw new IllegalStateException("Called processMessages on SqsWorker without calling start() lifecycle method");
         }
-        ReceiveMessageRequest request = new ReceiveMessageRequest(sqsUrl);
-        List<Message> messages = sqs.receiveMessage(request).getMessages();
+        if (draining) {
+            return false;
+        }
+        if (executor != null) {
+            return processMessagesConcurrently();
+        }
 
+        List<Received> messages = receiveMessages(config.getMaxNumberOfMessages());
         if (messages.size() == 0) {
             return false;
         }
 
-        metrics.meter(MetricRegistry.name(SqsWorker.class, sqsName, "received")).mark(messages.size());
+        List<Message> processedMessages = new ArrayList<>(messages.size());
+        List<Received> unstarted = new ArrayList<>();
+        for (Received message : messages) {
+            if (draining) {
+                unstarted.add(message);
+            } else if (handleMessage(message)) {
+                processedMessages.add(message.getMessage());
+            }
+        }
+
+        deleteMessages(processedMessages);
+        releaseMessages(unstarted);
+
+        LOGGER.debug("Completed processing " + messages.size() + " messages");
+
+        return true;
+    }
+
+    /**
+     * Receive only as many messages as there is in-flight capacity for, then hand each one to the executor.
+     * Each message is acknowledged as soon as it finishes, rather than waiting for the rest of its batch.
+     */
+    protected boolean processMessagesConcurrently() {
+        int permits = acquireCapacity();
+        if (permits == 0) {
+            return false;
+        }
+
+        List<Received> messages;
+        try {
+            messages = receiveMessages(permits);
+        } catch (RuntimeException e) {
+            inFlight.release(permits);
+            throw e;
+        }
+        inFlight.release(permits - messages.size());
+        if (messages.size() == 0) {
+            return false;
+        }
+
+        for (Received message : messages) {
+            try {
+                executor.submit(() -> {
+                    try {
+                        if (draining) {
+                            releaseMessages(Collections.singletonList(message));
+                        } else if (handleMessage(message)) {
+                            ackMessage(message.getMessage());
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // shutting down; the message will become visible again once its visibility timeout passes
+                untrack(message);
+                inFlight.release();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Block until at least one in-flight slot is free, then grab as many more as a single receive could fill.
+     * @return  number of slots acquired, or 0 if the worker stopped while waiting
+     */
+    protected int acquireCapacity() {
+        try {
+            while (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                if (!isRunning) {
+                    return 0;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        int permits = 1;
+        while (permits < config.getMaxNumberOfMessages() && inFlight.tryAcquire()) {
+            permits++;
+        }
+        return permits;
+    }
+
+    /**
+     * Get the next batch of messages to process, either from the prefetch buffer or directly from SQS.
+     */
+    protected List<Received> receiveMessages(int maxNumberOfMessages) {
+        List<Received> messages;
+        if (prefetcher != null) {
+            // wait on the buffer the same way a direct receive would long-poll
+            long waitMillis = Math.max(100, TimeUnit.SECONDS.toMillis(config.getWaitTimeSeconds()));
+            messages = prefetcher.take(maxNumberOfMessages, waitMillis);
+        } else {
+            messages = receiveFromQueue(maxNumberOfMessages);
+        }
+
+        if (heartbeat != null) {
+            for (Received message : messages) {
+                if (message.getWorkMessage() != null) {
+                    heartbeat.track(message.getMessage(), message.getReceivedNanos());
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Receive and parse a batch of messages from SQS. Messages that cannot be parsed are still returned,
+     * without a WorkMessage, so that they are counted but never deleted.
+     */
+    protected List<Received> receiveFromQueue(int maxNumberOfMessages) {
+        ReceiveMessageRequest request = new ReceiveMessageRequest(sqsUrl)
+                .withMaxNumberOfMessages(maxNumberOfMessages)
+                .withWaitTimeSeconds(config.getWaitTimeSeconds());
+        if (config.getVisibilityTimeoutSeconds() > 0) {
+            request.withVisibilityTimeout(config.getVisibilityTimeoutSeconds());
+        }
+        if (config.getRetryPolicy() != null) {
+            request.withAttributeNames(APPROXIMATE_RECEIVE_COUNT);
+        }
+        markApiCall();
+        List<Message> messages = sqs.receiveMessage(request).getMessages();
+        if (messages.size() == 0) {
+            return Collections.emptyList();
+        }
+
+        workerMetrics.getReceived().mark(messages.size());
         LOGGER.debug("Received " + messages.size() + " messages");
 
+        long receivedNanos = System.nanoTime();
+        List<Received> received = new ArrayList<>(messages.size());
         for (Message message : messages) {
-            LOGGER.debug("Processing message: " + message);
-            WorkMessage workMessage;
+            WorkMessage workMessage = null;
             try {
                 workMessage = parseMessage(message);
             } catch (Exception e) {
                 LOGGER.warn("Exception parsing: " + message.getBody());
-                metrics.meter(MetricRegistry.name(SqsWorker.class, sqsName, "error")).mark();
-                metrics.meter(MetricRegistry.name(SqsWorker.class, sqsName, "error", "parse")).mark();
-                continue;
+                workerMetrics.getError().mark();
+                workerMetrics.getParseError().mark();
             }
+            received.add(new Received(message, workMessage, receivedNanos));
+        }
+        return received;
+    }
+
+    /**
+     * Process a single received message, recording metrics.
+     * @param received   message received from SQS
+     * @return  true if the message was processed and should be deleted from the queue
+     */
+    protected boolean handleMessage(Received received) {
+        Message message = received.getMessage();
+        WorkMessage workMessage = received.getWorkMessage();
+        if (workMessage == null) {
+            return false;
+        }
+        LOGGER.debug("Processing message: " + message);
 
+        try {
+            boolean processed;
             try {
-                boolean processed = processMessage(workMessage);
-                if (processed) {
-                    sqs.deleteMessage(new DeleteMessageRequest(sqsUrl, message.getReceiptHandle()));
-                    metrics.meter(MetricRegistry.name(SqsWorker.class, sqsName, "processed")).mark();
-                } else {
-                    metrics.meter(MetricRegistry.name(SqsWorker.class, sqsName, "skipped")).mark();
-                }
+                processed = processMessage(workMessage);
+            } finally {
+                // stop extending its visibility before it is deferred, so that the heartbeat can't undo the deferral
+                untrack(received);
+            }
+            if (processed) {
+                workerMetrics.getProcessed().mark();
+            } else {
+                workerMetrics.getSkipped().mark();
+            }
+            return processed;
 
+        } catch (MethodSaturatedException e) {
+            LOGGER.debug("Deferring message for saturated method " + e.getMethod());
+            workerMetrics.recordSaturated(e.getMethod());
+            deferMessage(message, e.getDeferSeconds());
+            return false;
+
+        } catch (Exception e) {
+            LOGGER.warn("Exception processing: " + message.getBody(), e);
+            workerMetrics.recordError(workMessage.getMethod());
+            return handleFailure(message, workMessage);
+        }
+    }
+
+    private void untrack(Received received) {
+        if (heartbeat != null) {
+            heartbeat.untrack(received.getMessage());
+        }
+    }
+
+    /**
+     * Apply the retry policy to a message whose method failed: put it off for longer after each attempt, and
+     * dead-letter it once it has had maxAttempts. Without a retry policy, the message is left to reappear once its
+     * visibility timeout runs out.
+     * @return  true if the message has been dealt with and should be deleted from the queue
+     */
+    protected boolean handleFailure(Message message, WorkMessage workMessage) {
+        RetryPolicy retryPolicy = config.getRetryPolicy();
+        if (retryPolicy == null) {
+            return false;
+        }
+
+        int attempts = getReceiveCount(message);
+        if (attempts < retryPolicy.getMaxAttempts()) {
+            workerMetrics.recordRetry(workMessage.getMethod());
+            deferMessage(message, retryPolicy.getDelaySeconds(attempts));
+            return false;
+        }
+
+        if (deadLetterSender == null) {
+            LOGGER.error("Dropping message after " + attempts + " attempts: " + message.getBody());
+        } else {
+            try {
+                deadLetterSender.send(workMessage.withMapParams(mapper));
             } catch (Exception e) {
-                LOGGER.warn("Exception processing: " + message.getBody(), e);
-                metrics.meter(MetricRegistry.name(SqsWorker.class, sqsName, "error")).mark();
-                metrics.meter(MetricRegistry.name(SqsWorker.class, sqsName, "error", workMessage.getMethod())).mark();
+                // it will be received again, and dead-lettered again, once its visibility timeout runs out
+                LOGGER.warn("Unable to dead-letter message " + message.getMessageId(), e);
+                return false;
             }
         }
+        workerMetrics.recordDeadLetter(workMessage.getMethod());
+        return true;
+    }
 
-        LOGGER.debug("Completed processing " + messages.size() + " messages");
+    /**
+     * The number of times SQS has handed out a message, including this one.
+     */
+    protected int getReceiveCount(Message message) {
+        String count = message.getAttributes().get(APPROXIMATE_RECEIVE_COUNT);
+        try {
+            return count != null ? Integer.parseInt(count) : 1;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
 
-        return true;
+    /**
+     * Leave a message on the queue, to be received again once deferSeconds have passed.
+     */
+    protected void deferMessage(Message message, int deferSeconds) {
+        try {
+            markApiCall();
+            sqs.changeMessageVisibility(new ChangeMessageVisibilityRequest(sqsUrl, message.getReceiptHandle(), deferSeconds));
+        } catch (Exception e) {
+            // it will be received again once its visibility timeout runs out
+            LOGGER.warn("Unable to defer message " + message.getMessageId(), e);
+        }
+    }
+
+    /**
+     * Make messages that were received but never started visible again right away, in batches of up to 10.
+     * Messages that could not be parsed are left alone, as they would only fail again.
+     */
+    protected void releaseMessages(List<Received> messages) {
+        List<Message> toRelease = new ArrayList<>(messages.size());
+        for (Received message : messages) {
+            untrack(message);
+            if (message.getWorkMessage() != null) {
+                toRelease.add(message.getMessage());
+            }
+        }
+
+        for (int start = 0; start < toRelease.size(); start += SqsWorkerConfig.MAX_BATCH_SIZE) {
+            List<Message> batch = toRelease.subList(start, Math.min(start + SqsWorkerConfig.MAX_BATCH_SIZE, toRelease.size()));
+            List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                entries.add(new ChangeMessageVisibilityBatchRequestEntry(String.valueOf(i), batch.get(i).getReceiptHandle())
+                        .withVisibilityTimeout(0));
+            }
+
+            try {
+                markApiCall();
+                ChangeMessageVisibilityBatchResult result = sqs.changeMessageVisibilityBatch(
+                        new ChangeMessageVisibilityBatchRequest(sqsUrl, entries));
+                int failed = result != null && result.getFailed() != null ? result.getFailed().size() : 0;
+                released.mark(batch.size() - failed);
+            } catch (Exception e) {
+                // they will become visible once their visibility timeout runs out
+                LOGGER.warn("Unable to release " + batch.size() + " unstarted messages", e);
+            }
+        }
+        if (!toRelease.isEmpty()) {
+            LOGGER.info("Released " + toRelease.size() + " unstarted messages back to " + sqsName);
+        }
+    }
+
+    /**
+     * Queue a finished message for deletion. Deletes go out as soon as a full batch of 10 is waiting,
+     * and otherwise at most ackLingerMillis later.
+     */
+    protected void ackMessage(Message message) {
+        List<Message> batch = null;
+        synchronized (pendingDeletes) {
+            pendingDeletes.add(message);
+            if (pendingDeletes.size() >= SqsWorkerConfig.MAX_BATCH_SIZE) {
+                batch = new ArrayList<>(pendingDeletes);
+                pendingDeletes.clear();
+            }
+        }
+        if (batch != null) {
+            deleteMessages(batch);
+        }
+    }
+
+    protected void flushDeletes() {
+        List<Message> batch;
+        synchronized (pendingDeletes) {
+            if (pendingDeletes.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pendingDeletes);
+            pendingDeletes.clear();
+        }
+        deleteMessages(batch);
+    }
+
+    /**
+     * Delete processed messages from the queue, in batches of up to 10. Entries that fail on the SQS side
+     * are retried individually; entries rejected as the sender's fault (e.g. an expired receipt handle)
+     * cannot succeed on retry and will simply reappear on the queue.
+     * @param messages  messages to delete
+     */
+    protected void deleteMessages(List<Message> messages) {
+        for (int start = 0; start < messages.size(); start += SqsWorkerConfig.MAX_BATCH_SIZE) {
+            List<Message> batch = messages.subList(start, Math.min(start + SqsWorkerConfig.MAX_BATCH_SIZE, messages.size()));
+            List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                entries.add(new DeleteMessageBatchRequestEntry(String.valueOf(i), batch.get(i).getReceiptHandle()));
+            }
+
+            DeleteMessageBatchResult result;
+            try {
+                markApiCall();
+                result = sqs.deleteMessageBatch(new DeleteMessageBatchRequest(sqsUrl, entries));
+            } catch (Exception e) {
+                LOGGER.warn("Exception deleting batch of " + batch.size() + " messages", e);
+                deleteErrors.mark(batch.size());
+                continue;
+            }
+            if (result == null || result.getFailed() == null) {
+                continue;
+            }
+
+            for (BatchResultErrorEntry failed : result.getFailed()) {
+                Message message = batch.get(Integer.parseInt(failed.getId()));
+                if (Boolean.TRUE.equals(failed.getSenderFault())) {
+                    LOGGER.warn("Unable to delete message " + message.getMessageId() + ": " + failed.getCode() + " " + failed.getMessage());
+                    deleteErrors.mark();
+                    continue;
+                }
+                try {
+                    markApiCall();
+                    sqs.deleteMessage(new DeleteMessageRequest(sqsUrl, message.getReceiptHandle()));
+                } catch (Exception e) {
+                    LOGGER.warn("Exception deleting message " + message.getMessageId(), e);
+                    deleteErrors.mark();
+                }
+            }
+        }
+    }
+
+    /**
+     * Determine the visibility timeout received messages will have: the configured override if there is one,
+     * otherwise the queue's own setting.
+     */
+    protected int resolveVisibilityTimeout() {
+        if (config.getVisibilityTimeoutSeconds() > 0) {
+            return config.getVisibilityTimeoutSeconds();
+        }
+        try {
+            markApiCall();
+            GetQueueAttributesResult result = sqs.getQueueAttributes(new GetQueueAttributesRequest(sqsUrl,
+                    Collections.singletonList(QueueAttributeName.VisibilityTimeout.toString())));
+            return Integer.parseInt(result.getAttributes().get(QueueAttributeName.VisibilityTimeout.toString()));
+        } catch (Exception e) {
+            LOGGER.warn("Unable to read visibility timeout of " + sqsName + ", assuming the SQS default of " + DEFAULT_VISIBILITY_TIMEOUT_SECONDS + "s", e);
+            return DEFAULT_VISIBILITY_TIMEOUT_SECONDS;
+        }
+    }
+
+    private void markApiCall() {
+        apiCalls.mark();
     }
 
     protected WorkMessage parseMessage(Message message) throws IOException {
-        return mapper.readValue(message.getBody(), WorkMessage.class);
+        return reader.read(message.getBody()).withId(message.getMessageId());
     }
 
     protected boolean processMessage(WorkMessage message) {
-        long startTime = System.currentTimeMillis();
+        WorkMethod workMethod = methods.getMethod(message.getMethod());
+        workMethod.acquire();
+        long delayMillis = workerMetrics.recordDelay(message);
 
-        if (message.getQueueAt().isPresent()) {
-            long queueTime = message.getQueueAt().get().toEpochMilli();
-            long delayTime = Math.max(0, queueTime - startTime);
-            metrics.timer(MetricRegistry.name(SqsWorker.class, sqsName, "delay"))
-                    .update(delayTime, TimeUnit.MILLISECONDS);
+        long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean result = workMethod.apply(message);
+            failed = false;
+            return result;
+        } finally {
+            workMethod.release();
+            workerMetrics.recordProcessing(message.getMethod(), delayMillis, System.nanoTime() - startNanos, failed);
         }
+    }
 
-        WorkMethod workMethod = methods.getMethod(message.getMethod());
-        boolean result = workMethod.getFunction().apply(message.getParams());
-        long endTime = System.currentTimeMillis();
+    /**
+     * A message received from SQS, along with its parsed WorkMessage (null if it could not be parsed)
+     * and when it was received.
+     */
+    protected static class Received {
+        private final Message message;
+        private final WorkMessage workMessage;
+        private final long receivedNanos;
+
+        Received(Message message, @Nullable WorkMessage workMessage, long receivedNanos) {
+            this.message = message;
+            this.workMessage = workMessage;
+            this.receivedNanos = receivedNanos;
+        }
 
-        metrics.timer(MetricRegistry.name(SqsWorker.class, sqsName, "timer", message.getMethod()))
-                .update(endTime - startTime, TimeUnit.MILLISECONDS);
+        public Message getMessage() {
+            return message;
+        }
 
-        return result;
+        @Nullable
+        public WorkMessage getWorkMessage() {
+            return workMessage;
+        }
+
+        public long getReceivedNanos() {
+            return receivedNanos;
+        }
     }
 }
@@ -0,0 +1,132 @@
+package io.stardog.dropwizard.worker;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.data.WorkerConfig;
+import io.stardog.dropwizard.worker.data.WorkerShareConfig;
+import io.stardog.dropwizard.worker.workers.LocalWorker;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class MultiWorkerManagerTest {
+    @Test
+    public void weightedPolling() throws Exception {
+        List<String> processed = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(40);
+        LocalWorker heavy = worker(100, p -> { processed.add("heavy"); done.countDown(); });
+        LocalWorker light = worker(100, p -> { processed.add("light"); done.countDown(); });
+
+        WorkerConfig config = WorkerConfig.builder().maxThreads(1).maxShutdownMillis(1000).build();
+        MultiWorkerManager manager = new MultiWorkerManager("test", config, new MetricRegistry())
+                .addWorker("heavy", heavy, WorkerShareConfig.builder().weight(3).build())
+                .addWorker("light", light);
+        manager.start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        manager.stop();
+
+        long heavyCount = processed.subList(0, 40).stream().filter("heavy"::equals).count();
+        assertEquals(30, heavyCount);
+    }
+
+    @Test
+    public void busyQueueBorrowsUpToMaxThreads() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch cappedStarted = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch cappedDone = new CountDownLatch(20);
+        CountDownLatch otherDone = new CountDownLatch(20);
+        AtomicBoolean first = new AtomicBoolean(true);
+        LocalWorker capped = worker(20, p -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            // the first message returns at once, marking the queue busy; the rest hold their threads until released
+            if (!first.getAndSet(false)) {
+                cappedStarted.countDown();
+                await(release);
+            }
+            running.decrementAndGet();
+            cappedDone.countDown();
+        });
+        LocalWorker other = worker(20, p -> otherDone.countDown());
+
+        WorkerConfig config = WorkerConfig.builder().maxThreads(4).maxShutdownMillis(1000).build();
+        MultiWorkerManager manager = new MultiWorkerManager("test", config, new MetricRegistry())
+                .addWorker("capped", capped, WorkerShareConfig.builder().maxThreads(2).build())
+                .addWorker("other", other);
+        manager.start();
+
+        // the capped queue holds two threads until released, and the other queue gets through on the rest
+        assertTrue(cappedStarted.await(5, TimeUnit.SECONDS));
+        assertTrue(otherDone.await(5, TimeUnit.SECONDS));
+        assertEquals(2, running.get());
+        release.countDown();
+        assertTrue(cappedDone.await(5, TimeUnit.SECONDS));
+        manager.stop();
+
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void submitWakesUpIdleQueue() throws Exception {
+        CountDownLatch processed = new CountDownLatch(1);
+        CountDownLatch polled = new CountDownLatch(1);
+        ConcurrentLinkedQueue<WorkMessage> queue = new ConcurrentLinkedQueue<WorkMessage>() {
+            @Override
+            public WorkMessage poll() {
+                WorkMessage message = super.poll();
+                polled.countDown();
+                return message;
+            }
+        };
+        LocalWorker worker = new LocalWorker(WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", p -> processed.countDown()))), queue);
+        WorkerConfig config = WorkerConfig.builder().maxThreads(2)
+                .incIntervalMillis(60000).maxIntervalMillis(60000).maxShutdownMillis(1000).build();
+        MultiWorkerManager manager = new MultiWorkerManager("test", config, new MetricRegistry())
+                .addWorker("queue", worker);
+        manager.start();
+
+        // once the first poll has found nothing, the queue is put to sleep for its interval
+        assertTrue(polled.await(5, TimeUnit.SECONDS));
+        worker.submitMessage(WorkMessage.of("test", null, null));
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+        manager.stop();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minThreadsMustFitBudget() {
+        WorkerConfig config = WorkerConfig.builder().maxThreads(4).build();
+        new MultiWorkerManager("test", config, new MetricRegistry())
+                .addWorker("a", worker(0, p -> { }), WorkerShareConfig.builder().minThreads(3).build())
+                .addWorker("b", worker(0, p -> { }), WorkerShareConfig.builder().minThreads(2).build());
+    }
+
+    private LocalWorker worker(int messages, Consumer<Map<String,Object>> method) {
+        ConcurrentLinkedQueue<WorkMessage> queue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < messages; i++) {
+            queue.add(WorkMessage.of("test", null, null));
+        }
+        return new LocalWorker(WorkMethods.of(ImmutableList.of(WorkMethod.of("test", method))), queue);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
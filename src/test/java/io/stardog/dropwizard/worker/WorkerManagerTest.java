@@ -0,0 +1,172 @@
+package io.stardog.dropwizard.worker;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import io.stardog.dropwizard.worker.data.IdleBackoff;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.data.WorkerConfig;
+import io.stardog.dropwizard.worker.interfaces.ManagedWorker;
+import io.stardog.dropwizard.worker.workers.LocalWorker;
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class WorkerManagerTest {
+    private final LocalWorker idleWorker = new LocalWorker(WorkMethods.of(ImmutableList.of()));
+
+    @Test
+    public void linearBackoff() {
+        WorkerConfig config = WorkerConfig.builder().incIntervalMillis(5000).maxIntervalMillis(12000).build();
+        WorkerManager manager = new WorkerManager("test", config, idleWorker, new MetricRegistry());
+        assertEquals(5000, manager.nextIntervalMillis(config, 0));
+        assertEquals(10000, manager.nextIntervalMillis(config, 5000));
+        assertEquals(12000, manager.nextIntervalMillis(config, 10000));
+    }
+
+    @Test
+    public void exponentialBackoff() {
+        WorkerConfig config = WorkerConfig.builder().idleBackoff(IdleBackoff.EXPONENTIAL)
+                .incIntervalMillis(100).maxIntervalMillis(1000).build();
+        WorkerManager manager = new WorkerManager("test", config, idleWorker, new MetricRegistry());
+        assertEquals(100, manager.nextIntervalMillis(config, 0));
+        assertEquals(200, manager.nextIntervalMillis(config, 100));
+        assertEquals(800, manager.nextIntervalMillis(config, 400));
+        assertEquals(1000, manager.nextIntervalMillis(config, 800));
+    }
+
+    @Test
+    public void decorrelatedJitterBackoff() {
+        WorkerConfig config = WorkerConfig.builder().idleBackoff(IdleBackoff.DECORRELATED_JITTER)
+                .incIntervalMillis(100).maxIntervalMillis(1000).build();
+        WorkerManager manager = new WorkerManager("test", config, idleWorker, new MetricRegistry());
+        for (int i = 0; i < 100; i++) {
+            long next = manager.nextIntervalMillis(config, 200);
+            assertTrue(next >= 100 && next <= 600);
+            assertTrue(manager.nextIntervalMillis(config, 1000) <= 1000);
+        }
+    }
+
+    @Test
+    public void submitWakesUpSleepingManager() throws Exception {
+        CountDownLatch processed = new CountDownLatch(1);
+        LocalWorker worker = new LocalWorker(WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", p -> processed.countDown()))), new ConcurrentLinkedQueue<>());
+        WorkerConfig config = WorkerConfig.builder().maxThreads(1)
+                .incIntervalMillis(60000).maxIntervalMillis(60000).maxShutdownMillis(1000).build();
+        CountDownLatch asleep = new CountDownLatch(1);
+        WorkerManager manager = new WorkerManager("test", config, worker, new MetricRegistry()) {
+            @Override
+            protected void scheduleProcessMessages(long millis) {
+                super.scheduleProcessMessages(millis);
+                asleep.countDown();
+            }
+        };
+        manager.start();
+        try {
+            // the first poll finds nothing, so the manager goes to sleep for a minute
+            assertTrue(asleep.await(5, TimeUnit.SECONDS));
+            worker.submitMessage(WorkMessage.of("test"));
+            assertTrue(processed.await(5, TimeUnit.SECONDS));
+        } finally {
+            manager.stop();
+        }
+    }
+
+    @Test
+    public void submitDuringLastPollIsNotSlept() throws Exception {
+        CountDownLatch polling = new CountDownLatch(1);
+        CountDownLatch submitted = new CountDownLatch(1);
+        CountDownLatch processed = new CountDownLatch(1);
+        ConcurrentLinkedQueue<WorkMessage> queue = new ConcurrentLinkedQueue<WorkMessage>() {
+            @Override
+            public WorkMessage poll() {
+                WorkMessage message = super.poll();
+                if (message == null && polling.getCount() > 0) {
+                    // hold the first, empty poll open until a message has been submitted behind it
+                    polling.countDown();
+                    await(submitted);
+                }
+                return message;
+            }
+        };
+        LocalWorker worker = new LocalWorker(WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", p -> processed.countDown()))), queue);
+        WorkerConfig config = WorkerConfig.builder().maxThreads(1)
+                .incIntervalMillis(60000).maxIntervalMillis(60000).maxShutdownMillis(1000).build();
+        WorkerManager manager = new WorkerManager("test", config, worker, new MetricRegistry());
+        manager.start();
+        try {
+            assertTrue(polling.await(5, TimeUnit.SECONDS));
+            worker.submitMessage(WorkMessage.of("test"));
+            submitted.countDown();
+            assertTrue(processed.await(5, TimeUnit.SECONDS));
+        } finally {
+            manager.stop();
+        }
+    }
+
+    @Test
+    public void virtualThreads() throws Exception {
+        CountDownLatch processed = new CountDownLatch(100);
+        LocalWorker worker = new LocalWorker(WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", p -> processed.countDown()))), new ConcurrentLinkedQueue<>());
+        for (int i = 0; i < 100; i++) {
+            worker.submitMessage(WorkMessage.of("test"));
+        }
+        // falls back to platform threads where virtual threads aren't supported
+        WorkerConfig config = WorkerConfig.builder().virtualThreads(true).maxThreads(1000).maxShutdownMillis(1000).build();
+        WorkerManager manager = new WorkerManager("test", config, worker, new MetricRegistry());
+        manager.start();
+        try {
+            assertTrue(processed.await(5, TimeUnit.SECONDS));
+        } finally {
+            manager.stop();
+        }
+    }
+
+    @Test
+    public void stopDrainsWorker() throws Exception {
+        AtomicBoolean drained = new AtomicBoolean(false);
+        ManagedWorker worker = new ManagedWorker() {
+            @Override
+            public boolean processMessages() {
+                return false;
+            }
+
+            @Override
+            public void drain() {
+                drained.set(true);
+            }
+
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() {
+                assertTrue("drained before stopping", drained.get());
+            }
+        };
+        MetricRegistry metrics = new MetricRegistry();
+        WorkerManager manager = new WorkerManager("test", WorkerConfig.builder().maxShutdownMillis(1000).build(), worker, metrics);
+        manager.start();
+        manager.stop();
+
+        assertTrue(drained.get());
+        assertEquals(1, metrics.timer("io.stardog.dropwizard.worker.WorkerManager.test.drain").getCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.stardog.dropwizard.worker.codecs;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.blobs.FileBlobStore;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.util.WorkMessageReader;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ClaimCheckCodecTest {
+    private Path directory;
+    private ClaimCheckCodec codec;
+    private WorkMessageReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("blobs");
+        codec = new ClaimCheckCodec(new CompressingCodec(new JsonCodec(), 1024), new FileBlobStore(directory), 1024);
+        reader = new WorkMessageReader(WorkerDefaults.MAPPER, WorkMethods.of(ImmutableList.of()),
+                new ClaimCheckCodec(NegotiatingCodec.of(WorkerDefaults.MAPPER), new FileBlobStore(directory)));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void storesOversizePayloads() throws Exception {
+        // random enough that it stays over the threshold once compressed
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append(Integer.toHexString(random.nextInt()));
+        }
+        WorkMessage large = WorkMessage.of("test", ImmutableMap.of("text", text.toString()));
+        String payload = codec.encode(large);
+        assertTrue(payload.startsWith(ClaimCheckCodec.MARKER));
+        try (Stream<Path> paths = Files.list(directory)) {
+            assertEquals(1, paths.count());
+        }
+
+        assertEquals(large, reader.read(payload));
+    }
+
+    @Test
+    public void sendsCompressiblePayloadsInline() throws Exception {
+        WorkMessage large = WorkMessage.of("test", ImmutableMap.of("text", Strings.repeat("all work and no play ", 1000)));
+        String payload = codec.encode(large);
+        assertTrue(payload.startsWith(CompressingCodec.MARKER));
+        assertEquals(large, reader.read(payload));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void rejectsKeysOutsideTheStore() throws Exception {
+        new FileBlobStore(directory).get("../secret");
+    }
+}
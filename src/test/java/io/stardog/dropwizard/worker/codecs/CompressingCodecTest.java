@@ -0,0 +1,37 @@
+package io.stardog.dropwizard.worker.codecs;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.util.WorkMessageReader;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompressingCodecTest {
+    private final WorkMessageReader reader = new WorkMessageReader(WorkerDefaults.MAPPER, WorkMethods.of(ImmutableList.of()));
+
+    @Test
+    public void compressesOverThreshold() throws Exception {
+        CompressingCodec codec = new CompressingCodec(new JsonCodec(), 1024);
+        WorkMessage large = WorkMessage.of("test", ImmutableMap.of("text", Strings.repeat("all work and no play ", 1000)));
+        String payload = codec.encode(large);
+        assertTrue(payload.startsWith(CompressingCodec.MARKER));
+        assertTrue(payload.length() < 1024);
+
+        // the default worker codec reads it without being told about compression
+        assertEquals(large, reader.read(payload));
+    }
+
+    @Test
+    public void leavesSmallPayloads() throws Exception {
+        CompressingCodec codec = new CompressingCodec(new JsonCodec(), 1024);
+        WorkMessage small = WorkMessage.of("test", ImmutableMap.of("text", "hello"));
+        String payload = codec.encode(small);
+        assertEquals(new JsonCodec().encode(small), payload);
+        assertEquals(small, reader.read(payload));
+    }
+}
@@ -0,0 +1,68 @@
+package io.stardog.dropwizard.worker.codecs;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.util.WorkMessageReader;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+public class NegotiatingCodecTest {
+    public static class EmailParams {
+        public String userId;
+        public int count;
+    }
+
+    private final WorkMethods methods = WorkMethods.of(ImmutableList.of(
+            WorkMethod.fn("email", WorkerDefaults.MAPPER, EmailParams.class, p -> true),
+            WorkMethod.of("map", p -> { })));
+    private final WorkMessageReader reader = new WorkMessageReader(WorkerDefaults.MAPPER, methods);
+    private final WorkMessage message = WorkMessage.of("map",
+            ImmutableMap.of("userId", "abc", "count", 3, "nested", ImmutableMap.of("ok", true)),
+            Instant.ofEpochMilli(1515531600000L));
+
+    @Test
+    public void readsJsonAndCbor() throws Exception {
+        String json = new JsonCodec().encode(message);
+        String cbor = new CborCodec().encode(message);
+        assertTrue(json.startsWith("{"));
+        assertTrue(cbor.startsWith(CborCodec.MARKER));
+
+        assertEquals(message, reader.read(json));
+        assertEquals(message, reader.read(cbor));
+    }
+
+    @Test
+    public void readsTypedParamsFromCbor() throws Exception {
+        String cbor = new CborCodec().encode(WorkMessage.of("email", ImmutableMap.of("userId", "abc", "count", 3)));
+        EmailParams params = (EmailParams)reader.read(cbor).getTypedParams();
+        assertEquals("abc", params.userId);
+        assertEquals(3, params.count);
+    }
+
+    @Test
+    public void encodesWithEncoder() throws Exception {
+        NegotiatingCodec codec = new NegotiatingCodec(new CborCodec(), ImmutableList.of(new CborCodec()));
+        assertEquals(CborCodec.MARKER, codec.getMarker());
+        assertTrue(codec.encode(message).startsWith(CborCodec.MARKER));
+    }
+
+    @Test(expected=JsonParseException.class)
+    public void failsOnUnknownFormat() throws Exception {
+        NegotiatingCodec codec = new NegotiatingCodec(new CborCodec(), ImmutableList.of(new CborCodec()));
+        codec.createParser("{\"method\":\"map\"}");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void cborNeedsCborMapper() {
+        new CborCodec(new ObjectMapper());
+    }
+}
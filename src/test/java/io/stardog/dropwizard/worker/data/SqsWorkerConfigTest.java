@@ -0,0 +1,34 @@
+package io.stardog.dropwizard.worker.data;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SqsWorkerConfigTest {
+    @Test
+    public void testDefault() throws Exception {
+        SqsWorkerConfig config = SqsWorkerConfig.builder().build();
+        assertEquals(10, config.getMaxNumberOfMessages());
+        assertEquals(20, config.getWaitTimeSeconds());
+    }
+
+    @Test
+    public void testDeserialize() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        String json = "{\"maxNumberOfMessages\":5,\"waitTimeSeconds\":0}";
+        SqsWorkerConfig config = mapper.readValue(json, SqsWorkerConfig.class);
+        assertEquals(5, config.getMaxNumberOfMessages());
+        assertEquals(0, config.getWaitTimeSeconds());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBatchSize() {
+        SqsWorkerConfig.builder().maxNumberOfMessages(11).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxShutdownMillis() {
+        SqsWorkerConfig.builder().maxShutdownMillis(-1).build();
+    }
+}
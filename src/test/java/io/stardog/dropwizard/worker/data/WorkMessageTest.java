@@ -32,4 +32,16 @@ public class WorkMessageTest {
         String toJson = mapper.writeValueAsString(message);
         assertEquals(json.replace('\'', '"'), toJson);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void typedParamsAreCopiedAndCompared() throws Exception {
+        WorkMessage message = WorkMessage.ofTyped("methodName", ImmutableMap.of("param1", "value"), null);
+        WorkMessage copy = message.withId("id").withPriority(Priority.HIGH);
+        assertEquals(message.getTypedParams(), copy.getTypedParams());
+        assertNotEquals(WorkMessage.ofTyped("methodName", ImmutableMap.of("param1", "other"), null), message);
+        assertEquals(WorkMessage.ofTyped("methodName", ImmutableMap.of("param1", "value"), null), message);
+
+        String toJson = new ObjectMapper().registerModule(new Jdk8Module()).writeValueAsString(message);
+        assertEquals("{\"method\":\"methodName\",\"params\":{}}", toJson);
+    }
+}
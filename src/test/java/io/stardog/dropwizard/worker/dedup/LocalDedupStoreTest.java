@@ -0,0 +1,30 @@
+package io.stardog.dropwizard.worker.dedup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocalDedupStoreTest {
+    @Test
+    public void markIfAbsent() throws Exception {
+        LocalDedupStore store = new LocalDedupStore(100);
+        assertTrue(store.markIfAbsent("a", 50));
+        assertFalse(store.markIfAbsent("a", 50));
+        assertTrue(store.markIfAbsent("b", 50));
+
+        store.remove("b");
+        assertTrue(store.markIfAbsent("b", 50));
+
+        Thread.sleep(60);
+        assertTrue(store.markIfAbsent("a", 50));
+    }
+
+    @Test
+    public void evictsBeyondMaximumSize() {
+        LocalDedupStore store = new LocalDedupStore(10);
+        for (int i = 0; i < 100; i++) {
+            store.markIfAbsent("key" + i, 60000);
+        }
+        assertTrue(store.size() <= 10);
+    }
+}
@@ -0,0 +1,36 @@
+package io.stardog.dropwizard.worker.dedup;
+
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class RedisDedupStoreTest {
+    @Test
+    public void markIfAbsent() {
+        JedisPool jedisPool = mock(JedisPool.class);
+        Jedis jedis = mock(Jedis.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
+        when(jedis.set("dedup:a", "1", "NX", "PX", 60000L)).thenReturn("OK");
+        when(jedis.set("dedup:b", "1", "NX", "PX", 60000L)).thenReturn(null);
+
+        RedisDedupStore store = new RedisDedupStore(jedisPool);
+        assertTrue(store.markIfAbsent("a", 60000));
+        assertFalse(store.markIfAbsent("b", 60000));
+        verify(jedis, times(2)).close();
+    }
+
+    @Test
+    public void remove() {
+        JedisPool jedisPool = mock(JedisPool.class);
+        Jedis jedis = mock(Jedis.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
+
+        new RedisDedupStore(jedisPool, "seen:").remove("a");
+
+        verify(jedis).del("seen:a");
+        verify(jedis).close();
+    }
+}
@@ -0,0 +1,158 @@
+package io.stardog.dropwizard.worker.journal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.JournalConfig;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JournalQueueTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("journal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private final WorkMethods methods = WorkMethods.of(ImmutableList.of());
+
+    @Test
+    public void spillsToDiskInOrder() throws Exception {
+        JournalQueue queue = new JournalQueue(config(JournalConfig.MIN_SEGMENT_BYTES), 3, methods);
+        assertEquals(0, queue.open());
+        for (int i = 0; i < 50; i++) {
+            assertTrue(queue.offer(message(i)));
+        }
+        assertEquals(50, queue.size());
+        assertEquals(47, queue.getSpilled());
+        assertTrue(queue.getSegments() > 1);
+
+        assertEquals(range(0, 50), takeAll(queue));
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+        queue.close();
+    }
+
+    @Test
+    public void replaysUnackedOnOpen() throws Exception {
+        JournalConfig config = config(JournalConfig.MIN_SEGMENT_BYTES);
+        JournalQueue queue = new JournalQueue(config, 100, methods);
+        queue.open();
+        for (int i = 0; i < 5; i++) {
+            queue.offer(message(i));
+        }
+        queue.ack(queue.poll());
+        queue.ack(queue.poll());
+        WorkMessage unfinished = queue.poll();
+        queue.close();
+
+        JournalQueue reopened = new JournalQueue(config, 100, methods);
+        assertEquals(3, reopened.open());
+        WorkMessage replayed = reopened.poll();
+        assertEquals(2, replayed.getParams().get("n"));
+        // the same message keeps the same id, so that it can be deduplicated
+        assertEquals(unfinished.getId(), replayed.getId());
+        reopened.ack(replayed);
+        assertEquals(range(3, 5), takeAll(reopened));
+        reopened.close();
+
+        assertEquals(0, new JournalQueue(config, 100, methods).open());
+    }
+
+    @Test
+    public void deletesConsumedSegments() throws Exception {
+        JournalQueue queue = new JournalQueue(config(JournalConfig.MIN_SEGMENT_BYTES), 100, methods);
+        queue.open();
+        for (int i = 0; i < 100; i++) {
+            queue.offer(message(i));
+        }
+        int segments = queue.getSegments();
+        assertTrue(segments > 2);
+
+        takeAll(queue);
+        assertEquals(1, queue.getSegments());
+        assertEquals(1, directory.listFiles((dir, name) -> name.endsWith(".segment")).length);
+        queue.close();
+    }
+
+    @Test
+    public void retriesUntilMaxAttempts() throws Exception {
+        JournalConfig config = JournalConfig.builder().directory(directory.getPath()).maxAttempts(3).build();
+        JournalQueue queue = new JournalQueue(config, 100, methods);
+        queue.open();
+        queue.offer(message(0));
+        queue.offer(message(1));
+        assertTrue(queue.retry(queue.poll()));
+        assertTrue(queue.retry(queue.poll()));
+        queue.close();
+
+        // the attempts made are kept in the journal, so a restart doesn't start the count over
+        JournalQueue reopened = new JournalQueue(config, 100, methods);
+        assertEquals(2, reopened.open());
+        WorkMessage retried = reopened.poll();
+        assertEquals(0, retried.getParams().get("n"));
+        assertTrue(reopened.retry(retried));
+        reopened.ack(reopened.poll());
+        assertFalse(reopened.retry(reopened.poll()));
+        assertNull(reopened.poll());
+        reopened.close();
+
+        assertEquals(0, new JournalQueue(config, 100, methods).open());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMessageLargerThanSegment() throws Exception {
+        JournalQueue queue = new JournalQueue(config(JournalConfig.MIN_SEGMENT_BYTES), 100, methods);
+        queue.open();
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < JournalConfig.MIN_SEGMENT_BYTES; i++) {
+            large.append('x');
+        }
+        queue.offer(WorkMessage.of("test", ImmutableMap.of("large", large.toString())));
+    }
+
+    private JournalConfig config(int segmentBytes) {
+        return JournalConfig.builder().directory(directory.getPath()).segmentBytes(segmentBytes).build();
+    }
+
+    private WorkMessage message(int n) {
+        return WorkMessage.of("test", ImmutableMap.of("n", n));
+    }
+
+    private List<Object> takeAll(JournalQueue queue) {
+        List<Object> taken = new ArrayList<>();
+        WorkMessage message;
+        while ((message = queue.poll()) != null) {
+            taken.add(message.getParams().get("n"));
+            queue.ack(message);
+        }
+        return taken;
+    }
+
+    private List<Object> range(int from, int to) {
+        List<Object> range = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+}
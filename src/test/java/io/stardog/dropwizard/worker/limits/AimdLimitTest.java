@@ -0,0 +1,50 @@
+package io.stardog.dropwizard.worker.limits;
+
+import io.stardog.dropwizard.worker.data.ConcurrencyLimitConfig;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AimdLimitTest {
+    private final ConcurrencyLimitConfig config = ConcurrencyLimitConfig.builder()
+            .initialLimit(4).maxLimit(10).windowSize(10).targetDelayMillis(100).maxLatencyMillis(50).build();
+
+    @Test
+    public void growsOneThreadPerWindowWithBacklog() {
+        AimdLimit limit = new AimdLimit(config);
+        sample(limit, 9, 500, 10, false);
+        assertEquals(4, limit.getLimit());
+        sample(limit, 1, 500, 10, false);
+        assertEquals(5, limit.getLimit());
+
+        sample(limit, 100, 500, 10, false);
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    public void holdsWithoutBacklog() {
+        AimdLimit limit = new AimdLimit(config);
+        sample(limit, 50, 10, 10, false);
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void backsOffOnErrorsAndLatency() {
+        AimdLimit limit = new AimdLimit(config.toBuilder().initialLimit(10).build());
+        sample(limit, 10, 500, 10, true);
+        assertEquals(9, limit.getLimit());
+        sample(limit, 10, 500, 200, false);
+        assertEquals(8, limit.getLimit());
+
+        sample(limit, 1000, 500, 10, true);
+        assertEquals(1, limit.getLimit());
+    }
+
+    static void sample(WindowedLimit limit, int count, long delayMillis, long processingMillis, boolean failed) {
+        for (int i = 0; i < count; i++) {
+            limit.onMessage(delayMillis, TimeUnit.MILLISECONDS.toNanos(processingMillis), failed);
+        }
+    }
+}
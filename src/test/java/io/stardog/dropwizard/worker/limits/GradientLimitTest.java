@@ -0,0 +1,43 @@
+package io.stardog.dropwizard.worker.limits;
+
+import io.stardog.dropwizard.worker.data.ConcurrencyLimitConfig;
+import org.junit.Test;
+
+import static io.stardog.dropwizard.worker.limits.AimdLimitTest.sample;
+import static org.junit.Assert.*;
+
+public class GradientLimitTest {
+    private final ConcurrencyLimitConfig config = ConcurrencyLimitConfig.builder()
+            .initialLimit(1).maxLimit(50).windowSize(10).targetDelayMillis(100).build();
+
+    @Test
+    public void growsWhileLatencyHolds() {
+        GradientLimit limit = new GradientLimit(config);
+        sample(limit, 2000, 500, 10, false);
+        assertEquals(50, limit.getLimit());
+    }
+
+    @Test
+    public void holdsWithoutBacklog() {
+        GradientLimit limit = new GradientLimit(config.toBuilder().initialLimit(5).build());
+        sample(limit, 500, 10, 10, false);
+        assertEquals(5, limit.getLimit());
+    }
+
+    @Test
+    public void shrinksWhenLatencyRises() {
+        GradientLimit limit = new GradientLimit(config.toBuilder().initialLimit(40).build());
+        sample(limit, 100, 500, 10, false);
+        int before = limit.getLimit();
+
+        sample(limit, 100, 500, 100, false);
+        assertTrue(limit.getLimit() < before * 2 / 3);
+    }
+
+    @Test
+    public void backsOffOnErrors() {
+        GradientLimit limit = new GradientLimit(config.toBuilder().initialLimit(40).build());
+        sample(limit, 100, 500, 10, true);
+        assertTrue(limit.getLimit() < 40);
+    }
+}
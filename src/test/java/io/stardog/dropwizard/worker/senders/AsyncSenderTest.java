@@ -0,0 +1,184 @@
+package io.stardog.dropwizard.worker.senders;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.data.AsyncSenderConfig;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.Sender;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncSenderTest {
+    @Test
+    public void flushesOnBatchSize() throws Exception {
+        RecordingSender recorder = new RecordingSender();
+        AsyncSender sender = new AsyncSender("test", recorder,
+                AsyncSenderConfig.builder().maxBatchSize(5).lingerMillis(60000).build(), new MetricRegistry());
+        sender.start();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(sender.sendAsync(WorkMessage.of("test", ImmutableMap.of("i", i))));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(1, recorder.batches.size());
+        assertEquals(5, recorder.batches.get(0).size());
+
+        sender.stop();
+    }
+
+    @Test
+    public void flushesOnLinger() throws Exception {
+        RecordingSender recorder = new RecordingSender();
+        AsyncSender sender = new AsyncSender("test", recorder,
+                AsyncSenderConfig.builder().maxBatchSize(100).lingerMillis(20).build(), new MetricRegistry());
+        sender.start();
+
+        sender.sendAsync(WorkMessage.of("test")).get(5, TimeUnit.SECONDS);
+        assertEquals(1, recorder.batches.size());
+
+        sender.stop();
+    }
+
+    @Test
+    public void flushesOnStop() throws Exception {
+        RecordingSender recorder = new RecordingSender();
+        AsyncSender sender = new AsyncSender("test", recorder,
+                AsyncSenderConfig.builder().maxBatchSize(100).lingerMillis(60000).build(), new MetricRegistry());
+        sender.start();
+
+        CompletableFuture<Void> future = sender.sendAsync(WorkMessage.of("test"));
+        sender.stop();
+
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+        assertEquals(1, recorder.batches.size());
+    }
+
+    @Test
+    public void reportsFailuresPerMessage() throws Exception {
+        Sender failingSecond = new Sender() {
+            @Override
+            public void send(WorkMessage message) {
+                if ("fail".equals(message.getMethod())) {
+                    throw new IllegalStateException("boom");
+                }
+            }
+        };
+        AsyncSender sender = new AsyncSender("test", failingSecond,
+                AsyncSenderConfig.builder().maxBatchSize(2).lingerMillis(60000).build(), new MetricRegistry());
+        sender.start();
+
+        CompletableFuture<Void> ok = sender.sendAsync(WorkMessage.of("ok"));
+        CompletableFuture<Void> fail = sender.sendAsync(WorkMessage.of("fail"));
+        ok.get(5, TimeUnit.SECONDS);
+        try {
+            fail.get(5, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        sender.stop();
+    }
+
+    @Test
+    public void failsWhenFull() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Sender blocking = new Sender() {
+            @Override
+            public void send(WorkMessage message) {
+                sending.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        AsyncSender sender = new AsyncSender("test", blocking,
+                AsyncSenderConfig.builder().maxBatchSize(1).bufferCapacity(1).blockWhenFull(false).build(), new MetricRegistry());
+        sender.start();
+
+        // the first message holds up the flusher, and the second fills the buffer
+        CompletableFuture<Void> first = sender.sendAsync(WorkMessage.of("test"));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> second = sender.sendAsync(WorkMessage.of("test"));
+        try {
+            sender.send(WorkMessage.of("test"));
+            fail("Expected exception");
+        } catch (RejectedExecutionException e) {
+            // okay
+        }
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        sender.stop();
+    }
+
+    @Test(expected=RejectedExecutionException.class)
+    public void failsWhenNotRunning() {
+        AsyncSender sender = new AsyncSender("test", new RecordingSender(),
+                AsyncSenderConfig.builder().build(), new MetricRegistry());
+        sender.send(WorkMessage.of("test"));
+    }
+
+    @Test
+    public void flushesOnBatchBytesAsSizedBySender() throws Exception {
+        RecordingSender recorder = new RecordingSender();
+        AsyncSender sender = new AsyncSender("test", recorder,
+                AsyncSenderConfig.builder().maxBatchSize(100).maxBatchBytes(250).lingerMillis(60000).build(),
+                new MetricRegistry());
+        sender.start();
+
+        CompletableFuture<Void> first = sender.sendAsync(WorkMessage.of("test"));
+        CompletableFuture<Void> second = sender.sendAsync(WorkMessage.of("test"));
+        CompletableFuture<Void> third = sender.sendAsync(WorkMessage.of("test"));
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertFalse(third.isDone());
+        assertEquals(2, recorder.batches.get(0).size());
+
+        sender.stop();
+        third.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void rejectsInvalidConfig() {
+        AsyncSenderConfig.builder().maxBatchSize(0).build();
+    }
+
+    private static class RecordingSender implements Sender {
+        private final List<List<WorkMessage>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void send(WorkMessage message) {
+            sendBatch(java.util.Collections.singletonList(message));
+        }
+
+        @Override
+        public void sendBatch(Collection<WorkMessage> messages) {
+            batches.add(new ArrayList<>(messages));
+        }
+
+        @Override
+        public int sizeOf(WorkMessage message) {
+            return 100;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.stardog.dropwizard.worker.senders;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.data.Priority;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.interfaces.Sender;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PrioritySenderTest {
+    @Test
+    public void sendsThroughLaneForPriority() {
+        List<WorkMessage> high = new ArrayList<>();
+        List<WorkMessage> normal = new ArrayList<>();
+        PrioritySender sender = new PrioritySender(ImmutableMap.of(Priority.HIGH, high::add, Priority.NORMAL, normal::add));
+
+        sender.send(WorkMessage.of("urgent").withPriority(Priority.HIGH));
+        sender.send(WorkMessage.of("regular"));
+        sender.send(WorkMessage.of("backfill").withPriority(Priority.LOW));
+
+        assertEquals(ImmutableList.of("urgent"), methods(high));
+        // there's no LOW lane, so LOW messages go through NORMAL
+        assertEquals(ImmutableList.of("regular", "backfill"), methods(normal));
+    }
+
+    @Test
+    public void batchFailuresKeepTheirPositions() {
+        List<WorkMessage> normal = new ArrayList<>();
+        Sender failing = message -> {
+            throw new IllegalStateException("down");
+        };
+        PrioritySender sender = new PrioritySender(normal::add, normal::add, failing);
+
+        List<WorkMessage> batch = ImmutableList.of(
+                WorkMessage.of("a"),
+                WorkMessage.of("b").withPriority(Priority.LOW),
+                WorkMessage.of("c").withPriority(Priority.HIGH),
+                WorkMessage.of("d").withPriority(Priority.LOW));
+        try {
+            sender.sendBatch(batch);
+            fail("Expected BatchSendException");
+        } catch (BatchSendException e) {
+            assertEquals(ImmutableList.of(1, 3), new ArrayList<>(e.getFailures().keySet()));
+            assertEquals(ImmutableList.of("b", "d"), methods(e.getFailedMessages()));
+        }
+        assertEquals(ImmutableList.of("a", "c"), methods(normal));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresNormalLane() {
+        List<WorkMessage> high = new ArrayList<>();
+        new PrioritySender(ImmutableMap.of(Priority.HIGH, high::add));
+    }
+
+    private static List<String> methods(List<WorkMessage> messages) {
+        List<String> methods = new ArrayList<>();
+        for (WorkMessage message : messages) {
+            methods.add(message.getMethod());
+        }
+        return methods;
+    }
+}
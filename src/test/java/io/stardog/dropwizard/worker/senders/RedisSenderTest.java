@@ -0,0 +1,89 @@
+package io.stardog.dropwizard.worker.senders;
+
+import com.google.common.collect.ImmutableList;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class RedisSenderTest {
+    @Test
+    public void sendPublishes() {
+        JedisPool jedisPool = mock(JedisPool.class);
+        Jedis jedis = mock(Jedis.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
+
+        new RedisSender(jedisPool, "channel").send(WorkMessage.of("test"));
+
+        verify(jedis).publish("channel", "{\"method\":\"test\",\"params\":{}}");
+        verify(jedis, never()).lpush(any(String.class), any());
+        verify(jedis).close();
+    }
+
+    @Test
+    public void sendQueues() {
+        JedisPool jedisPool = mock(JedisPool.class);
+        Jedis jedis = mock(Jedis.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
+
+        new RedisSender(jedisPool, "queue", RedisSender.Mode.QUEUE).send(WorkMessage.of("test"));
+
+        verify(jedis).lpush("queue", "{\"method\":\"test\",\"params\":{}}");
+        verify(jedis, never()).publish(any(String.class), any(String.class));
+        verify(jedis).close();
+    }
+
+    @Test
+    public void sendBatchPipelinesOverOneConnection() {
+        JedisPool jedisPool = mock(JedisPool.class);
+        Jedis jedis = mock(Jedis.class);
+        Pipeline pipeline = mock(Pipeline.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
+        when(jedis.pipelined()).thenReturn(pipeline);
+
+        new RedisSender(jedisPool, "channel").sendBatch(ImmutableList.of(
+                WorkMessage.of("a"), WorkMessage.of("b"), WorkMessage.of("c")));
+
+        verify(jedisPool, times(1)).getResource();
+        verify(pipeline, times(3)).publish(any(String.class), any(String.class));
+        verify(pipeline, times(1)).sync();
+        verify(jedis, never()).publish(any(String.class), any(String.class));
+        verify(jedis).close();
+    }
+
+    @Test
+    public void sendBatchQueuesInOnePush() {
+        JedisPool jedisPool = mock(JedisPool.class);
+        Jedis jedis = mock(Jedis.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
+
+        new RedisSender(jedisPool, "queue", RedisSender.Mode.QUEUE).sendBatch(ImmutableList.of(
+                WorkMessage.of("a"), WorkMessage.of("b")));
+
+        verify(jedis).lpush("queue", "{\"method\":\"a\",\"params\":{}}", "{\"method\":\"b\",\"params\":{}}");
+        verify(jedis).close();
+    }
+
+    @Test
+    public void sendBatchReportsFailures() {
+        JedisPool jedisPool = mock(JedisPool.class);
+        Jedis jedis = mock(Jedis.class);
+        Pipeline pipeline = mock(Pipeline.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
+        when(jedis.pipelined()).thenReturn(pipeline);
+        doThrow(new IllegalStateException("boom")).when(pipeline).sync();
+
+        try {
+            new RedisSender(jedisPool, "channel").sendBatch(ImmutableList.of(WorkMessage.of("a"), WorkMessage.of("b")));
+            fail("Expected exception");
+        } catch (BatchSendException e) {
+            assertEquals(2, e.getFailures().size());
+        }
+        verify(jedis).close();
+    }
+}
@@ -0,0 +1,109 @@
+package io.stardog.dropwizard.worker.senders;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.GetQueueUrlResult;
+import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class SqsSenderTest {
+    private AmazonSQS sqsClient;
+    private SqsSender sender;
+
+    @Before
+    public void setUp() {
+        sqsClient = mock(AmazonSQS.class);
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        sender = new SqsSender(sqsClient, "test-sqs", null);
+    }
+
+    @Test
+    public void sendCachesQueueUrl() {
+        sender.send(WorkMessage.of("test"));
+        sender.send(WorkMessage.of("test"));
+
+        verify(sqsClient, times(1)).getQueueUrl("test-sqs");
+        verify(sqsClient, times(2)).sendMessage(argThat((SendMessageRequest r) -> "https://example.com/url".equals(r.getQueueUrl())));
+    }
+
+    @Test
+    public void sendResolvesUrlAgainWhenQueueIsMissing() {
+        when(sqsClient.sendMessage(any(SendMessageRequest.class)))
+                .thenThrow(new QueueDoesNotExistException("gone"))
+                .thenReturn(new SendMessageResult());
+
+        sender.send(WorkMessage.of("test"));
+
+        verify(sqsClient, times(2)).getQueueUrl("test-sqs");
+        verify(sqsClient, times(2)).sendMessage(any());
+    }
+
+    @Test
+    public void sendBatchSplitsIntoBatchesOfTen() {
+        List<WorkMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            messages.add(WorkMessage.of("test", ImmutableMap.of("i", i)));
+        }
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(new SendMessageBatchResult());
+
+        sender.sendBatch(messages);
+
+        verify(sqsClient, times(2)).sendMessageBatch(argThat((SendMessageBatchRequest r) -> r.getEntries().size() == 10));
+        verify(sqsClient, times(1)).sendMessageBatch(argThat((SendMessageBatchRequest r) -> r.getEntries().size() == 5));
+    }
+
+    @Test
+    public void sendBatchSplitsOnPayloadSize() {
+        String big = Strings.repeat("x", 100000);
+        List<WorkMessage> messages = ImmutableList.of(
+                WorkMessage.of("test", ImmutableMap.of("data", big)),
+                WorkMessage.of("test", ImmutableMap.of("data", big)),
+                WorkMessage.of("test", ImmutableMap.of("data", big)));
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(new SendMessageBatchResult());
+
+        sender.sendBatch(messages);
+
+        verify(sqsClient, times(1)).sendMessageBatch(argThat((SendMessageBatchRequest r) -> r.getEntries().size() == 2));
+        verify(sqsClient, times(1)).sendMessageBatch(argThat((SendMessageBatchRequest r) -> r.getEntries().size() == 1));
+    }
+
+    @Test
+    public void sendBatchReportsPartialFailures() {
+        List<WorkMessage> messages = ImmutableList.of(
+                WorkMessage.of("first"),
+                WorkMessage.of("second", ImmutableMap.of("data", Strings.repeat("x", SqsSender.MAX_PAYLOAD_BYTES))),
+                WorkMessage.of("third"));
+        when(sqsClient.sendMessageBatch(any(SendMessageBatchRequest.class)))
+                .thenReturn(new SendMessageBatchResult().withFailed(
+                        new BatchResultErrorEntry().withId("2").withCode("InternalError").withSenderFault(false)));
+
+        try {
+            sender.sendBatch(messages);
+            fail("Expected BatchSendException");
+        } catch (BatchSendException e) {
+            assertEquals(ImmutableList.of(1, 2), new ArrayList<>(e.getFailures().keySet()));
+            assertEquals("second", e.getFailedMessages().get(0).getMethod());
+            assertEquals("third", e.getFailedMessages().get(1).getMethod());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.stardog.dropwizard.worker.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.dedup.LocalDedupStore;
+import io.stardog.dropwizard.worker.interfaces.DedupStore;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DeduplicatorTest {
+    @Test
+    public void skipsDuplicateMessageIds() {
+        MetricRegistry metrics = new MetricRegistry();
+        Deduplicator dedup = new Deduplicator("test", new LocalDedupStore(100), Deduplicator.byMessageId(), 60000, metrics);
+        AtomicInteger count = new AtomicInteger();
+        WorkMethod method = WorkMethod.of("test", p -> { count.incrementAndGet(); }).withDedup(dedup);
+
+        assertTrue(method.apply(WorkMessage.of("test").withId("a")));
+        assertTrue(method.apply(WorkMessage.of("test").withId("a")));
+        assertTrue(method.apply(WorkMessage.of("test").withId("b")));
+        assertEquals(2, count.get());
+
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.util.Deduplicator.test.hit").getCount());
+        assertEquals(2, metrics.meter("io.stardog.dropwizard.worker.util.Deduplicator.test.miss").getCount());
+        Gauge hitRate = metrics.getGauges().get("io.stardog.dropwizard.worker.util.Deduplicator.test.hitRate");
+        assertEquals(1.0 / 3, (Double)hitRate.getValue(), 0.0001);
+    }
+
+    @Test
+    public void keysTypedParams() {
+        Deduplicator dedup = new Deduplicator("test", new LocalDedupStore(100), Deduplicator.byParam("orderId"), 60000, new MetricRegistry());
+        Deduplicator typedDedup = new Deduplicator("typed", new LocalDedupStore(100),
+                Deduplicator.byTypedParams(OrderParams.class, p -> p.orderId), 60000, new MetricRegistry());
+        AtomicInteger count = new AtomicInteger();
+        WorkMethod method = WorkMethod.fn("test", WorkerDefaults.MAPPER, OrderParams.class, p -> count.incrementAndGet() > 0);
+
+        for (WorkMethod deduped : new WorkMethod[] { method.withDedup(dedup), method.withDedup(typedDedup) }) {
+            deduped.apply(WorkMessage.ofTyped("test", new OrderParams(12), null));
+            deduped.apply(WorkMessage.ofTyped("test", new OrderParams(12), null));
+            deduped.apply(WorkMessage.ofTyped("test", new OrderParams(13), null));
+        }
+        assertEquals(4, count.get());
+    }
+
+    public static class OrderParams {
+        public int orderId;
+
+        public OrderParams() {
+        }
+
+        OrderParams(int orderId) {
+            this.orderId = orderId;
+        }
+    }
+
+    @Test
+    public void keysByParam() {
+        Deduplicator dedup = new Deduplicator("test", new LocalDedupStore(100), Deduplicator.byParam("orderId"), 60000, new MetricRegistry());
+        AtomicInteger count = new AtomicInteger();
+        WorkMethod method = WorkMethod.of("test", p -> { count.incrementAndGet(); }).withDedup(dedup);
+
+        method.apply(WorkMessage.of("test", ImmutableMap.of("orderId", 12)));
+        method.apply(WorkMessage.of("test", ImmutableMap.of("orderId", 12)));
+        method.apply(WorkMessage.of("test", ImmutableMap.of("orderId", 13)));
+        // no key, so never skipped
+        method.apply(WorkMessage.of("test"));
+        method.apply(WorkMessage.of("test"));
+        assertEquals(4, count.get());
+    }
+
+    @Test
+    public void forgetsFailedMessages() {
+        Deduplicator dedup = new Deduplicator("test", new LocalDedupStore(100), Deduplicator.byMessageId(), 60000, new MetricRegistry());
+        AtomicInteger count = new AtomicInteger();
+        WorkMethod method = WorkMethod.of("test", p -> {
+            if (count.incrementAndGet() == 1) {
+                throw new IllegalStateException("failed");
+            }
+        }).withDedup(dedup);
+
+        try {
+            method.apply(WorkMessage.of("test").withId("a"));
+            fail("Expected exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertTrue(method.apply(WorkMessage.of("test").withId("a")));
+        assertTrue(method.apply(WorkMessage.of("test").withId("a")));
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void processesWhenStoreFails() {
+        DedupStore broken = new DedupStore() {
+            @Override
+            public boolean markIfAbsent(String key, long ttlMillis) {
+                throw new IllegalStateException("unreachable");
+            }
+
+            @Override
+            public void remove(String key) {
+            }
+        };
+        MetricRegistry metrics = new MetricRegistry();
+        Deduplicator dedup = new Deduplicator("test", broken, Deduplicator.byMessageId(), 60000, metrics);
+        AtomicInteger count = new AtomicInteger();
+        WorkMethod method = WorkMethod.of("test", p -> { count.incrementAndGet(); }).withDedup(dedup);
+
+        method.apply(WorkMessage.of("test").withId("a"));
+        method.apply(WorkMessage.of("test").withId("a"));
+        assertEquals(2, count.get());
+        assertEquals(2, metrics.meter("io.stardog.dropwizard.worker.util.Deduplicator.test.error").getCount());
+    }
+}
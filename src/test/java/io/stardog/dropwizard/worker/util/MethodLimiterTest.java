@@ -0,0 +1,42 @@
+package io.stardog.dropwizard.worker.util;
+
+import io.stardog.dropwizard.worker.data.MethodLimitConfig;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MethodLimiterTest {
+    @Test
+    public void capsConcurrency() {
+        MethodLimiter limiter = new MethodLimiter(MethodLimitConfig.builder().maxConcurrent(2).build());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+
+        limiter.release();
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void limitsRate() throws Exception {
+        MethodLimiter limiter = new MethodLimiter(MethodLimitConfig.builder().ratePerSecond(20).burst(3).build());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        // a token every 50ms
+        Thread.sleep(120);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void rateLimitedAcquireGivesBackPermit() {
+        MethodLimiter limiter = new MethodLimiter(MethodLimitConfig.builder().maxConcurrent(1).ratePerSecond(0.001).build());
+        assertTrue(limiter.tryAcquire());
+        limiter.release();
+        assertFalse(limiter.tryAcquire());
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,86 @@
+package io.stardog.dropwizard.worker.util;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RingBufferQueueTest {
+    @Test
+    public void boundedFifo() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(3);
+        assertEquals(4, queue.capacity());
+        assertNull(queue.poll());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+        assertEquals(Integer.valueOf(0), queue.peek());
+        assertEquals(ImmutableList.of(0, 1, 2, 3), ImmutableList.copyOf(queue));
+
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(4));
+        List<Integer> drained = new ArrayList<>();
+        Integer next;
+        while ((next = queue.poll()) != null) {
+            drained.add(next);
+        }
+        assertEquals(ImmutableList.of(1, 2, 3, 4), drained);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void concurrentProducersAndConsumers() throws Exception {
+        int producers = 4;
+        int consumers = 4;
+        int perProducer = 50000;
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(64);
+        Set<Integer> seen = ConcurrentHashMap.newKeySet();
+        AtomicInteger taken = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(producers + consumers);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            executor.submit(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!queue.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            executor.submit(() -> {
+                while (taken.get() < producers * perProducer) {
+                    Integer value = queue.poll();
+                    if (value == null) {
+                        Thread.yield();
+                    } else {
+                        assertTrue(seen.add(value));
+                        taken.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(producers * perProducer, seen.size());
+        assertTrue(queue.isEmpty());
+    }
+}
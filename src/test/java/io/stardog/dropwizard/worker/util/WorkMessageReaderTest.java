@@ -0,0 +1,71 @@
+package io.stardog.dropwizard.worker.util;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class WorkMessageReaderTest {
+    public static class EmailParams {
+        public String userId;
+        public int count;
+    }
+
+    private final AtomicReference<EmailParams> lastEmail = new AtomicReference<>();
+    private final WorkMethods methods = WorkMethods.of(ImmutableList.of(
+            WorkMethod.fn("email", WorkerDefaults.MAPPER, EmailParams.class, p -> {
+                lastEmail.set(p);
+                return true;
+            }),
+            WorkMethod.of("map", p -> { })));
+    private final WorkMessageReader reader = new WorkMessageReader(WorkerDefaults.MAPPER, methods);
+
+    @Test
+    public void readsTypedParamsDirectly() throws Exception {
+        WorkMessage message = reader.read("{\"method\":\"email\",\"params\":{\"userId\":\"abc\",\"count\":3},\"at\":1515531600.000000000}");
+        assertEquals("email", message.getMethod());
+        assertEquals(Instant.ofEpochMilli(1515531600000L), message.getQueueAt().get());
+        assertTrue(message.getParams().isEmpty());
+        assertTrue(message.getTypedParams() instanceof EmailParams);
+
+        assertTrue(methods.getMethod("email").apply(message));
+        assertEquals("abc", lastEmail.get().userId);
+        assertEquals(3, lastEmail.get().count);
+    }
+
+    @Test
+    public void readsTypedParamsBeforeMethod() throws Exception {
+        WorkMessage message = reader.read("{\"params\":{\"userId\":\"abc\",\"count\":3},\"method\":\"email\"}");
+        assertEquals("abc", ((EmailParams)message.getTypedParams()).userId);
+    }
+
+    @Test
+    public void readsMapParams() throws Exception {
+        String json = WorkerDefaults.MAPPER.writeValueAsString(WorkMessage.of("map", ImmutableMap.of("a", 1, "b", "two")));
+        WorkMessage message = reader.read(json);
+        assertEquals(WorkerDefaults.MAPPER.readValue(json, WorkMessage.class), message);
+        assertNull(message.getTypedParams());
+
+        // unknown methods get map params too, and fail when they are processed
+        assertEquals(ImmutableMap.of("a", 1), reader.read("{\"method\":\"unknown\",\"params\":{\"a\":1}}").getParams());
+        assertEquals(WorkMessage.of("map"), reader.read("{\"method\":\"map\"}"));
+    }
+
+    @Test(expected=JsonMappingException.class)
+    public void failsWithoutMethod() throws Exception {
+        reader.read("{\"params\":{}}");
+    }
+
+    @Test(expected=JsonMappingException.class)
+    public void failsOnUnknownField() throws Exception {
+        reader.read("{\"method\":\"map\",\"other\":1}");
+    }
+}
@@ -0,0 +1,55 @@
+package io.stardog.dropwizard.worker.util;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+public class WorkerMetricsTest {
+    @Test
+    public void registersMetricsUpFront() {
+        MetricRegistry metrics = new MetricRegistry();
+        new WorkerMetrics(metrics, WorkerMetricsTest.class, "test",
+                WorkMethods.of(ImmutableList.of(WorkMethod.of("known", p -> { }))));
+
+        assertTrue(metrics.getMeters().containsKey(MetricRegistry.name(WorkerMetricsTest.class, "test", "received")));
+        assertTrue(metrics.getMeters().containsKey(MetricRegistry.name(WorkerMetricsTest.class, "test", "error", "known")));
+        assertTrue(metrics.getTimers().containsKey(MetricRegistry.name(WorkerMetricsTest.class, "test", "timer", "known")));
+    }
+
+    @Test
+    public void forMethod() {
+        MetricRegistry metrics = new MetricRegistry();
+        WorkerMetrics workerMetrics = new WorkerMetrics(metrics, WorkerMetricsTest.class, "test",
+                WorkMethods.of(ImmutableList.of(WorkMethod.of("known", p -> { }))));
+
+        assertSame(workerMetrics.forMethod("known"), workerMetrics.forMethod("known"));
+        assertSame(metrics.timer(MetricRegistry.name(WorkerMetricsTest.class, "test", "timer", "known")),
+                workerMetrics.forMethod("known").getTimer());
+
+        // methods that aren't registered are added on first use
+        workerMetrics.recordError("unknown");
+        assertEquals(1, metrics.meter(MetricRegistry.name(WorkerMetricsTest.class, "test", "error", "unknown")).getCount());
+        assertEquals(1, workerMetrics.getError().getCount());
+    }
+
+    @Test
+    public void recordDelay() {
+        MetricRegistry metrics = new MetricRegistry();
+        WorkerMetrics workerMetrics = new WorkerMetrics(metrics, WorkerMetricsTest.class, "test",
+                WorkMethods.of(ImmutableList.of()));
+
+        workerMetrics.recordDelay(WorkMessage.of("test"));
+        assertEquals(0, workerMetrics.getDelay().getCount());
+
+        workerMetrics.recordDelay(WorkMessage.of("test", null, Instant.now().minusSeconds(2)));
+        assertEquals(1, workerMetrics.getDelay().getCount());
+        assertTrue(workerMetrics.getDelay().getSnapshot().getMax() >= 2_000_000_000L);
+    }
+}
@@ -0,0 +1,218 @@
+package io.stardog.dropwizard.worker.workers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.JournalConfig;
+import io.stardog.dropwizard.worker.data.LocalWorkerConfig;
+import io.stardog.dropwizard.worker.data.OverflowPolicy;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.journal.JournalQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LocalWorkerTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("journal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private final List<Object> processed = new ArrayList<>();
+    private final WorkMethods methods = WorkMethods.of(ImmutableList.of(
+            WorkMethod.of("test", p -> { processed.add(p.get("n")); })));
+
+    @Test
+    public void processesInBatches() {
+        LocalWorker worker = new LocalWorker(methods, LocalWorkerConfig.builder().batchSize(3).build());
+        for (int i = 0; i < 5; i++) {
+            worker.submitMessage(message(i));
+        }
+
+        assertTrue(worker.processMessages());
+        assertEquals(3, processed.size());
+        assertTrue(worker.processMessages());
+        assertEquals(5, processed.size());
+        assertFalse(worker.processMessages());
+    }
+
+    @Test
+    public void dropNewestWhenFull() {
+        MetricRegistry metrics = new MetricRegistry();
+        LocalWorker worker = new LocalWorker(methods, "test",
+                LocalWorkerConfig.builder().queueCapacity(2).overflowPolicy(OverflowPolicy.DROP_NEWEST).build(), metrics);
+        assertTrue(worker.submitMessage(message(0)));
+        assertTrue(worker.submitMessage(message(1)));
+        assertFalse(worker.submitMessage(message(2)));
+
+        assertEquals(2, metrics.getGauges().get("io.stardog.dropwizard.worker.workers.LocalWorker.test.depth").getValue());
+        assertEquals(1.0, metrics.getGauges().get("io.stardog.dropwizard.worker.workers.LocalWorker.test.utilization").getValue());
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.LocalWorker.test.dropped").getCount());
+
+        worker.processMessages();
+        assertEquals(ImmutableList.of(0, 1), processed);
+    }
+
+    @Test
+    public void dropOldestWhenFull() {
+        LocalWorker worker = new LocalWorker(methods,
+                LocalWorkerConfig.builder().queueCapacity(2).overflowPolicy(OverflowPolicy.DROP_OLDEST).build());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(worker.submitMessage(message(i)));
+        }
+        worker.processMessages();
+        assertEquals(ImmutableList.of(1, 2), processed);
+    }
+
+    @Test
+    public void callerRunsWhenFull() {
+        LocalWorker worker = new LocalWorker(methods,
+                LocalWorkerConfig.builder().queueCapacity(2).overflowPolicy(OverflowPolicy.CALLER_RUNS).build());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(worker.submitMessage(message(i)));
+        }
+        // the third ran straight away on the submitting thread
+        assertEquals(ImmutableList.of(2), processed);
+        worker.processMessages();
+        assertEquals(ImmutableList.of(2, 0, 1), processed);
+    }
+
+    @Test
+    public void blockWhenFull() throws Exception {
+        LocalWorker worker = new LocalWorker(methods,
+                LocalWorkerConfig.builder().queueCapacity(2).overflowPolicy(OverflowPolicy.BLOCK).build());
+        assertTrue(worker.submitMessage(message(0)));
+        assertTrue(worker.submitMessage(message(1)));
+        AtomicBoolean accepted = new AtomicBoolean();
+        Thread submitter = new Thread(() -> accepted.set(worker.submitMessage(message(2))));
+        submitter.start();
+
+        // the third waits for room, and gets it once the queue is processed
+        submitter.join(100);
+        assertTrue(submitter.isAlive());
+        worker.processMessages();
+        submitter.join(5000);
+        assertFalse(submitter.isAlive());
+        assertTrue(accepted.get());
+        worker.processMessages();
+        assertEquals(ImmutableList.of(0, 1, 2), processed);
+    }
+
+    @Test
+    public void defaultQueueIsUnbounded() {
+        LocalWorker worker = new LocalWorker(methods);
+        for (int i = 0; i < 20000; i++) {
+            assertTrue(worker.submitMessage(message(i)));
+        }
+        while (worker.processMessages()) {
+        }
+        assertEquals(20000, processed.size());
+    }
+
+    @Test
+    public void journalSurvivesRestart() throws Exception {
+        LocalWorkerConfig config = LocalWorkerConfig.builder().batchSize(2)
+                .journal(JournalConfig.builder().directory(directory.getPath()).build()).build();
+        LocalWorker worker = new LocalWorker(methods, config);
+        worker.start();
+        for (int i = 0; i < 5; i++) {
+            worker.submitMessage(message(i));
+        }
+        worker.processMessages();
+        worker.stop();
+        assertEquals(ImmutableList.of(0, 1), processed);
+
+        MetricRegistry metrics = new MetricRegistry();
+        LocalWorker restarted = new LocalWorker(methods, "test", config, metrics);
+        restarted.start();
+        assertEquals(3, metrics.meter("io.stardog.dropwizard.worker.workers.LocalWorker.test.replayed").getCount());
+        while (restarted.processMessages()) {
+        }
+        restarted.stop();
+        assertEquals(ImmutableList.of(0, 1, 2, 3, 4), processed);
+    }
+
+    @Test
+    public void journalRetriesFailedMessages() throws Exception {
+        AtomicInteger failures = new AtomicInteger(1);
+        WorkMethods flakyMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", p -> {
+                    if (p.get("n").equals(1) && failures.getAndDecrement() > 0) {
+                        throw new IllegalStateException("boom");
+                    }
+                    processed.add(p.get("n"));
+                })
+        ));
+        LocalWorkerConfig config = LocalWorkerConfig.builder()
+                .journal(JournalConfig.builder().directory(directory.getPath()).build()).build();
+        MetricRegistry metrics = new MetricRegistry();
+        LocalWorker worker = new LocalWorker(flakyMethods, "test", config, metrics);
+        worker.start();
+        for (int i = 0; i < 3; i++) {
+            worker.submitMessage(message(i));
+        }
+        assertTrue(worker.processMessages());
+        worker.stop();
+
+        // the failed message goes to the back of the journal and runs again
+        assertEquals(ImmutableList.of(0, 2, 1), processed);
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.LocalWorker.test.error").getCount());
+        assertEquals(0, metrics.meter("io.stardog.dropwizard.worker.workers.LocalWorker.test.dropped").getCount());
+    }
+
+    @Test
+    public void journalDropsMessagesThatKeepFailing() throws Exception {
+        WorkMethods poisonedMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", p -> {
+                    if (p.get("n").equals(0)) {
+                        throw new IllegalStateException("boom");
+                    }
+                    processed.add(p.get("n"));
+                })
+        ));
+        JournalQueue queue = new JournalQueue(JournalConfig.builder().directory(directory.getPath())
+                .segmentBytes(JournalConfig.MIN_SEGMENT_BYTES).maxAttempts(3).build(), 10, poisonedMethods);
+        MetricRegistry metrics = new MetricRegistry();
+        LocalWorker worker = new LocalWorker(poisonedMethods, "test", queue,
+                LocalWorkerConfig.builder().batchSize(1).build(), metrics);
+        worker.start();
+        for (int i = 0; i < 100; i++) {
+            worker.submitMessage(message(i));
+        }
+        assertTrue(queue.getSegments() > 2);
+        while (worker.processMessages()) {
+        }
+
+        // the poison message doesn't hold back the consumer, so the segments behind it are still deleted
+        assertEquals(99, processed.size());
+        assertEquals(1, queue.getSegments());
+        assertEquals(3, metrics.meter("io.stardog.dropwizard.worker.workers.LocalWorker.test.error").getCount());
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.LocalWorker.test.dropped").getCount());
+        worker.stop();
+    }
+
+    private WorkMessage message(int n) {
+        return WorkMessage.of("test", com.google.common.collect.ImmutableMap.of("n", n));
+    }
+}
@@ -0,0 +1,97 @@
+package io.stardog.dropwizard.worker.workers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.data.Priority;
+import io.stardog.dropwizard.worker.data.PriorityPolicy;
+import io.stardog.dropwizard.worker.data.PriorityWorkerConfig;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.interfaces.ManagedWorker;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.Assert.*;
+
+public class PriorityWorkerTest {
+    private final List<String> processed = new ArrayList<>();
+
+    @Test
+    public void strictPollsHighestLaneFirst() {
+        PriorityWorker worker = priorityWorker(PriorityWorkerConfig.builder().maxStarvationMillis(0).build(), 10, 10, 10);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(worker.processMessages());
+        }
+        assertEquals(10, count("high"));
+
+        assertTrue(worker.processMessages());
+        assertEquals(1, count("normal"));
+    }
+
+    @Test
+    public void weightedSharesFirstPoll() {
+        PriorityWorker worker = priorityWorker(PriorityWorkerConfig.builder()
+                .policy(PriorityPolicy.WEIGHTED).maxStarvationMillis(0).build(), 100, 100, 100);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(worker.processMessages());
+        }
+        assertEquals(60, count("high"));
+        assertEquals(30, count("normal"));
+        assertEquals(10, count("low"));
+    }
+
+    @Test
+    public void starvedLaneGoesFirst() {
+        PriorityWorker worker = priorityWorker(PriorityWorkerConfig.builder().maxStarvationMillis(1000).build(), 10, 10, 10);
+        long now = System.currentTimeMillis();
+        assertEquals(Priority.HIGH, worker.pollOrder(now).get(0));
+
+        worker.processMessages();
+        assertEquals(Priority.LOW, worker.pollOrder(now + 2000).get(0));
+        assertEquals(Priority.NORMAL, worker.pollOrder(now + 2000).get(0));
+        assertEquals(Priority.HIGH, worker.pollOrder(now + 2000).get(0));
+    }
+
+    @Test
+    public void recordsDelayPerLane() {
+        MetricRegistry metrics = new MetricRegistry();
+        LocalWorker high = lane("high", 0);
+        LocalWorker normal = lane("normal", 0);
+        PriorityWorker worker = new PriorityWorker("test",
+                ImmutableMap.of(Priority.HIGH, high, Priority.NORMAL, normal), PriorityWorkerConfig.builder().build(), metrics);
+
+        high.submitMessage(WorkMessage.of("high", null, Instant.now().minusMillis(500)));
+        assertTrue(worker.processMessages());
+        assertFalse(worker.processMessages());
+
+        assertEquals(1, metrics.timer("io.stardog.dropwizard.worker.workers.PriorityWorker.test.high.delay").getCount());
+        assertEquals(0, metrics.timer("io.stardog.dropwizard.worker.workers.PriorityWorker.test.normal.delay").getCount());
+    }
+
+    private PriorityWorker priorityWorker(PriorityWorkerConfig config, int high, int normal, int low) {
+        Map<Priority,ManagedWorker> lanes = ImmutableMap.of(
+                Priority.HIGH, lane("high", high),
+                Priority.NORMAL, lane("normal", normal),
+                Priority.LOW, lane("low", low));
+        return new PriorityWorker("test", lanes, config, new MetricRegistry());
+    }
+
+    private LocalWorker lane(String method, int messages) {
+        ConcurrentLinkedQueue<WorkMessage> queue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < messages; i++) {
+            queue.add(WorkMessage.of(method));
+        }
+        return new LocalWorker(WorkMethods.of(ImmutableList.of(WorkMethod.of(method, p -> processed.add(method)))), queue);
+    }
+
+    private long count(String method) {
+        return processed.stream().filter(method::equals).count();
+    }
+}
@@ -0,0 +1,159 @@
+package io.stardog.dropwizard.worker.workers;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.codecs.NegotiatingCodec;
+import io.stardog.dropwizard.worker.data.RedisQueueWorkerConfig;
+import io.stardog.dropwizard.worker.data.WorkMessage;
+import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class RedisQueueWorkerTest {
+    private Jedis jedis;
+    private MetricRegistry metrics;
+    private RedisQueueWorker worker;
+    private List<Object> processed = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        JedisPool jedisPool = mock(JedisPool.class);
+        jedis = mock(Jedis.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
+        metrics = new MetricRegistry();
+
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", (params) -> { processed.add(params.get("n")); }),
+                WorkMethod.of("fail", (params) -> { throw new IllegalStateException("boom"); })
+        ));
+        worker = new RedisQueueWorker(workMethods, jedisPool, "queue",
+                RedisQueueWorkerConfig.builder().consumerId("c1").build(), metrics);
+        worker.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        worker.stop();
+    }
+
+    @Test
+    public void startRecoversOwnUnfinishedMessages() {
+        verify(jedis).eval(any(String.class),
+                argThat((List<String> keys) -> keys.get(0).equals("queue:processing:c1")),
+                argThat((List<String> args) -> args.equals(ImmutableList.of("c1", "1"))));
+        verify(jedis).setex(argThat((String key) -> key.equals("queue:consumer:c1")), eq(30), any(String.class));
+        verify(jedis).sadd("queue:consumers", "c1");
+    }
+
+    @Test
+    public void processMessagesTakesBatchAndAcks() {
+        when(jedis.brpoplpush("queue", "queue:processing:c1", 5))
+                .thenReturn("{\"method\":\"test\",\"params\":{\"n\":1}}");
+        when(jedis.eval(any(String.class), argThat((List<String> keys) -> keys.equals(ImmutableList.of("queue", "queue:processing:c1"))), any()))
+                .thenReturn(ImmutableList.of("{\"method\":\"test\",\"params\":{\"n\":2}}"));
+
+        assertTrue(worker.processMessages());
+        assertEquals(ImmutableList.of(1, 2), processed);
+
+        verify(jedis).eval(any(String.class),
+                argThat((List<String> keys) -> keys.equals(ImmutableList.of("queue:processing:c1", "queue:attempts"))),
+                argThat((List<String> args) -> args.size() == 2));
+        assertEquals(2, metrics.meter("io.stardog.dropwizard.worker.workers.RedisQueueWorker.queue.received").getCount());
+        assertEquals(2, metrics.meter("io.stardog.dropwizard.worker.workers.RedisQueueWorker.queue.processed").getCount());
+    }
+
+    @Test
+    public void processMessagesDefersFailures() {
+        when(jedis.brpoplpush("queue", "queue:processing:c1", 5))
+                .thenReturn("{\"method\":\"fail\"}");
+        when(jedis.hincrBy("queue:attempts", "{\"method\":\"fail\"}", 1)).thenReturn(2L);
+        when(jedis.eval(any(String.class), argThat((List<String> keys) -> keys.equals(ImmutableList.of("queue:processing:c1", "queue:delayed"))), any()))
+                .thenReturn(1L);
+
+        long before = System.currentTimeMillis();
+        assertFalse(worker.processMessages());
+
+        // the second failure waits twice the initial delay
+        verify(jedis).eval(any(String.class),
+                argThat((List<String> keys) -> keys.equals(ImmutableList.of("queue:processing:c1", "queue:delayed"))),
+                argThat((List<String> args) -> args.size() == 3
+                        && args.get(0).equals("{\"method\":\"fail\"}")
+                        && Long.parseLong(args.get(1)) >= before + 20000));
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.RedisQueueWorker.queue.requeued").getCount());
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.RedisQueueWorker.queue.retried.fail").getCount());
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.RedisQueueWorker.queue.error").getCount());
+    }
+
+    @Test
+    public void processMessagesGivesUpAfterMaxAttempts() {
+        when(jedis.brpoplpush("queue", "queue:processing:c1", 5))
+                .thenReturn("{\"method\":\"fail\"}");
+        when(jedis.hincrBy("queue:attempts", "{\"method\":\"fail\"}", 1)).thenReturn(5L);
+
+        assertTrue(worker.processMessages());
+
+        verify(jedis).eval(any(String.class),
+                argThat((List<String> keys) -> keys.equals(ImmutableList.of("queue:processing:c1", "queue:attempts"))),
+                argThat((List<String> args) -> args.equals(ImmutableList.of("{\"method\":\"fail\"}"))));
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.RedisQueueWorker.queue.deadLettered.fail").getCount());
+        assertEquals(0, metrics.meter("io.stardog.dropwizard.worker.workers.RedisQueueWorker.queue.requeued").getCount());
+    }
+
+    @Test
+    public void deadLettersAfterMaxAttempts() throws Exception {
+        List<WorkMessage> deadLetters = new CopyOnWriteArrayList<>();
+        JedisPool jedisPool = mock(JedisPool.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
+        RedisQueueWorker deadLetteringWorker = new RedisQueueWorker(
+                WorkMethods.of(ImmutableList.of(WorkMethod.of("fail", (params) -> { throw new IllegalStateException("boom"); }))),
+                jedisPool, "queue", RedisQueueWorkerConfig.builder().consumerId("c2").build(), metrics,
+                WorkerDefaults.MAPPER, NegotiatingCodec.of(WorkerDefaults.MAPPER), deadLetters::add);
+        deadLetteringWorker.start();
+        when(jedis.brpoplpush("queue", "queue:processing:c2", 5))
+                .thenReturn("{\"method\":\"fail\"}");
+        when(jedis.hincrBy("queue:attempts", "{\"method\":\"fail\"}", 1)).thenReturn(5L);
+
+        assertTrue(deadLetteringWorker.processMessages());
+        deadLetteringWorker.stop();
+
+        assertEquals(1, deadLetters.size());
+        assertEquals("fail", deadLetters.get(0).getMethod());
+        verify(jedis).eval(any(String.class),
+                argThat((List<String> keys) -> keys.equals(ImmutableList.of("queue:processing:c2", "queue:attempts"))),
+                argThat((List<String> args) -> args.equals(ImmutableList.of("{\"method\":\"fail\"}"))));
+    }
+
+    @Test
+    public void promoteDelayedMovesDueMessagesBack() {
+        worker.promoteDelayed();
+
+        verify(jedis, atLeastOnce()).eval(any(String.class),
+                argThat((List<String> keys) -> keys.equals(ImmutableList.of("queue:delayed", "queue"))),
+                argThat((List<String> args) -> Long.parseLong(args.get(0)) <= System.currentTimeMillis()));
+    }
+
+    @Test
+    public void processMessagesReturnsFalseWhenEmpty() {
+        assertFalse(worker.processMessages());
+        assertTrue(processed.isEmpty());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void processMessagesRequiresStart() {
+        new RedisQueueWorker(WorkMethods.of(ImmutableList.of()), mock(JedisPool.class), "queue", metrics).processMessages();
+    }
+}
@@ -1,20 +1,50 @@
 package io.stardog.dropwizard.worker.workers;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
 import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.codecs.NegotiatingCodec;
+import io.stardog.dropwizard.worker.data.MethodLimitConfig;
+import io.stardog.dropwizard.worker.data.OverflowPolicy;
+import io.stardog.dropwizard.worker.data.RedisWorkerConfig;
+import io.stardog.dropwizard.worker.data.RetryPolicy;
 import io.stardog.dropwizard.worker.data.WorkMessage;
 import io.stardog.dropwizard.worker.data.WorkMethod;
+import io.stardog.dropwizard.worker.interfaces.Sender;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
+import org.junit.After;
 import org.junit.Test;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 public class RedisWorkerTest {
     private AtomicBoolean didWork = new AtomicBoolean(false);
+    private final List<RedisWorker> started = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (RedisWorker worker : started) {
+            worker.stop();
+        }
+    }
+
+    private void start(RedisWorker worker) {
+        worker.start();
+        started.add(worker);
+    }
 
     @Test
     public void processMessage() {
@@ -26,4 +56,137 @@ public class RedisWorkerTest {
 
         assertTrue(didWork.get());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void dispatchProcessesOffTheSubscriberThread() throws Exception {
+        AtomicReference<Thread> processedOn = new AtomicReference<>();
+        CountDownLatch processed = new CountDownLatch(1);
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", (params) -> { processedOn.set(Thread.currentThread()); processed.countDown(); })
+        ));
+        RedisWorker worker = new RedisWorker(workMethods, mock(JedisPool.class), "channel");
+        start(worker);
+        worker.dispatch("{\"method\":\"test\"}");
+
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), processedOn.get());
+    }
+
+    @Test
+    public void dispatchDropsNewestWhenFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", (params) -> {
+                    started.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                })
+        ));
+        MetricRegistry metrics = new MetricRegistry();
+        RedisWorker worker = new RedisWorker(workMethods, mock(JedisPool.class), "channel",
+                RedisWorkerConfig.builder().queueCapacity(1).overflowPolicy(OverflowPolicy.DROP_NEWEST).build(), metrics);
+        start(worker);
+
+        // one message occupies the only dispatch thread, the next fills the queue, and the last is dropped
+        worker.dispatch("{\"method\":\"test\"}");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        worker.dispatch("{\"method\":\"test\"}");
+        worker.dispatch("{\"method\":\"test\"}");
+        release.countDown();
+
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.RedisWorker.channel.rejected").getCount());
+    }
+
+    @Test
+    public void retriesThenDeadLetters() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", (params) -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalStateException("poison");
+                })
+        ));
+        MetricRegistry metrics = new MetricRegistry();
+        CountDownLatch deadLettered = new CountDownLatch(1);
+        List<WorkMessage> deadLetters = new CopyOnWriteArrayList<>();
+        Sender deadLetterSender = message -> {
+            deadLetters.add(message);
+            deadLettered.countDown();
+        };
+        RetryPolicy retryPolicy = RetryPolicy.builder().maxAttempts(3).initialDelaySeconds(0).maxDelaySeconds(0).build();
+        RedisWorker worker = new RedisWorker(workMethods, mock(JedisPool.class), "channel",
+                RedisWorkerConfig.builder().retryPolicy(retryPolicy).build(), metrics, WorkerDefaults.MAPPER,
+                NegotiatingCodec.of(WorkerDefaults.MAPPER), deadLetterSender);
+        start(worker);
+
+        worker.dispatch("{\"method\":\"test\"}");
+
+        assertTrue(deadLettered.await(5, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+        assertEquals("test", deadLetters.get(0).getMethod());
+        assertEquals(2, metrics.meter("io.stardog.dropwizard.worker.workers.RedisWorker.channel.retried.test").getCount());
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.RedisWorker.channel.deadLettered.test").getCount());
+    }
+
+    @Test
+    public void defersSaturatedMessages() throws Exception {
+        CountDownLatch processed = new CountDownLatch(2);
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", (params) -> processed.countDown())
+                        .withLimit(MethodLimitConfig.builder().ratePerSecond(5).burst(1).deferSeconds(1).build())
+        ));
+        MetricRegistry metrics = new MetricRegistry();
+        RedisWorker worker = new RedisWorker(workMethods, mock(JedisPool.class), "channel",
+                RedisWorkerConfig.builder().build(), metrics);
+        start(worker);
+
+        // the second message finds the method over its rate, and is put off until it has room
+        worker.dispatch("{\"method\":\"test\"}");
+        worker.dispatch("{\"method\":\"test\"}");
+
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+        assertTrue(metrics.meter("io.stardog.dropwizard.worker.workers.RedisWorker.channel.saturated.test").getCount() >= 1);
+        assertEquals(0, metrics.meter("io.stardog.dropwizard.worker.workers.RedisWorker.channel.rejected").getCount());
+    }
+
+    @Test
+    public void dropsDeferredMessagesPastQueueCapacity() throws Exception {
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("test", (params) -> {})
+                        .withLimit(MethodLimitConfig.builder().ratePerSecond(1).burst(1).deferSeconds(60).build())
+        ));
+        MetricRegistry metrics = new MetricRegistry();
+        RedisWorker worker = new RedisWorker(workMethods, mock(JedisPool.class), "channel",
+                RedisWorkerConfig.builder().queueCapacity(2).overflowPolicy(OverflowPolicy.DROP_NEWEST).build(), metrics);
+        start(worker);
+
+        // the first message runs, the next two wait for the method to have room, and the rest are dropped
+        Meter saturated = metrics.meter("io.stardog.dropwizard.worker.workers.RedisWorker.channel.saturated.test");
+        worker.dispatch("{\"method\":\"test\"}");
+        for (int i = 1; i < 5; i++) {
+            worker.dispatch("{\"method\":\"test\"}");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (saturated.getCount() < i && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals(4, saturated.getCount());
+        assertEquals(2, metrics.meter("io.stardog.dropwizard.worker.workers.RedisWorker.channel.rejected").getCount());
+    }
+
+    @Test
+    public void stopWithoutStart() throws Exception {
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(WorkMethod.of("test", (params) -> {})));
+        new RedisWorker(workMethods, mock(JedisPool.class), "channel").stop();
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void dispatchRequiresStart() {
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(WorkMethod.of("test", (params) -> {})));
+        new RedisWorker(workMethods, mock(JedisPool.class), "channel").dispatch("{\"method\":\"test\"}");
+    }
+}
@@ -0,0 +1,67 @@
+package io.stardog.dropwizard.worker.workers;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.codahale.metrics.Meter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class SqsVisibilityHeartbeatTest {
+    private AmazonSQS sqsClient;
+    private Meter extended;
+    private Meter expired;
+    private SqsVisibilityHeartbeat heartbeat;
+
+    @Before
+    public void setUp() {
+        sqsClient = mock(AmazonSQS.class);
+        extended = new Meter();
+        expired = new Meter();
+        heartbeat = new SqsVisibilityHeartbeat(sqsClient, "https://example.com/url", 30, extended, expired, new Meter());
+    }
+
+    @Test
+    public void extendsMessagesNearingTheirDeadline() {
+        Message fresh = new Message().withReceiptHandle("fresh");
+        Message old = new Message().withReceiptHandle("old");
+        heartbeat.track(fresh, System.nanoTime());
+        heartbeat.track(old, System.nanoTime() - TimeUnit.SECONDS.toNanos(20));
+
+        when(sqsClient.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class)))
+                .thenReturn(new ChangeMessageVisibilityBatchResult()
+                        .withSuccessful(new ChangeMessageVisibilityBatchResultEntry().withId("0")));
+        heartbeat.extend();
+
+        verify(sqsClient, times(1)).changeMessageVisibilityBatch(argThat((ChangeMessageVisibilityBatchRequest r) ->
+                r.getEntries().size() == 1
+                        && "old".equals(r.getEntries().get(0).getReceiptHandle())
+                        && r.getEntries().get(0).getVisibilityTimeout() == 30));
+        assertEquals(1, extended.getCount());
+        assertEquals(2, heartbeat.size());
+
+        // once processed, messages are no longer extended
+        heartbeat.untrack(fresh);
+        heartbeat.untrack(old);
+        assertEquals(0, heartbeat.size());
+    }
+
+    @Test
+    public void countsMessagesThatExpiredInFlight() {
+        heartbeat.track(new Message().withReceiptHandle("expired"), System.nanoTime() - TimeUnit.SECONDS.toNanos(31));
+        heartbeat.extend();
+
+        verify(sqsClient, never()).changeMessageVisibilityBatch(any());
+        assertEquals(1, expired.getCount());
+        assertEquals(0, heartbeat.size());
+    }
+}
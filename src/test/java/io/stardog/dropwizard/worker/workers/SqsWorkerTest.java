@@ -1,26 +1,44 @@
 package io.stardog.dropwizard.worker.workers;
 
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
 import com.amazonaws.services.sqs.model.GetQueueUrlResult;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import io.stardog.dropwizard.worker.WorkMethods;
+import io.stardog.dropwizard.worker.codecs.JsonCodec;
+import io.stardog.dropwizard.worker.data.MethodLimitConfig;
+import io.stardog.dropwizard.worker.data.RetryPolicy;
+import io.stardog.dropwizard.worker.data.SqsWorkerConfig;
+import io.stardog.dropwizard.worker.data.WorkMessage;
 import io.stardog.dropwizard.worker.data.WorkMethod;
 import io.stardog.dropwizard.worker.data.WorkerConfig;
 import io.stardog.dropwizard.worker.WorkerManager;
+import io.stardog.dropwizard.worker.util.WorkerDefaults;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 public class SqsWorkerTest {
@@ -40,7 +58,7 @@ public class SqsWorkerTest {
                 WorkMethod.of("testMethod", (params) -> { didWork.set(true); } )
         ));
 
-        worker = new SqsWorker(workMethods, sqsClient, "test-sqs", metrics);
+        worker = new SqsWorker(workMethods, sqsClient, "test-sqs", SqsWorkerConfig.builder().waitTimeSeconds(0).build(), metrics);
         service = new WorkerManager(
                 "worker-service", config, worker, new MetricRegistry());
 
@@ -71,6 +89,347 @@ public class SqsWorkerTest {
         assertTrue(worker.processMessages());
         assertTrue(didWork.get());
 
+        verify(sqsClient, times(1)).deleteMessageBatch(any());
+        verify(sqsClient, never()).deleteMessage(any());
+        verify(sqsClient, times(2)).receiveMessage(argThat((ReceiveMessageRequest r) -> r.getMaxNumberOfMessages() == 10));
+        // two receives and one batch delete
+        assertEquals(3, metrics.meter("io.stardog.dropwizard.worker.workers.SqsWorker.test-sqs.apiCalls").getCount());
+    }
+
+    @Test
+    public void startAgainAfterStop() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        SqsWorker concurrentWorker = new SqsWorker(WorkMethods.of(ImmutableList.of()), sqsClient, "test-sqs",
+                SqsWorkerConfig.builder().waitTimeSeconds(0).executorThreads(1).build(), metrics);
+        concurrentWorker.start();
+        concurrentWorker.stop();
+        // its gauges are already registered, which must not stop it starting again
+        concurrentWorker.start();
+        concurrentWorker.stop();
+
+        assertTrue(metrics.getGauges().containsKey("io.stardog.dropwizard.worker.workers.SqsWorker.test-sqs.apiCallsPerMessage"));
+    }
+
+    @Test
+    public void deleteMessagesRetriesFailedEntries() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        worker.start();
+
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            messages.add(new Message().withMessageId("id" + i).withReceiptHandle("handle" + i));
+        }
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult().withFailed(
+                new BatchResultErrorEntry().withId("1").withCode("InternalError").withSenderFault(false),
+                new BatchResultErrorEntry().withId("2").withCode("ReceiptHandleIsInvalid").withSenderFault(true));
+        when(sqsClient.deleteMessageBatch(any(DeleteMessageBatchRequest.class)))
+                .thenReturn(result, new DeleteMessageBatchResult());
+
+        worker.deleteMessages(messages);
+
+        // two batches (10 + 2), and only the retryable failures retried individually
+        verify(sqsClient, times(2)).deleteMessageBatch(any());
+        verify(sqsClient, times(1)).deleteMessage(argThat((DeleteMessageRequest r) -> "handle1".equals(r.getReceiptHandle())));
         verify(sqsClient, times(1)).deleteMessage(any());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void defersMessagesForSaturatedMethod() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("testMethod", (params) -> didWork.set(true))
+                        .withLimit(MethodLimitConfig.builder().ratePerSecond(0.001).deferSeconds(7).build())
+        ));
+        SqsWorker limitedWorker = new SqsWorker(workMethods, sqsClient, "test-sqs",
+                SqsWorkerConfig.builder().waitTimeSeconds(0).build(), metrics);
+        limitedWorker.start();
+
+        ReceiveMessageResult result = new ReceiveMessageResult();
+        result.setMessages(ImmutableList.of(
+                new Message().withBody("{\"method\":\"testMethod\"}").withReceiptHandle("handle1"),
+                new Message().withBody("{\"method\":\"testMethod\"}").withReceiptHandle("handle2")));
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(result);
+
+        assertTrue(limitedWorker.processMessages());
+        assertTrue(didWork.get());
+
+        // the first message uses up the only token; the second is put off rather than processed or failed
+        verify(sqsClient, times(1)).deleteMessageBatch(argThat((DeleteMessageBatchRequest r) -> r.getEntries().size() == 1));
+        verify(sqsClient, times(1)).changeMessageVisibility(argThat((ChangeMessageVisibilityRequest r) ->
+                "handle2".equals(r.getReceiptHandle()) && r.getVisibilityTimeout() == 7));
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.SqsWorker.test-sqs.saturated.testMethod").getCount());
+        assertEquals(0, metrics.meter("io.stardog.dropwizard.worker.workers.SqsWorker.test-sqs.error").getCount());
+    }
+
+    @Test
+    public void retriesWithBackoffThenDeadLetters() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("testMethod", (params) -> { throw new IllegalStateException("poison"); })
+        ));
+        List<WorkMessage> deadLetters = new ArrayList<>();
+        SqsWorker retryingWorker = new SqsWorker(workMethods, sqsClient, "test-sqs",
+                SqsWorkerConfig.builder().waitTimeSeconds(0)
+                        .retryPolicy(RetryPolicy.builder().maxAttempts(3).initialDelaySeconds(10).build()).build(),
+                metrics, WorkerDefaults.MAPPER, new JsonCodec(), deadLetters::add);
+        retryingWorker.start();
+
+        ReceiveMessageResult result = new ReceiveMessageResult();
+        result.setMessages(ImmutableList.of(
+                new Message().withBody("{\"method\":\"testMethod\"}").withReceiptHandle("handle1")
+                        .withAttributes(ImmutableMap.of("ApproximateReceiveCount", "2")),
+                new Message().withBody("{\"method\":\"testMethod\"}").withReceiptHandle("handle2")
+                        .withAttributes(ImmutableMap.of("ApproximateReceiveCount", "3"))));
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(result);
+
+        assertTrue(retryingWorker.processMessages());
+
+        // the second attempt waits twice the initial delay, and the last attempt goes to the dead-letter sender
+        verify(sqsClient, times(1)).receiveMessage(argThat((ReceiveMessageRequest r) -> r.getAttributeNames().contains("ApproximateReceiveCount")));
+        verify(sqsClient, times(1)).changeMessageVisibility(argThat((ChangeMessageVisibilityRequest r) ->
+                "handle1".equals(r.getReceiptHandle()) && r.getVisibilityTimeout() == 20));
+        verify(sqsClient, times(1)).deleteMessageBatch(argThat((DeleteMessageBatchRequest r) ->
+                r.getEntries().size() == 1 && "handle2".equals(r.getEntries().get(0).getReceiptHandle())));
+        assertEquals(1, deadLetters.size());
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.SqsWorker.test-sqs.retried.testMethod").getCount());
+        assertEquals(1, metrics.meter("io.stardog.dropwizard.worker.workers.SqsWorker.test-sqs.deadLettered.testMethod").getCount());
+    }
+
+    @Test
+    public void untracksFromHeartbeatBeforeDeferring() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("testMethod", (params) -> { throw new IllegalStateException("poison"); })
+        ));
+        SqsWorker retryingWorker = new SqsWorker(workMethods, sqsClient, "test-sqs",
+                SqsWorkerConfig.builder().waitTimeSeconds(0).visibilityTimeoutSeconds(60).heartbeatEnabled(true)
+                        .retryPolicy(RetryPolicy.builder().build()).build(),
+                metrics);
+        retryingWorker.start();
+
+        ReceiveMessageResult result = new ReceiveMessageResult();
+        result.setMessages(ImmutableList.of(new Message().withBody("{\"method\":\"testMethod\"}").withReceiptHandle("handle1")));
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(result);
+        List<Object> trackedWhenDeferred = new ArrayList<>();
+        doAnswer(invocation -> {
+            trackedWhenDeferred.add(metrics.getGauges().get("io.stardog.dropwizard.worker.workers.SqsWorker.test-sqs.heartbeat.tracked").getValue());
+            return null;
+        }).when(sqsClient).changeMessageVisibility(any(ChangeMessageVisibilityRequest.class));
+
+        retryingWorker.processMessages();
+        retryingWorker.stop();
+
+        assertEquals(ImmutableList.of(0), trackedWhenDeferred);
+    }
+
+    @Test
+    public void processMessagesConcurrently() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        CountDownLatch latch = new CountDownLatch(2);
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("testMethod", (params) -> latch.countDown())
+        ));
+        SqsWorker concurrentWorker = new SqsWorker(workMethods, sqsClient, "test-sqs",
+                SqsWorkerConfig.builder().waitTimeSeconds(0).executorThreads(2).maxInFlight(3).ackLingerMillis(60000).build(),
+                metrics);
+        concurrentWorker.start();
+
+        ReceiveMessageResult result = new ReceiveMessageResult();
+        result.setMessages(ImmutableList.of(
+                new Message().withBody("{\"method\":\"testMethod\"}").withReceiptHandle("handle1"),
+                new Message().withBody("{\"method\":\"testMethod\"}").withReceiptHandle("handle2")));
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(result);
+
+        assertTrue(concurrentWorker.processMessages());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        concurrentWorker.stop();
+
+        // only asks for as many messages as there is capacity for, and acks both once they finish
+        verify(sqsClient, times(1)).receiveMessage(argThat((ReceiveMessageRequest r) -> r.getMaxNumberOfMessages() == 3));
+        verify(sqsClient, times(1)).deleteMessageBatch(argThat((DeleteMessageBatchRequest r) -> r.getEntries().size() == 2));
+    }
+
+    @Test
+    public void stopWaitsAtMostMaxShutdownMillis() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("testMethod", (params) -> {
+                    started.countDown();
+                    try {
+                        release.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                })
+        ));
+        SqsWorker slowWorker = new SqsWorker(workMethods, sqsClient, "test-sqs",
+                SqsWorkerConfig.builder().waitTimeSeconds(0).executorThreads(1).maxShutdownMillis(100).build(),
+                metrics);
+        slowWorker.start();
+
+        ReceiveMessageResult result = new ReceiveMessageResult();
+        result.setMessages(ImmutableList.of(new Message().withBody("{\"method\":\"testMethod\"}").withReceiptHandle("handle1")));
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(result);
+        assertTrue(slowWorker.processMessages());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        long startMillis = System.currentTimeMillis();
+        try {
+            slowWorker.stop();
+        } finally {
+            release.countDown();
+        }
+        assertTrue(System.currentTimeMillis() - startMillis < 5000);
+    }
+
+    @Test
+    public void processMessagesPrefetched() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("testMethod", (params) -> { didWork.set(true); } )
+        ));
+        SqsWorker prefetchingWorker = new SqsWorker(workMethods, sqsClient, "test-sqs",
+                SqsWorkerConfig.builder().waitTimeSeconds(1).pollerThreads(1).visibilityTimeoutSeconds(60).build(),
+                metrics);
+
+        ReceiveMessageResult emptyResult = new ReceiveMessageResult();
+        emptyResult.setMessages(ImmutableSet.of());
+        ReceiveMessageResult result = new ReceiveMessageResult();
+        result.setMessages(ImmutableList.of(new Message().withBody("{\"method\":\"testMethod\"}").withReceiptHandle("handle1")));
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(result, emptyResult);
+
+        prefetchingWorker.start();
+        assertTrue(prefetchingWorker.processMessages());
+        assertTrue(didWork.get());
+        prefetchingWorker.stop();
+
+        verify(sqsClient, atLeastOnce()).receiveMessage(argThat((ReceiveMessageRequest r) -> r.getVisibilityTimeout() == 60));
+        verify(sqsClient, times(1)).deleteMessageBatch(any());
+    }
+
+    @Test
+    public void drainWaitsAtMostMaxShutdownMillisForPollers() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        CountDownLatch receiving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenAnswer(invocation -> {
+                    // a long poll that would outlast the shutdown budget
+                    receiving.countDown();
+                    release.await(30, TimeUnit.SECONDS);
+                    return new ReceiveMessageResult().withMessages(ImmutableList.of());
+                });
+        SqsWorker prefetchingWorker = new SqsWorker(WorkMethods.of(ImmutableList.of()), sqsClient, "test-sqs",
+                SqsWorkerConfig.builder().waitTimeSeconds(20).pollerThreads(1).visibilityTimeoutSeconds(60)
+                        .maxShutdownMillis(100).build(), metrics);
+        prefetchingWorker.start();
+        assertTrue(receiving.await(5, TimeUnit.SECONDS));
+
+        long startMillis = System.currentTimeMillis();
+        try {
+            prefetchingWorker.stop();
+        } finally {
+            release.countDown();
+        }
+        assertTrue(System.currentTimeMillis() - startMillis < 5000);
+    }
+
+    @Test
+    public void heartbeatContinuesWhileShutdownWaitsForJob() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch extended = new CountDownLatch(1);
+        AtomicBoolean finishedAfterExtending = new AtomicBoolean(false);
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("testMethod", (params) -> {
+                    started.countDown();
+                    // the job outlives half its visibility timeout, so it needs the heartbeat to extend it
+                    try {
+                        finishedAfterExtending.set(extended.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                })
+        ));
+        SqsWorker slowWorker = new SqsWorker(workMethods, sqsClient, "test-sqs",
+                SqsWorkerConfig.builder().waitTimeSeconds(0).visibilityTimeoutSeconds(3).heartbeatEnabled(true).build(), metrics);
+        ReceiveMessageResult emptyResult = new ReceiveMessageResult();
+        emptyResult.setMessages(ImmutableSet.of());
+        ReceiveMessageResult result = new ReceiveMessageResult();
+        result.setMessages(ImmutableList.of(new Message().withBody("{\"method\":\"testMethod\"}").withReceiptHandle("handle1")));
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(result, emptyResult);
+        when(sqsClient.changeMessageVisibilityBatch(any(ChangeMessageVisibilityBatchRequest.class)))
+                .thenAnswer(invocation -> {
+                    extended.countDown();
+                    return null;
+                });
+
+        WorkerManager manager = new WorkerManager("worker-service",
+                WorkerConfig.builder().maxThreads(1).maxShutdownMillis(10000).build(), slowWorker, new MetricRegistry());
+        manager.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        manager.stop();
+
+        assertTrue(finishedAfterExtending.get());
+        verify(sqsClient, atLeastOnce()).changeMessageVisibilityBatch(argThat((ChangeMessageVisibilityBatchRequest r) ->
+                "handle1".equals(r.getEntries().get(0).getReceiptHandle())));
+    }
+
+    @Test
+    public void drainReleasesUnstartedMessages() throws Exception {
+        when(sqsClient.getQueueUrl("test-sqs"))
+                .thenReturn(new GetQueueUrlResult().withQueueUrl("https://example.com/url"));
+        List<String> processed = new ArrayList<>();
+        SqsWorker[] drainingWorker = new SqsWorker[1];
+        WorkMethods workMethods = WorkMethods.of(ImmutableList.of(
+                WorkMethod.of("testMethod", (params) -> {
+                    processed.add((String)params.get("id"));
+                    // shutdown begins while the first message of the batch is being processed
+                    drainingWorker[0].drain();
+                })
+        ));
+        drainingWorker[0] = new SqsWorker(workMethods, sqsClient, "test-sqs",
+                SqsWorkerConfig.builder().waitTimeSeconds(0).heartbeatEnabled(false).build(), metrics);
+        drainingWorker[0].start();
+
+        ReceiveMessageResult result = new ReceiveMessageResult();
+        result.setMessages(ImmutableList.of(
+                new Message().withBody("{\"method\":\"testMethod\",\"params\":{\"id\":\"1\"}}").withReceiptHandle("handle1"),
+                new Message().withBody("{\"method\":\"testMethod\",\"params\":{\"id\":\"2\"}}").withReceiptHandle("handle2"),
+                new Message().withBody("{\"method\":\"testMethod\",\"params\":{\"id\":\"3\"}}").withReceiptHandle("handle3")));
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class)))
+                .thenReturn(result);
+
+        assertTrue(drainingWorker[0].processMessages());
+        assertEquals(ImmutableList.of("1"), processed);
+        verify(sqsClient).deleteMessageBatch(argThat((DeleteMessageBatchRequest r) -> r.getEntries().size() == 1));
+        verify(sqsClient).changeMessageVisibilityBatch(argThat((ChangeMessageVisibilityBatchRequest r) ->
+                r.getEntries().size() == 2
+                        && r.getEntries().get(0).getReceiptHandle().equals("handle2")
+                        && r.getEntries().stream().allMatch(e -> e.getVisibilityTimeout() == 0)));
+        assertEquals(2, metrics.meter("io.stardog.dropwizard.worker.workers.SqsWorker.test-sqs.released").getCount());
+
+        // no more polling once draining
+        assertFalse(drainingWorker[0].processMessages());
+        verify(sqsClient, times(1)).receiveMessage(any(ReceiveMessageRequest.class));
+    }
+}